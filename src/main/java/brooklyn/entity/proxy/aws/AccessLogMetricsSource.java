@@ -0,0 +1,186 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.core.entity.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * Derives per-backend statistics from the ELB's access logs.
+ *
+ * Each {@link #poll()} reads whatever has been added to the {@link AccessLogStore} since the previous
+ * poll (tracking an offset per file, so each entry is read once), summarising each backend's latencies
+ * in a {@link LatencySketch}. The summaries are also merged into those returned by each consumer's next
+ * call to {@link #getStats(String, Collection)}, so polling and each consumer can run at different rates.
+ *
+ * Offsets are kept in memory only, so the first poll (e.g. after a restart or rebind) skips the
+ * existing contents of the store rather than re-counting them.
+ *
+ * Backends are matched to members by the member's {@link Attributes#SUBNET_ADDRESS} (i.e. private IP),
+ * or else its {@link Attributes#ADDRESS}.
+ */
+public class AccessLogMetricsSource implements BackendMetricsSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogMetricsSource.class);
+
+    /** Requests and errors to a backend, and its latencies (from the backend_processing_time). */
+    static class Summary {
+        final LatencySketch latency = new LatencySketch();
+        long requestCount;
+        long errorCount;
+
+        void merge(Summary other) {
+            latency.merge(other.latency);
+            requestCount += other.requestCount;
+            errorCount += other.errorCount;
+        }
+
+        BackendStats toStats() {
+            return new BackendStats(requestCount, errorCount, latency.getMean(),
+                    latency.getQuantile(0.5), latency.getQuantile(0.9), latency.getQuantile(0.99));
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("requests", requestCount).add("errors", errorCount).add("latency", latency).toString();
+        }
+    }
+
+    private final AccessLogStore store;
+    private final AccessLogParser parser = new AccessLogParser();
+    private Map<String, Long> offsets;
+
+    /** Summaries since each consumer's last call to {@link #getStats(String, Collection)}, keyed by consumer then backend address. */
+    private final Map<String, Map<String, Summary>> pendingByConsumer = Maps.newHashMap();
+
+    public AccessLogMetricsSource(AccessLogStore store) {
+        this.store = checkNotNull(store, "store");
+    }
+
+    /**
+     * Reads the entries added to the store since the last poll.
+     *
+     * @return the summary of those entries for each backend address
+     */
+    public synchronized Map<String, BackendStats> poll() throws IOException {
+        Map<String, Long> files = store.listFiles();
+        if (offsets == null) {
+            LOG.debug("Skipping existing contents of access log store {} ({} files)", store, files.size());
+            offsets = Maps.newHashMap(files);
+            return ImmutableMap.of();
+        }
+
+        // Summaries are keyed by the int address while parsing, to avoid creating a string per entry
+        final Map<Long, Summary> summaries = Maps.newHashMap();
+        AccessLogParser.Handler handler = new AccessLogParser.Handler() {
+            private long lastAddress = AccessLogParser.NO_BACKEND;
+            private Summary lastSummary;
+
+            @Override public void onEntry(long backendAddress, double backendProcessingTime, int elbStatusCode, int backendStatusCode) {
+                if (backendAddress == AccessLogParser.NO_BACKEND) return;
+                Summary summary;
+                if (backendAddress == lastAddress) {
+                    summary = lastSummary;
+                } else {
+                    summary = summaries.get(backendAddress);
+                    if (summary == null) {
+                        summary = new Summary();
+                        summaries.put(backendAddress, summary);
+                    }
+                    lastAddress = backendAddress;
+                    lastSummary = summary;
+                }
+                summary.requestCount++;
+                if (backendProcessingTime < 0 || elbStatusCode >= 500 || backendStatusCode >= 500) {
+                    summary.errorCount++;
+                } else {
+                    summary.latency.add(backendProcessingTime * 1000);
+                }
+            }
+        };
+
+        long malformedBefore = parser.getMalformedCount();
+        for (Map.Entry<String, Long> file : files.entrySet()) {
+            String name = file.getKey();
+            long size = file.getValue();
+            Long offset = offsets.get(name);
+            if (offset == null || offset > size) {
+                // new file (or replaced with a shorter one)
+                offset = 0L;
+            }
+            if (offset == size) {
+                offsets.put(name, offset);
+                continue;
+            }
+            InputStream in = store.open(name, offset);
+            try {
+                offsets.put(name, offset + parser.parse(in, handler));
+            } finally {
+                Closeables.closeQuietly(in);
+            }
+        }
+        offsets.keySet().retainAll(files.keySet());
+        if (parser.getMalformedCount() > malformedBefore) {
+            LOG.debug("Skipped {} malformed access log entries from {}", parser.getMalformedCount() - malformedBefore, store);
+        }
+
+        Map<String, BackendStats> result = Maps.newLinkedHashMap();
+        for (Map.Entry<Long, Summary> entry : summaries.entrySet()) {
+            String address = AccessLogParser.formatAddress(entry.getKey());
+            result.put(address, entry.getValue().toStats());
+            for (Map<String, Summary> pending : pendingByConsumer.values()) {
+                Summary summary = pending.get(address);
+                if (summary == null) {
+                    summary = new Summary();
+                    pending.put(address, summary);
+                }
+                summary.merge(entry.getValue());
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    @Override
+    public synchronized Map<Entity, BackendStats> getStats(String consumer, Collection<? extends Entity> members) {
+        Map<String, Summary> summaries = pendingByConsumer.put(consumer, Maps.<String, Summary>newHashMap());
+        if (summaries == null) return ImmutableMap.of();
+
+        Map<Entity, BackendStats> result = Maps.newLinkedHashMap();
+        for (Entity member : members) {
+            String address = getBackendAddress(member);
+            Summary summary = (address == null) ? null : summaries.get(address);
+            if (summary != null) {
+                result.put(member, summary.toStats());
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * The address the ELB's access logs will report for this member.
+     */
+    @Nullable
+    public static String getBackendAddress(Entity member) {
+        String result = member.getAttribute(Attributes.SUBNET_ADDRESS);
+        return (result != null) ? result : member.getAttribute(Attributes.ADDRESS);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("store", store).toString();
+    }
+}
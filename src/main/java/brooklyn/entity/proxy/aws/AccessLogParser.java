@@ -0,0 +1,198 @@
+package brooklyn.entity.proxy.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A streaming parser for (classic) ELB access logs, which extracts just the fields needed for
+ * per-backend statistics.
+ *
+ * Each entry is of the form:
+ * <pre>
+ * timestamp elb client:port backend:port request_processing_time backend_processing_time response_processing_time elb_status_code backend_status_code ...
+ * </pre>
+ *
+ * The parser works directly on the bytes read, re-using its buffer and creating no objects per entry:
+ * the backend's (IPv4) address is passed to the {@link Handler} as a number, and the rest of each line
+ * after the status codes is skipped. Malformed lines are counted and skipped.
+ *
+ * Not thread-safe; a parser can be re-used for successive streams.
+ */
+public class AccessLogParser {
+
+    public interface Handler {
+        /**
+         * @param backendAddress        the backend's IPv4 address, or {@link AccessLogParser#NO_BACKEND} if the request
+         *                              was not sent to a backend
+         * @param backendProcessingTime seconds from sending the request to the backend until it started to respond,
+         *                              or -1 if the backend did not respond (e.g. it closed the connection, or timed out)
+         * @param elbStatusCode         the status code returned to the client, or -1 for TCP/SSL listeners
+         * @param backendStatusCode     the status code returned by the backend, or -1 if none (or TCP/SSL listeners)
+         */
+        void onEntry(long backendAddress, double backendProcessingTime, int elbStatusCode, int backendStatusCode);
+    }
+
+    public static final long NO_BACKEND = -1;
+
+    private static final int BACKEND_FIELD = 3;
+    private static final int BACKEND_PROCESSING_TIME_FIELD = 5;
+    private static final int ELB_STATUS_FIELD = 7;
+    private static final int BACKEND_STATUS_FIELD = 8;
+    private static final int NUM_FIELDS = 9;
+
+    private static final double[] POWERS_OF_TEN = new double[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private byte[] buf = new byte[64 * 1024];
+    private final int[] fieldStarts = new int[NUM_FIELDS];
+    private final int[] fieldEnds = new int[NUM_FIELDS];
+    private long malformedCount;
+
+    /**
+     * Parses the complete lines of the stream, passing each entry to the handler. A trailing partial
+     * line (e.g. of a file still being written) is not consumed.
+     *
+     * @return the number of bytes consumed, i.e. up to and including the last newline
+     */
+    public long parse(InputStream in, Handler handler) throws IOException {
+        long consumed = 0;
+        int len = 0;
+        while (true) {
+            if (len == buf.length) {
+                // a line longer than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int read = in.read(buf, len, buf.length - len);
+            if (read < 0) break;
+            len += read;
+
+            int lineStart = 0;
+            for (int i = 0; i < len; i++) {
+                if (buf[i] == '\n') {
+                    parseLine(lineStart, i, handler);
+                    lineStart = i + 1;
+                }
+            }
+            consumed += lineStart;
+            // keep the partial line, to be completed by the next read
+            System.arraycopy(buf, lineStart, buf, 0, len - lineStart);
+            len -= lineStart;
+        }
+        return consumed;
+    }
+
+    /** The number of lines that could not be parsed, since this parser was created. */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+
+    private void parseLine(int start, int end, Handler handler) {
+        if (end > start && buf[end - 1] == '\r') end--;
+        if (end == start) return;
+
+        int field = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end && field < NUM_FIELDS; i++) {
+            if (i == end || buf[i] == ' ') {
+                fieldStarts[field] = fieldStart;
+                fieldEnds[field] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field < NUM_FIELDS) {
+            malformedCount++;
+            return;
+        }
+
+        long backend = parseAddress(fieldStarts[BACKEND_FIELD], fieldEnds[BACKEND_FIELD]);
+        double backendTime = parseDecimal(fieldStarts[BACKEND_PROCESSING_TIME_FIELD], fieldEnds[BACKEND_PROCESSING_TIME_FIELD]);
+        int elbStatus = parseStatus(fieldStarts[ELB_STATUS_FIELD], fieldEnds[ELB_STATUS_FIELD]);
+        int backendStatus = parseStatus(fieldStarts[BACKEND_STATUS_FIELD], fieldEnds[BACKEND_STATUS_FIELD]);
+        if (Double.isNaN(backendTime)) {
+            malformedCount++;
+            return;
+        }
+        handler.onEntry(backend, backendTime, elbStatus, backendStatus);
+    }
+
+    /** Parses "a.b.c.d:port" (or "-") to the IPv4 address as an unsigned int, or {@link #NO_BACKEND}. */
+    private long parseAddress(int start, int end) {
+        long result = 0;
+        int octet = 0;
+        int digits = 0;
+        int octets = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                octet = octet * 10 + (b - '0');
+                if (++digits > 3 || octet > 255) return NO_BACKEND;
+            } else if (b == '.' || b == ':') {
+                if (digits == 0) return NO_BACKEND;
+                result = (result << 8) | octet;
+                octets++;
+                octet = 0;
+                digits = 0;
+                if (b == ':') break;
+            } else {
+                return NO_BACKEND;
+            }
+        }
+        if (octets == 3 && digits > 0) {
+            // no port
+            result = (result << 8) | octet;
+            octets++;
+        }
+        return (octets == 4) ? result : NO_BACKEND;
+    }
+
+    /** Parses e.g. "0.000038" or "-1", returning NaN if malformed. */
+    private double parseDecimal(int start, int end) {
+        if (start == end) return Double.NaN;
+        boolean negative = buf[start] == '-';
+        int i = negative ? start + 1 : start;
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (scale >= 0) scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) return Double.NaN;
+        double result = (scale > 0) ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -result : result;
+    }
+
+    /** Parses a three-digit status code, or returns -1 (e.g. for "-"). */
+    private int parseStatus(int start, int end) {
+        if (end - start != 3) return -1;
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') return -1;
+            result = result * 10 + (b - '0');
+        }
+        return result;
+    }
+
+    /** Formats an address as returned to {@link Handler#onEntry}, e.g. "10.0.0.1". */
+    public static String formatAddress(long address) {
+        return ((address >> 24) & 0xff) + "." + ((address >> 16) & 0xff) + "." + ((address >> 8) & 0xff) + "." + (address & 0xff);
+    }
+}
@@ -0,0 +1,23 @@
+package brooklyn.entity.proxy.aws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Where the ELB's access log files can be read from: e.g. a local directory that the S3 bucket
+ * is synced to, or the bucket itself.
+ */
+public interface AccessLogStore {
+
+    /**
+     * The current log files and their sizes (in bytes), keyed by a name that is stable for as long as
+     * the file exists.
+     */
+    Map<String, Long> listFiles() throws IOException;
+
+    /**
+     * Opens the named file, positioned at the given offset.
+     */
+    InputStream open(String name, long offset) throws IOException;
+}
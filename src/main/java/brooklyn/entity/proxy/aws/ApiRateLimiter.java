@@ -0,0 +1,267 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * A token bucket for AWS API calls, shared by all controllers of a management node that use the same
+ * account and region (as AWS's rate limits are per account and region), so that many controllers
+ * scaling at once queue for the budget rather than all being throttled.
+ *
+ * Callers waiting for a permit are served in {@link Priority} order (and in arrival order within a
+ * priority), so e.g. deregistering a failed member is not stuck behind a bulk rebind. The priority is
+ * that of the calling thread; see {@link #setPriority(Priority)}.
+ *
+ * The rate and burst are management-node configuration, so all users of a bucket should ask for the
+ * same; one that asks for a different rate or burst is given the existing bucket, with a warning.
+ */
+public class ApiRateLimiter {
+
+    public enum Priority {
+        /** Calls reacting to failures, e.g. deregistering a failed member. */
+        FAILURE,
+        /** Normal operations, e.g. starting and reloading. */
+        ROUTINE,
+        /** Calls that can wait, e.g. re-initialising existing ELBs and background housekeeping. */
+        BULK;
+    }
+
+    public interface Listener {
+        /** Called after each permit is acquired, with how long the caller waited for it. */
+        void onAcquired(long waitNanos);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApiRateLimiter.class);
+
+    /** Methods of AWS clients that are not calls to AWS, so do not need a permit. */
+    private static final Set<String> LOCAL_METHODS = ImmutableSet.of(
+            "shutdown", "setEndpoint", "setRegion", "getCachedResponseMetadata",
+            "toString", "hashCode", "equals");
+
+    /** The window over which {@link #getUtilisation()} is measured. */
+    private static final int UTILISATION_WINDOW_SECONDS = 60;
+
+    private static final Map<ManagementContext, Map<String, ApiRateLimiter>> INSTANCES = new WeakHashMap<ManagementContext, Map<String, ApiRateLimiter>>();
+
+    private static final ThreadLocal<Priority> PRIORITY = new ThreadLocal<Priority>();
+
+    /**
+     * The bucket for the given account (e.g. access key id) and region, creating it with the given
+     * rate and burst if this is the first use. If the existing bucket has a different rate or burst, it
+     * is kept (as other callers are already sharing it), and a warning is logged.
+     */
+    public static ApiRateLimiter get(ManagementContext mgmt, String account, String region, double permitsPerSecond, int burst) {
+        // Key by a hash, so the account's identity is not kept in memory (or shown in toString)
+        String key = Hashing.murmur3_32().hashString(account, Charsets.UTF_8).toString() + "@" + region;
+        synchronized (INSTANCES) {
+            Map<String, ApiRateLimiter> limiters = INSTANCES.get(mgmt);
+            if (limiters == null) {
+                limiters = Maps.newHashMap();
+                INSTANCES.put(mgmt, limiters);
+            }
+            ApiRateLimiter result = limiters.get(key);
+            if (result == null) {
+                result = new ApiRateLimiter(key, permitsPerSecond, burst);
+                limiters.put(key, result);
+            } else if (result.permitsPerSecond != permitsPerSecond || result.burst != burst) {
+                LOG.warn("Ignoring AWS API rate {}/s (burst {}) for {}, which already has rate {}/s (burst {}); "
+                        + "set the rate in the management node's configuration, not per controller",
+                        new Object[] {permitsPerSecond, burst, key, result.permitsPerSecond, result.burst});
+            }
+            return result;
+        }
+    }
+
+    /** The priority of this thread's calls, by default {@link Priority#ROUTINE}. */
+    public static Priority getPriority() {
+        Priority result = PRIORITY.get();
+        return (result == null) ? Priority.ROUTINE : result;
+    }
+
+    /**
+     * Sets the priority of this thread's calls, returning the previous priority (to be restored in a
+     * finally block).
+     */
+    public static Priority setPriority(Priority priority) {
+        Priority result = getPriority();
+        PRIORITY.set(checkNotNull(priority, "priority"));
+        return result;
+    }
+
+    private static class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final long seq;
+
+        Waiter(Priority priority, long seq) {
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Waiter o) {
+            int result = priority.compareTo(o.priority);
+            return (result != 0) ? result : (seq < o.seq ? -1 : (seq == o.seq ? 0 : 1));
+        }
+    }
+
+    private final String name;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>();
+    private long nextSeq;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /** Permits granted per second, as a ring over the utilisation window, indexed by epoch second. */
+    private final int[] grantsPerSecond = new int[UTILISATION_WINDOW_SECONDS];
+    private long currentSecond;
+
+    protected ApiRateLimiter(String name, double permitsPerSecond, int burst) {
+        checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive, but was %s", permitsPerSecond);
+        checkArgument(burst >= 1, "burst must be at least 1, but was %s", burst);
+        this.name = name;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Waits for a permit at the calling thread's priority.
+     *
+     * @return how long the caller waited (nanos)
+     */
+    public long acquire() throws InterruptedException {
+        return acquire(getPriority());
+    }
+
+    public synchronized long acquire(Priority priority) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        Waiter waiter = new Waiter(priority, nextSeq++);
+        waiters.add(waiter);
+        boolean waited = false;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                if (waiters.peek() == waiter) {
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        recordGrant();
+                        return waited ? now - startNanos : 0;
+                    }
+                    // wait until the next token is due (or a higher priority caller arrives)
+                    long waitNanos = (long) ((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                    wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                } else {
+                    wait();
+                }
+                waited = true;
+            }
+        } finally {
+            waiters.remove(waiter);
+            notifyAll();
+        }
+    }
+
+    /**
+     * The fraction of the rate used over the last minute, by all users of the bucket (which can briefly
+     * exceed 1 as the burst is used).
+     */
+    public synchronized double getUtilisation() {
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        advanceTo(second);
+        long total = 0;
+        for (int count : grantsPerSecond) {
+            total += count;
+        }
+        return total / (permitsPerSecond * UTILISATION_WINDOW_SECONDS);
+    }
+
+    /**
+     * Returns a proxy of the given client, which acquires a permit (at the calling thread's priority)
+     * before each call to AWS.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T limited(final T delegate, Class<T> type, @Nullable final Listener listener) {
+        checkNotNull(delegate, "delegate");
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!LOCAL_METHODS.contains(method.getName())) {
+                    long waitNanos;
+                    try {
+                        waitNanos = acquire();
+                    } catch (InterruptedException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                    if (listener != null) listener.onAcquired(waitNanos);
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }});
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    private void recordGrant() {
+        long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        advanceTo(second);
+        grantsPerSecond[(int) (second % UTILISATION_WINDOW_SECONDS)]++;
+    }
+
+    /** Advances the ring to the given second, zeroing the counts of the seconds that have left the window. */
+    private void advanceTo(long second) {
+        if (second <= currentSecond) return;
+        long from = Math.max(currentSecond + 1, second - UTILISATION_WINDOW_SECONDS + 1);
+        for (long s = from; s <= second; s++) {
+            grantsPerSecond[(int) (s % UTILISATION_WINDOW_SECONDS)] = 0;
+        }
+        currentSecond = second;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("name", name)
+                .add("permitsPerSecond", permitsPerSecond)
+                .add("burst", burst)
+                .toString();
+    }
+}
@@ -0,0 +1,25 @@
+package brooklyn.entity.proxy.aws;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+
+/**
+ * Supplies recent request statistics for the members of a server pool.
+ */
+public interface BackendMetricsSource {
+
+    /**
+     * Returns the statistics for each of the given members observed since the given consumer's previous
+     * call; members with no new data are omitted.
+     *
+     * A source may be shared by several consumers (e.g. the adaptive health check and outlier ejection),
+     * each polling at its own rate, so the source keeps a separate cursor per consumer: one consumer's
+     * call does not take data from another's next call. A consumer's first call may return nothing, as
+     * its cursor starts then.
+     *
+     * @param consumer identifies the caller, e.g. "healthCheck"
+     */
+    Map<Entity, BackendStats> getStats(String consumer, Collection<? extends Entity> members);
+}
@@ -0,0 +1,93 @@
+package brooklyn.entity.proxy.aws;
+
+import java.io.Serializable;
+
+import com.google.common.base.Objects;
+
+/**
+ * Summary of the requests served by one backend instance over some recent window.
+ *
+ * Latencies are in milliseconds; a percentile is {@link Double#NaN} if the source cannot supply it
+ * (e.g. when derived from cumulative counters rather than individual requests).
+ */
+public class BackendStats implements Serializable {
+
+    private static final long serialVersionUID = -1820963415212740528L;
+
+    private final long requestCount;
+    private final long errorCount;
+    private final double meanLatencyMillis;
+    private final double p50LatencyMillis;
+    private final double p90LatencyMillis;
+    private final double p99LatencyMillis;
+
+    public BackendStats(long requestCount, long errorCount, double meanLatencyMillis) {
+        this(requestCount, errorCount, meanLatencyMillis, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    public BackendStats(long requestCount, long errorCount, double meanLatencyMillis,
+            double p50LatencyMillis, double p90LatencyMillis, double p99LatencyMillis) {
+        this.requestCount = requestCount;
+        this.errorCount = errorCount;
+        this.meanLatencyMillis = meanLatencyMillis;
+        this.p50LatencyMillis = p50LatencyMillis;
+        this.p90LatencyMillis = p90LatencyMillis;
+        this.p99LatencyMillis = p99LatencyMillis;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public double getErrorRate() {
+        return (requestCount == 0) ? 0 : ((double) errorCount) / requestCount;
+    }
+
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    public double getP50LatencyMillis() {
+        return p50LatencyMillis;
+    }
+
+    public double getP90LatencyMillis() {
+        return p90LatencyMillis;
+    }
+
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof BackendStats)) return false;
+        BackendStats o = (BackendStats) obj;
+        return requestCount == o.requestCount && errorCount == o.errorCount
+                && Double.compare(meanLatencyMillis, o.meanLatencyMillis) == 0
+                && Double.compare(p50LatencyMillis, o.p50LatencyMillis) == 0
+                && Double.compare(p90LatencyMillis, o.p90LatencyMillis) == 0
+                && Double.compare(p99LatencyMillis, o.p99LatencyMillis) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(requestCount, errorCount, meanLatencyMillis, p50LatencyMillis, p90LatencyMillis, p99LatencyMillis);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("requests", requestCount)
+                .add("errors", errorCount)
+                .add("mean", meanLatencyMillis)
+                .add("p50", p50LatencyMillis)
+                .add("p90", p90LatencyMillis)
+                .add("p99", p99LatencyMillis)
+                .toString();
+    }
+}
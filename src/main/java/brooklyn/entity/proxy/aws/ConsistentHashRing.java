@@ -0,0 +1,78 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Assigns keys (e.g. instance ids) to shards (e.g. ELB names) using consistent hashing.
+ *
+ * Each shard is placed on the ring at several points (virtual nodes), keyed by the shard's name,
+ * so adding or removing a shard only moves the keys that fall in that shard's segments of the ring;
+ * all other keys keep their existing assignment.
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final List<String> shards;
+    private final NavigableMap<Integer, String> ring = new TreeMap<Integer, String>();
+
+    public ConsistentHashRing(Collection<String> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(Collection<String> shards, int virtualNodes) {
+        checkArgument(virtualNodes > 0, "virtualNodes must be positive, but was %s", virtualNodes);
+        this.shards = ImmutableList.copyOf(checkNotNull(shards, "shards"));
+        checkArgument(!this.shards.isEmpty(), "must have at least one shard");
+        for (String shard : this.shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    public String shardFor(String key) {
+        Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(checkNotNull(key, "key")));
+        return (entry != null) ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Returns the keys assigned to each shard; every shard is included (possibly with no keys),
+     * in the order the shards were supplied.
+     */
+    public Map<String, Set<String>> partition(Iterable<String> keys) {
+        Map<String, Set<String>> result = Maps.newLinkedHashMap();
+        for (String shard : shards) {
+            result.put(shard, Sets.<String>newLinkedHashSet());
+        }
+        for (String key : keys) {
+            result.get(shardFor(key)).add(key);
+        }
+        return result;
+    }
+
+    private static int hash(String val) {
+        return HASH.hashString(val, Charsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,311 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nullable;
+
+import com.amazonaws.services.elasticloadbalancing.model.HealthCheck;
+import com.amazonaws.services.elasticloadbalancing.model.Instance;
+import com.amazonaws.services.elasticloadbalancing.model.Listener;
+import com.amazonaws.services.elasticloadbalancing.model.ListenerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compares what the ELB (or its shards) describes with what the controller last applied, and guards the
+ * repair of any drift against concurrent registration changes.
+ *
+ * Registration changes by the controller are bracketed by {@link #beginRegistrationChange()} and
+ * {@link #endRegistrationChange()}, which share a read lock so run concurrently with each other. A drift
+ * check notes {@link #getRegistrationChanges()} before describing the ELB: its result is inconclusive if
+ * a change overlapped it, and its repair runs (in {@link #repairIfUnchangedSince(long, Runnable)}) under
+ * the write lock, only if there has been no change since. So a repair never undoes a newer registration
+ * based on a stale description.
+ *
+ * The ELB is only compared in detail if the combined fingerprint of what it describes and what was applied
+ * differs from that of the last check which found them in sync.
+ */
+public class DriftDetector {
+
+    public enum Kind {
+        /** Instances expected to be registered, but not. */
+        INSTANCES_DEREGISTERED,
+        /** Instances registered, but not expected to be. */
+        INSTANCES_REGISTERED,
+        NO_LISTENER,
+        HEALTH_CHECK
+    }
+
+    /** A difference between an ELB and what the controller last applied. */
+    public static class Difference {
+        private final Kind kind;
+        private final String elbName;
+        private final Set<String> instanceIds;
+        private final String description;
+
+        Difference(Kind kind, String elbName, Set<String> instanceIds, String description) {
+            this.kind = checkNotNull(kind, "kind");
+            this.elbName = checkNotNull(elbName, "elbName");
+            this.instanceIds = ImmutableSet.copyOf(instanceIds);
+            this.description = checkNotNull(description, "description");
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getElbName() {
+            return elbName;
+        }
+
+        /** The instances affected, for {@link Kind#INSTANCES_DEREGISTERED} and {@link Kind#INSTANCES_REGISTERED}. */
+        public Set<String> getInstanceIds() {
+            return instanceIds;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /** What the controller last applied. */
+    public static class Expected {
+        private final Map<String, Set<String>> instances;
+        private final Listener listener;
+        private final HealthCheckSettings healthCheck;
+
+        /**
+         * @param instances   the instances last registered with each ELB (or shard), keyed by ELB name; an ELB
+         *                    absent from the map is not checked for instance drift
+         * @param healthCheck the health check settings, or null if the health check is not managed
+         */
+        public Expected(Map<String, Set<String>> instances, Listener listener, @Nullable HealthCheckSettings healthCheck) {
+            this.instances = ImmutableMap.copyOf(instances);
+            this.listener = checkNotNull(listener, "listener");
+            this.healthCheck = healthCheck;
+        }
+
+        public Map<String, Set<String>> getInstances() {
+            return instances;
+        }
+
+        public Listener getListener() {
+            return listener;
+        }
+
+        @Nullable
+        public HealthCheckSettings getHealthCheck() {
+            return healthCheck;
+        }
+
+        @Override
+        public String toString() {
+            Map<String, Set<String>> sorted = Maps.newTreeMap();
+            for (Map.Entry<String, Set<String>> entry : instances.entrySet()) {
+                sorted.put(entry.getKey(), Sets.newTreeSet(entry.getValue()));
+            }
+            return sorted+"; "+listener+"; "+healthCheck;
+        }
+    }
+
+    /** The outcome of comparing an ELB with what was applied. */
+    public static class Check {
+        private final HashCode fingerprint;
+        private final boolean unchanged;
+        private final List<Difference> differences;
+
+        Check(HashCode fingerprint, boolean unchanged, List<Difference> differences) {
+            this.fingerprint = checkNotNull(fingerprint, "fingerprint");
+            this.unchanged = unchanged;
+            this.differences = ImmutableList.copyOf(differences);
+        }
+
+        /** Whether nothing has changed since the last check which found the ELB in sync, so it was not compared again. */
+        public boolean isUnchanged() {
+            return unchanged;
+        }
+
+        public boolean isInSync() {
+            return differences.isEmpty();
+        }
+
+        public List<Difference> getDifferences() {
+            return differences;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("unchanged", unchanged).add("differences", differences).toString();
+        }
+    }
+
+    private final ReentrantReadWriteLock registrationLock = new ReentrantReadWriteLock();
+    private final AtomicLong registrationChanges = new AtomicLong();
+    /** The fingerprint of the last check that found the ELB in sync, or null. */
+    private volatile HashCode inSyncFingerprint;
+
+    /** Must be followed by {@link #endRegistrationChange()}, in the same thread. */
+    public void beginRegistrationChange() {
+        registrationLock.readLock().lock();
+    }
+
+    public void endRegistrationChange() {
+        registrationChanges.incrementAndGet();
+        registrationLock.readLock().unlock();
+    }
+
+    /** The number of registration changes completed (including repairs). */
+    public long getRegistrationChanges() {
+        return registrationChanges.get();
+    }
+
+    public boolean isRegistrationChanging() {
+        return registrationLock.getReadLockCount() > 0;
+    }
+
+    /** Whether no registration change has started since the given {@link #getRegistrationChanges()}. */
+    public boolean isUnchangedSince(long changes) {
+        return !isRegistrationChanging() && registrationChanges.get() == changes;
+    }
+
+    /**
+     * Runs the repair exclusively of registration changes, if there has been none since the given
+     * {@link #getRegistrationChanges()}; the repair itself then counts as a change.
+     *
+     * @return whether the repair ran
+     */
+    public boolean repairIfUnchangedSince(long changes, Runnable repair) {
+        registrationLock.writeLock().lock();
+        try {
+            if (registrationChanges.get() != changes) return false;
+            inSyncFingerprint = null;
+            try {
+                repair.run();
+            } finally {
+                registrationChanges.incrementAndGet();
+            }
+            return true;
+        } finally {
+            registrationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compares the ELBs with what was applied, unless neither has changed since the last check which found
+     * them in sync (as recorded by {@link #recordOutcome(Check)}).
+     */
+    public Check check(List<LoadBalancerDescription> descriptions, Expected expected) {
+        HashCode fingerprint = fingerprint(descriptions, expected);
+        if (fingerprint.equals(inSyncFingerprint)) {
+            return new Check(fingerprint, true, ImmutableList.<Difference>of());
+        }
+        return new Check(fingerprint, false, compare(descriptions, expected));
+    }
+
+    /**
+     * Records the outcome of a conclusive check (one that no registration change overlapped), so that a
+     * later check can skip the comparison if nothing has changed since it found the ELB in sync.
+     */
+    public void recordOutcome(Check check) {
+        inSyncFingerprint = check.isInSync() ? check.fingerprint : null;
+    }
+
+    /** Forgets that the ELB was in sync, e.g. if it could not be described. */
+    public void forgetOutcome() {
+        inSyncFingerprint = null;
+    }
+
+    /**
+     * A hash of the ELBs' instances, listeners and health checks, and of what was applied, so that if
+     * neither has changed since the ELB was last found in sync it need not be compared again.
+     */
+    protected HashCode fingerprint(List<LoadBalancerDescription> descriptions, Expected expected) {
+        Map<String, String> described = Maps.newTreeMap();
+        for (LoadBalancerDescription description : descriptions) {
+            Set<String> listeners = Sets.newTreeSet();
+            for (ListenerDescription listenerDescription : description.getListenerDescriptions()) {
+                listeners.add(String.valueOf(listenerDescription.getListener()));
+            }
+            described.put(description.getLoadBalancerName(), Sets.newTreeSet(getInstanceIds(description))+"; "+listeners
+                    +"; "+description.getHealthCheck());
+        }
+        return Hashing.murmur3_128().hashString(described+"\n"+expected, Charsets.UTF_8);
+    }
+
+    /** Compares each ELB's registered instances, listener and health check with what was applied. */
+    protected List<Difference> compare(List<LoadBalancerDescription> descriptions, Expected expected) {
+        List<Difference> result = Lists.newArrayList();
+        for (LoadBalancerDescription description : descriptions) {
+            result.addAll(compare(description, expected));
+        }
+        return result;
+    }
+
+    protected List<Difference> compare(LoadBalancerDescription description, Expected expected) {
+        String elbName = description.getLoadBalancerName();
+        List<Difference> result = Lists.newArrayList();
+
+        Set<String> expectedInstanceIds = expected.getInstances().get(elbName);
+        if (expectedInstanceIds != null) {
+            Set<String> instanceIds = getInstanceIds(description);
+            Set<String> deregistered = Sets.difference(expectedInstanceIds, instanceIds);
+            Set<String> registered = Sets.difference(instanceIds, expectedInstanceIds);
+            if (!deregistered.isEmpty()) {
+                result.add(new Difference(Kind.INSTANCES_DEREGISTERED, elbName, deregistered, elbName+": instances deregistered "+deregistered));
+            }
+            if (!registered.isEmpty()) {
+                result.add(new Difference(Kind.INSTANCES_REGISTERED, elbName, registered, elbName+": instances registered "+registered));
+            }
+        }
+
+        Listener wanted = expected.getListener();
+        boolean hasListener = false;
+        for (ListenerDescription listenerDescription : description.getListenerDescriptions()) {
+            hasListener |= ElbControllerImpl.isSameListenerIgnoringCertificate(listenerDescription.getListener(), wanted);
+        }
+        if (!hasListener) {
+            result.add(new Difference(Kind.NO_LISTENER, elbName, ImmutableSet.<String>of(), elbName+": no listener from "
+                    +wanted.getProtocol()+" port "+wanted.getLoadBalancerPort()+" to "+wanted.getInstanceProtocol()+" port "+wanted.getInstancePort()));
+        }
+
+        HealthCheck healthCheck = description.getHealthCheck();
+        if (expected.getHealthCheck() != null && healthCheck != null) {
+            HealthCheckSettings actual = new HealthCheckSettings(healthCheck.getInterval(), healthCheck.getTimeout(),
+                    healthCheck.getHealthyThreshold(), healthCheck.getUnhealthyThreshold());
+            if (!actual.equals(expected.getHealthCheck())) {
+                result.add(new Difference(Kind.HEALTH_CHECK, elbName, ImmutableSet.<String>of(), elbName+": health check "
+                        +actual+" instead of "+expected.getHealthCheck()));
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> getInstanceIds(LoadBalancerDescription description) {
+        Set<String> result = Sets.newLinkedHashSet();
+        for (Instance instance : description.getInstances()) {
+            result.add(instance.getInstanceId());
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("registrationChanges", registrationChanges.get()).toString();
+    }
+}
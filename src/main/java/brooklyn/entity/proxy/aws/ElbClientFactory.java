@@ -0,0 +1,14 @@
+package brooklyn.entity.proxy.aws;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+
+/**
+ * Creates the ELB API clients used by {@link ElbController}, e.g. to supply a stub or recording client
+ * in tests. Each client is shut down by the controller after use.
+ */
+public interface ElbClientFactory {
+
+    AmazonElasticLoadBalancing newClient(JcloudsLocation loc, String regionName);
+}
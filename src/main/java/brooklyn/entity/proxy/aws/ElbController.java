@@ -1,11 +1,15 @@
 package brooklyn.entity.proxy.aws;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.brooklyn.api.entity.ImplementedBy;
 import org.apache.brooklyn.api.sensor.AttributeSensor;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.annotation.Effector;
+import org.apache.brooklyn.core.annotation.EffectorParam;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.entity.Attributes;
 import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
@@ -14,6 +18,7 @@ import org.apache.brooklyn.core.sensor.BasicAttributeSensorAndConfigKey;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.entity.proxy.AbstractNonProvisionedController;
 import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.time.Duration;
 
 import com.google.common.reflect.TypeToken;
 
@@ -33,6 +38,44 @@ public interface ElbController extends AbstractNonProvisionedController {
 
     AttributeSensor<String> HOSTNAME = Attributes.HOSTNAME;
 
+    ConfigKey<ElbClientFactory> ELB_CLIENT_FACTORY = ConfigKeys.newConfigKey(
+            ElbClientFactory.class,
+            "aws.elb.clientFactory",
+            "Creates the clients for calls to the ELB API (defaults to an AWS SDK client using the location's credentials)",
+            null);
+
+    ConfigKey<SpanExporter> TRACING_SPAN_EXPORTER = ConfigKeys.newConfigKey(
+            SpanExporter.class,
+            "aws.elb.tracing.spanExporter",
+            "Receives tracing spans for starts, reloads and each AWS call (tracing is disabled if neither this nor "
+                    + "aws.elb.tracing.file is set)",
+            null);
+
+    ConfigKey<String> TRACING_FILE = ConfigKeys.newStringConfigKey(
+            "aws.elb.tracing.file",
+            "File to which tracing spans are appended as JSON lines, if no aws.elb.tracing.spanExporter is set");
+
+    ConfigKey<Double> API_RATE_LIMIT = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.apiRateLimit",
+            "Calls per second to AWS allowed for each account and region, shared by all controllers on this "
+                    + "management node (0, the default, for no limit). Management node configuration (e.g. in brooklyn.properties), "
+                    + "so every controller sharing the limit agrees on it; not read from the controller's own config",
+            0.0);
+
+    ConfigKey<Integer> API_RATE_BURST = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.apiRateBurst",
+            "Calls to AWS allowed in a burst, above aws.elb.apiRateLimit. Management node configuration, like aws.elb.apiRateLimit",
+            20);
+
+    AttributeSensor<Double> API_RATE_UTILISATION = Sensors.newDoubleSensor(
+            "aws.elb.apiRate.utilisation",
+            "Fraction of the account and region's AWS call rate used over the last minute, by all controllers on this management node");
+
+    AttributeSensor<Duration> API_RATE_WAIT_TIME = Sensors.newSensor(
+            Duration.class,
+            "aws.elb.apiRate.waitTime",
+            "Total time this controller's calls to AWS have waited for the shared rate limit");
+
     ConfigKey<Boolean> BIND_TO_EXISTING = ConfigKeys.newBooleanConfigKey(
             "aws.elb.bindToExisting", 
             "Whether to bind to an existing load balance, or create a new one", 
@@ -57,6 +100,30 @@ public interface ElbController extends AbstractNonProvisionedController {
     ConfigKey<String> SSL_CERTIFICATE_ID = ConfigKeys.newStringConfigKey(
             "aws.elb.sslCertificateId", "The ARN string of the server certificate", null);
     
+    ConfigKey<String> SSL_NEGOTIATION_POLICY = ConfigKeys.newStringConfigKey(
+            "aws.elb.sslNegotiationPolicy",
+            "A predefined SSL negotiation policy (e.g. ELBSecurityPolicy-2016-08) for an HTTPS or SSL listener; "
+                    + "if neither this nor aws.elb.sslNegotiationPolicy.attributes is set, the ELB's default policy is used",
+            null);
+
+    @SuppressWarnings("serial")
+    ConfigKey<Map<String, String>> SSL_NEGOTIATION_POLICY_ATTRIBUTES = ConfigKeys.newConfigKey(
+            new TypeToken<Map<String, String>>() {},
+            "aws.elb.sslNegotiationPolicy.attributes",
+            "Attributes of a custom SSL negotiation policy for an HTTPS or SSL listener, e.g. {Protocol-TLSv1.2: true, "
+                    + "Server-Defined-Cipher-Order: true, ECDHE-RSA-AES128-GCM-SHA256: true}; takes precedence over aws.elb.sslNegotiationPolicy",
+            null);
+
+    AttributeSensor<String> SSL_NEGOTIATION_POLICY_ACTIVE = Sensors.newStringSensor(
+            "aws.elb.sslNegotiationPolicy.active",
+            "The name of the SSL negotiation policy applied to the ELB's listener (null if using the ELB's default)");
+
+    ConfigKey<Integer> CONNECTION_IDLE_TIMEOUT = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.connectionIdleTimeout",
+            "Time, in seconds, the ELB keeps idle front-end and back-end connections open (1 to 3600; the ELB's default is 60); "
+                    + "back-ends should use a longer keep-alive timeout than this so the ELB can re-use its connections to them",
+            null);
+
     ConfigKey<Integer> INSTANCE_PORT = ConfigKeys.newIntegerConfigKey("aws.elb.instancePort", "The port for instances being balanced", 8080);
 
     ConfigKey<String> INSTANCE_PROTOCOL = ConfigKeys.newStringConfigKey(
@@ -110,6 +177,445 @@ public interface ElbController extends AbstractNonProvisionedController {
     ConfigKey<Integer> HEALTH_CHECK_UNHEALTHY_THRESHOLD = ConfigKeys.newIntegerConfigKey(
             "aws.elb.healthCheck.unhealthyThreshold", "The number of consecutive health probe failures required before moving the instance to the Unhealthy state", 2);
 
+    ConfigKey<Boolean> HEALTH_CHECK_ADAPTIVE_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.healthCheck.adaptive.enabled",
+            "Whether to periodically retune the health check's interval, timeout and thresholds (within the adaptive bounds) "
+                    + "from observed backend latencies and from instances the ELB fails while Brooklyn reports them healthy",
+            false);
+
+    ConfigKey<Duration> HEALTH_CHECK_ADAPTIVE_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.healthCheck.adaptive.period", "How often to re-evaluate the adaptive health check", Duration.FIVE_MINUTES);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MIN_INTERVAL = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.minInterval", "Lower bound, in seconds, for the adaptive health check interval", 5);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MAX_INTERVAL = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.maxInterval", "Upper bound, in seconds, for the adaptive health check interval", 60);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MIN_TIMEOUT = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.minTimeout", "Lower bound, in seconds, for the adaptive health check timeout", 2);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MAX_TIMEOUT = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.maxTimeout", "Upper bound, in seconds, for the adaptive health check timeout", 30);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MIN_HEALTHY_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.minHealthyThreshold", "Lower bound for the adaptive healthy threshold (at least 2, the ELB's minimum)", 2);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MAX_HEALTHY_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.maxHealthyThreshold", "Upper bound for the adaptive healthy threshold", 5);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MIN_UNHEALTHY_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.minUnhealthyThreshold", "Lower bound for the adaptive unhealthy threshold (at least 2, the ELB's minimum)", 2);
+
+    ConfigKey<Integer> HEALTH_CHECK_ADAPTIVE_MAX_UNHEALTHY_THRESHOLD = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.healthCheck.adaptive.maxUnhealthyThreshold", "Upper bound for the adaptive unhealthy threshold", 5);
+
+    ConfigKey<BackendMetricsSource> BACKEND_METRICS_SOURCE = ConfigKeys.newConfigKey(
+            BackendMetricsSource.class,
+            "aws.elb.backendMetrics.source",
+            "Where to get per-member request statistics from (defaults to the access logs if configured, otherwise the members' webapp.reqs.* sensors)",
+            null);
+
+    AttributeSensor<Integer> HEALTH_CHECK_ACTIVE_INTERVAL = Sensors.newIntegerSensor(
+            "aws.elb.healthCheck.active.interval", "The health check interval, in seconds, currently applied to the ELB");
+
+    AttributeSensor<Integer> HEALTH_CHECK_ACTIVE_TIMEOUT = Sensors.newIntegerSensor(
+            "aws.elb.healthCheck.active.timeout", "The health check timeout, in seconds, currently applied to the ELB");
+
+    AttributeSensor<Integer> HEALTH_CHECK_ACTIVE_HEALTHY_THRESHOLD = Sensors.newIntegerSensor(
+            "aws.elb.healthCheck.active.healthyThreshold", "The health check healthy threshold currently applied to the ELB");
+
+    AttributeSensor<Integer> HEALTH_CHECK_ACTIVE_UNHEALTHY_THRESHOLD = Sensors.newIntegerSensor(
+            "aws.elb.healthCheck.active.unhealthyThreshold", "The health check unhealthy threshold currently applied to the ELB");
+
+    ConfigKey<Boolean> READINESS_CHECK_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.readiness.enabled",
+            "Whether to wait, when starting, until the ELB is ready (by default, its hostname resolves and its listener accepts "
+                    + "connections) before reporting service up; if it is not ready within aws.elb.readiness.timeout, start fails",
+            true);
+
+    ConfigKey<ReadinessChecker> READINESS_CHECKER = ConfigKeys.newConfigKey(
+            ReadinessChecker.class,
+            "aws.elb.readiness.checker",
+            "Checks whether the ELB is ready (defaults to resolving its hostname and connecting to the listener port)",
+            null);
+
+    ConfigKey<Duration> READINESS_TIMEOUT = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.readiness.timeout",
+            "How long to wait for the ELB to become ready (a new ELB's DNS name can take several minutes to resolve)",
+            Duration.minutes(10));
+
+    ConfigKey<Duration> READINESS_MAX_INTERVAL = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.readiness.maxInterval",
+            "Maximum time between readiness checks (the interval starts at one second, doubling after each failed check)",
+            Duration.THIRTY_SECONDS);
+
+    AttributeSensor<Duration> TIME_TO_READY = Sensors.newSensor(
+            Duration.class,
+            "aws.elb.timeToReady",
+            "Time from starting to create (or claim, or bind to) the ELB until it was ready to receive traffic");
+
+    ConfigKey<Boolean> RESOLVED_ADDRESSES_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.resolvedAddresses.enabled",
+            "Whether to periodically resolve the ELB's hostname, publishing the addresses as aws.elb.resolvedAddresses",
+            true);
+
+    ConfigKey<HostnameResolver> HOSTNAME_RESOLVER = ConfigKeys.newConfigKey(
+            HostnameResolver.class,
+            "aws.elb.resolvedAddresses.resolver",
+            "Resolves the ELB's hostname (defaults to the JVM's resolver)",
+            null);
+
+    ConfigKey<Duration> RESOLVED_ADDRESSES_DEFAULT_TTL = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.resolvedAddresses.defaultTtl",
+            "How long to wait before re-resolving the ELB's hostname, when the resolver does not report the record's TTL "
+                    + "(ELB DNS records have a 60 second TTL)",
+            Duration.ONE_MINUTE);
+
+    ConfigKey<Duration> RESOLVED_ADDRESSES_MIN_REFRESH = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.resolvedAddresses.minRefresh", "Minimum time between resolutions of the ELB's hostname", Duration.TEN_SECONDS);
+
+    ConfigKey<Duration> RESOLVED_ADDRESSES_MAX_REFRESH = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.resolvedAddresses.maxRefresh", "Maximum time between resolutions of the ELB's hostname", Duration.FIVE_MINUTES);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Set<String>> RESOLVED_ADDRESSES = Sensors.newSensor(
+            new TypeToken<Set<String>>() {},
+            "aws.elb.resolvedAddresses",
+            "The IP addresses the ELB's hostname currently resolves to (across all shards, if sharded); "
+                    + "only published when the set changes");
+
+    ConfigKey<AccessLogStore> ACCESS_LOG_STORE = ConfigKeys.newConfigKey(
+            AccessLogStore.class,
+            "aws.elb.accessLog.store",
+            "Where to read the ELB's access logs from, for per-backend latency and error statistics (if not set, and "
+                    + "aws.elb.accessLog.directory is not set, access logs are not read)",
+            null);
+
+    ConfigKey<String> ACCESS_LOG_DIRECTORY = ConfigKeys.newStringConfigKey(
+            "aws.elb.accessLog.directory",
+            "A local directory containing the ELB's access logs (e.g. synced from the ELB's S3 bucket); "
+                    + "a shorthand for a LocalDirectoryAccessLogStore",
+            null);
+
+    ConfigKey<Duration> ACCESS_LOG_POLL_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.accessLog.pollPeriod", "How often to read new entries from the access logs", Duration.ONE_MINUTE);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, BackendStats>> ACCESS_LOG_BACKEND_STATS = Sensors.newSensor(
+            new TypeToken<Map<String, BackendStats>>() {},
+            "aws.elb.accessLog.backendStats",
+            "Request count, error count and latency percentiles of each server pool member, keyed by member id, "
+                    + "from the access log entries read in the most recent poll that found any");
+
+    ConfigKey<Integer> WARM_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.warmPool.size",
+            "The number of pre-created, unassigned ELBs to keep for controllers with this controller's region, scheme, subnets "
+                    + "and security groups; if positive, and no aws.elb.loadBalancerName is configured, starting claims one of "
+                    + "these (re-initialising it to this configuration) rather than creating a new ELB. "
+                    + "Every controller with this set tops up the pool when it starts, whether or not it claimed from it, "
+                    + "and deletes pooled ELBs above this size when it starts or stops; the last such controller on the "
+                    + "management node to stop deletes every pooled ELB",
+            0);
+
+    AttributeSensor<Integer> WARM_POOL_AVAILABLE = Sensors.newIntegerSensor(
+            "aws.elb.warmPool.available",
+            "The number of unclaimed ELBs in this controller's warm pool, as of its last refill");
+
+    AttributeSensor<Duration> WARM_POOL_CLAIM_LATENCY = Sensors.newSensor(
+            Duration.class,
+            "aws.elb.warmPool.claimLatency",
+            "Time taken to claim an ELB from the warm pool and re-initialise it, when this controller started");
+
+    AttributeSensor<Long> WARM_POOL_MISSES = Sensors.newLongSensor(
+            "aws.elb.warmPool.misses",
+            "The number of controllers (with this controller's warm pool profile) that found the pool empty when starting, "
+                    + "since the management node started");
+
+    /**
+     * How to keep per-instance load even when instances are unevenly spread across availability zones
+     * (with cross-zone load balancing off, the ELB gives each zone an equal share of traffic however
+     * many instances it has).
+     */
+    enum ZoneBalancingMode {
+        /** Only report the spread (the default). */
+        NONE,
+        /** Disable zones whose instances would get more than the max skew times an even share of load, re-enabling them when they recover. */
+        DISABLE_LOW_CAPACITY_ZONES,
+        /** Hold back (i.e. do not register) instances beyond the max skew times the smallest zone's count, in each other zone. */
+        HOLD_BACK_EXCESS
+    }
+
+    ConfigKey<ZoneBalancingMode> ZONE_BALANCING_MODE = ConfigKeys.newConfigKey(
+            ZoneBalancingMode.class,
+            "aws.elb.zoneBalancing.mode",
+            "How to balance per-instance load across availability zones: NONE, DISABLE_LOW_CAPACITY_ZONES (not supported for "
+                    + "ELBs in a VPC, i.e. with subnets) or HOLD_BACK_EXCESS; ignored if cross-zone load balancing is enabled",
+            ZoneBalancingMode.NONE);
+
+    ConfigKey<Double> ZONE_BALANCING_MAX_SKEW = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.zoneBalancing.maxSkew",
+            "The tolerated aws.elb.zoneBalancing.skew before zones are disabled or registrations held back",
+            1.5);
+
+    ConfigKey<Boolean> CROSS_ZONE_LOAD_BALANCING = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.crossZoneLoadBalancing",
+            "Whether the ELB distributes traffic evenly across all instances rather than equally across zones "
+                    + "(if not set, the ELB's setting is left unchanged)",
+            null);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Set<String>> LOAD_BALANCER_AVAILABILITY_ZONES = Sensors.newSensor(
+            new TypeToken<Set<String>>() {},
+            "aws.elb.availabilityZones",
+            "The availability zones the ELB was configured with when started");
+
+    AttributeSensor<String> LOAD_BALANCER_VPC_ID = Sensors.newStringSensor(
+            "aws.elb.vpcId",
+            "The VPC of the ELB (not set for an ELB in EC2-Classic); members' instance ids are only looked up within it");
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, Integer>> ZONE_INSTANCE_COUNTS = Sensors.newSensor(
+            new TypeToken<Map<String, Integer>>() {},
+            "aws.elb.zoneBalancing.instanceCounts",
+            "The number of instances registered with the ELB in each of its availability zones");
+
+    AttributeSensor<Double> ZONE_SKEW = Sensors.newDoubleSensor(
+            "aws.elb.zoneBalancing.skew",
+            "The load on instances in the most under-provisioned enabled zone, relative to an even spread of load across all "
+                    + "registered instances (1.0 is balanced), assuming cross-zone load balancing is off");
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Set<String>> DISABLED_AVAILABILITY_ZONES = Sensors.newSensor(
+            new TypeToken<Set<String>>() {},
+            "aws.elb.zoneBalancing.disabledZones",
+            "Availability zones temporarily disabled on the ELB because they have too few instances");
+
+    ConfigKey<Integer> SHARD_COUNT = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.shardCount",
+            "The number of ELBs to spread the server pool across. If greater than 1, the ELBs are named "
+                    + "<loadBalancerName>-0 to <loadBalancerName>-<n-1>, and each member is assigned to one of them "
+                    + "by consistent hashing of its instance id",
+            1);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, String>> SHARD_HOSTNAMES = Sensors.newSensor(
+            new TypeToken<Map<String, String>>() {},
+            "aws.elb.shards.hostnames",
+            "The hostname of each ELB shard, keyed by ELB name (only set if sharded)");
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, Integer>> SHARD_MEMBER_COUNTS = Sensors.newSensor(
+            new TypeToken<Map<String, Integer>>() {},
+            "aws.elb.shards.memberCounts",
+            "The number of instances registered with each ELB shard, keyed by ELB name (only set if sharded)");
+
+    ConfigKey<Boolean> INSTANCE_ID_RESOLUTION_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.instanceIdResolution.enabled",
+            "Whether to look up the EC2 instance ids of members whose location does not know them (e.g. BYON, WinRM or "
+                    + "externally provisioned machines), by the member's host.subnet.address or host.subnet.hostname",
+            true);
+
+    ConfigKey<Duration> INSTANCE_ID_RESOLUTION_RETRY_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.instanceIdResolution.retryPeriod",
+            "How long to wait before looking up a member again if no EC2 instance matched its address",
+            Duration.THIRTY_SECONDS);
+
+    ConfigKey<Boolean> FAST_DEREGISTRATION_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.fastDeregistration.enabled",
+            "Whether to deregister a member from the ELB as soon as its service.isUp or service.state reports "
+                    + "a failure (rather than waiting for the ELB's health check), re-registering it once it recovers",
+            true);
+
+    AttributeSensor<Duration> FAST_DEREGISTRATION_LATENCY = Sensors.newSensor(
+            Duration.class,
+            "aws.elb.fastDeregistration.latency",
+            "Time from detecting the most recent member failure to that member being deregistered from the ELB");
+
+    ConfigKey<Duration> PROPAGATION_SLO = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.propagation.slo",
+            "The target time from a member joining or leaving the server pool until its instance is registered with "
+                    + "(or deregistered from) the ELB; changes taking longer are counted in aws.elb.propagation.sloBreaches",
+            Duration.ONE_MINUTE);
+
+    ConfigKey<Boolean> PROPAGATION_CONFIRM_HEALTH = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.propagation.confirmHealth",
+            "Whether a membership change only counts as propagated once the ELB's DescribeInstanceHealth reports the "
+                    + "instance InService (or OutOfService, or gone, for a member leaving), rather than once it is registered "
+                    + "or deregistered",
+            false);
+
+    ConfigKey<Duration> PROPAGATION_HEALTH_POLL_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.propagation.healthPollPeriod",
+            "How often to count overdue membership changes as SLO breaches, and to check the ELB's instance health while "
+                    + "changes await confirmation (if aws.elb.propagation.confirmHealth)",
+            Duration.FIVE_SECONDS);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, Double>> PROPAGATION_LATENCY = Sensors.newSensor(
+            new TypeToken<Map<String, Double>>() {},
+            "aws.elb.propagation.latency",
+            "Distribution of the time (ms) for membership changes to reach the ELB since the controller started: "
+                    + "count, mean, p50, p90, p99 and max");
+
+    AttributeSensor<Duration> PROPAGATION_LATENCY_LAST = Sensors.newSensor(
+            Duration.class,
+            "aws.elb.propagation.latency.last",
+            "Time for the most recent membership change to reach the ELB");
+
+    AttributeSensor<Long> PROPAGATION_SLO_BREACHES = Sensors.newLongSensor(
+            "aws.elb.propagation.sloBreaches",
+            "Number of membership changes that took (or have been pending for) longer than aws.elb.propagation.slo");
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, String>> EXCLUDED_INSTANCES = Sensors.newSensor(
+            new TypeToken<Map<String, String>>() {},
+            "aws.elb.excludedInstances",
+            "Instances in the server pool that are deliberately not registered with the ELB, with the reason for each");
+
+    ConfigKey<Boolean> OUTLIER_EJECTION_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.outlierEjection.enabled",
+            "Whether to temporarily deregister members whose latency or error rate is far worse than the rest of the pool's "
+                    + "(using the statistics from aws.elb.backendMetrics.source)",
+            false);
+
+    ConfigKey<Duration> OUTLIER_EJECTION_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.outlierEjection.period", "How often to look for outliers", Duration.ONE_MINUTE);
+
+    ConfigKey<Double> OUTLIER_LATENCY_FACTOR = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.outlierEjection.latencyFactor",
+            "A member is an outlier if its p99 latency (or mean, if percentiles are not available) is more than this multiple "
+                    + "of the pool's median",
+            3.0);
+
+    ConfigKey<Double> OUTLIER_MIN_LATENCY_DELTA_MILLIS = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.outlierEjection.minLatencyDeltaMillis",
+            "A member is only a latency outlier if it is also at least this many milliseconds slower than the pool's median",
+            50.0);
+
+    ConfigKey<Double> OUTLIER_ERROR_RATE_MARGIN = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.outlierEjection.errorRateMargin",
+            "A member is an outlier if its error rate is more than this (e.g. 0.1 for 10 percentage points) above the pool's",
+            0.1);
+
+    ConfigKey<Long> OUTLIER_MIN_REQUESTS = ConfigKeys.newLongConfigKey(
+            "aws.elb.outlierEjection.minRequests", "Members with fewer requests than this in a period are not assessed", 20L);
+
+    ConfigKey<Integer> OUTLIER_MIN_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "aws.elb.outlierEjection.minPoolSize",
+            "No member is assessed unless at least this many (and at least 2) have enough requests to be compared", 3);
+
+    ConfigKey<Double> OUTLIER_MAX_EJECTION_FRACTION = ConfigKeys.newDoubleConfigKey(
+            "aws.elb.outlierEjection.maxEjectionFraction",
+            "The maximum fraction of the server pool that can be excluded from the ELB for any reason (e.g. failed or held back "
+                    + "for zone balance) before no more outliers are ejected; rounded down, so with the default no member of a pool "
+                    + "of fewer than five is ejected",
+            0.2);
+
+    ConfigKey<Duration> OUTLIER_EJECTION_COOLDOWN = ConfigKeys.newConfigKey(
+            Duration.class, "aws.elb.outlierEjection.cooldown", "How long an ejected member is kept out of the ELB before being re-admitted", Duration.FIVE_MINUTES);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Map<String, String>> EJECTED_MEMBERS = Sensors.newSensor(
+            new TypeToken<Map<String, String>>() {},
+            "aws.elb.outlierEjection.ejectedMembers",
+            "Members currently ejected as outliers, keyed by member id, with the reason each was ejected");
+
+    ConfigKey<Boolean> DRIFT_DETECTION_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.driftDetection.enabled",
+            "Whether to periodically check the ELB for changes made outside this controller (e.g. instances deregistered, "
+                    + "or the ELB deleted, by hand), publishing aws.elb.isRunning and aws.elb.drift",
+            true);
+
+    ConfigKey<Duration> DRIFT_DETECTION_MIN_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.driftDetection.minPeriod",
+            "How soon to check the ELB again after finding drift; the period doubles each time the ELB is found in sync",
+            Duration.THIRTY_SECONDS);
+
+    ConfigKey<Duration> DRIFT_DETECTION_MAX_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.driftDetection.maxPeriod",
+            "The longest period between checks while the ELB stays in sync",
+            Duration.FIVE_MINUTES);
+
+    ConfigKey<Boolean> DRIFT_REPAIR_ENABLED = ConfigKeys.newBooleanConfigKey(
+            "aws.elb.driftDetection.repair",
+            "Whether to undo drift in the registered instances and health check, with only the calls needed to do so "
+                    + "(a deleted ELB or changed listener is reported, but not repaired)",
+            false);
+
+    @SuppressWarnings("serial")
+    AttributeSensor<List<String>> DRIFT = Sensors.newSensor(
+            new TypeToken<List<String>>() {},
+            "aws.elb.drift",
+            "How the ELB differed from what this controller last applied, at the last check (empty if in sync)");
+
+    AttributeSensor<Long> DRIFT_COUNT = Sensors.newLongSensor(
+            "aws.elb.drift.count",
+            "Number of checks that found the ELB had drifted");
+
+    AttributeSensor<Long> DRIFT_REPAIR_COUNT = Sensors.newLongSensor(
+            "aws.elb.drift.repairs",
+            "Number of calls made to repair drift");
+
+    ConfigKey<Duration> HEALTHY_HOSTS_POLL_PERIOD = ConfigKeys.newConfigKey(
+            Duration.class,
+            "aws.elb.healthyHosts.pollPeriod",
+            "How often to poll the ELB for the number of instances it reports InService (the healthyHosts metric); zero (the "
+                    + "default) to only record it when the instances' health is checked anyway, by the adaptive health check or "
+                    + "while confirming propagation",
+            Duration.ZERO);
+
+    /** Metric of {@link #getMetric}: requests served, per access-log poll (so RATE is requests per second). */
+    String METRIC_REQUESTS = "requests";
+    /** Metric of {@link #getMetric}: requests that failed, per access-log poll. */
+    String METRIC_ERRORS = "errors";
+    /** Metric of {@link #getMetric}: mean backend latency (ms) over each access-log poll. */
+    String METRIC_LATENCY_MEAN = "latency.mean";
+    /** Metric of {@link #getMetric}: the highest backend p99 latency (ms) of each access-log poll. */
+    String METRIC_LATENCY_P99_MAX = "latency.p99.max";
+    /**
+     * Metric of {@link #getMetric}: instances the ELB reports InService, whenever the controller checks the instances'
+     * health (see {@link #HEALTHY_HOSTS_POLL_PERIOD}).
+     */
+    String METRIC_HEALTHY_HOSTS = "healthyHosts";
+    /** Metric of {@link #getMetric}: instances registered, per reload. */
+    String METRIC_REGISTERED_INSTANCES = "registeredInstances";
+    /** Metric of {@link #getMetric}: time (ms) for each membership change to reach the ELB (see {@link #PROPAGATION_LATENCY}). */
+    String METRIC_PROPAGATION_LATENCY = "propagationLatency";
+
+    @SuppressWarnings("serial")
+    AttributeSensor<Set<String>> METRIC_NAMES = Sensors.newSensor(
+            new TypeToken<Set<String>>() {},
+            "aws.elb.metricNames",
+            "The metrics with recorded history, which can be aggregated with the getMetric effector");
+
+    /**
+     * Replaces the certificate of the ELB's HTTPS or SSL listener (on every shard) in-place, without
+     * recreating the listener.
+     */
+    @Effector(description="Replaces the SSL certificate of the ELB's listener, in-place")
+    void setSslCertificate(@EffectorParam(name="sslCertificateId", description="The ARN of the new server certificate") String sslCertificateId);
+
+    /**
+     * Aggregates the recent history of a metric recorded by this controller (see the METRIC_* constants),
+     * e.g. so policies can use rates and trends without keeping their own copies.
+     * 
+     * @return the aggregate, or null if the metric has no history
+     */
+    @Effector(description="Aggregates a metric's values over a recent window (history is kept in memory for up to a week, downsampled)")
+    Double getMetric(
+            @EffectorParam(name="metric", description="The metric, e.g. requests, errors, latency.mean, latency.p99.max, healthyHosts or registeredInstances") String metric,
+            @EffectorParam(name="aggregation", description="AVG, MIN, MAX, SUM, COUNT, or RATE (sum per second)") String aggregation,
+            @EffectorParam(name="window", description="The window, ending now, e.g. 5m") String window);
+
     @Effector(description="Deletes the ELB")
     void deleteLoadBalancer();
 }
@@ -2,16 +2,29 @@ package brooklyn.entity.proxy.aws;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
 import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.Group;
 import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.mgmt.SubscriptionHandle;
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.api.sensor.SensorEvent;
+import org.apache.brooklyn.api.sensor.SensorEventListener;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.config.ConfigKey.HasConfigKey;
 import org.apache.brooklyn.core.entity.Attributes;
@@ -26,29 +39,48 @@ import org.apache.brooklyn.location.jclouds.JcloudsLocation;
 import org.apache.brooklyn.location.jclouds.JcloudsMachineNamer;
 import org.apache.brooklyn.location.jclouds.JcloudsSshMachineLocation;
 import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.core.task.Tasks;
 import org.apache.brooklyn.util.core.text.TemplateProcessor;
+import org.apache.brooklyn.util.exceptions.CompoundRuntimeException;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
 import org.jclouds.aws.ec2.AWSEC2Api;
+import org.jclouds.domain.LocationScope;
 import org.jclouds.ec2.domain.AvailabilityZoneInfo;
+import org.jclouds.ec2.domain.Reservation;
+import org.jclouds.ec2.domain.RunningInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
 import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient;
 import com.amazonaws.services.elasticloadbalancing.model.ApplySecurityGroupsToLoadBalancerRequest;
 import com.amazonaws.services.elasticloadbalancing.model.AttachLoadBalancerToSubnetsRequest;
 import com.amazonaws.services.elasticloadbalancing.model.ConfigureHealthCheckRequest;
+import com.amazonaws.services.elasticloadbalancing.model.ConnectionSettings;
 import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerListenersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerPolicyRequest;
 import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerRequest;
 import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancing.model.CrossZoneLoadBalancing;
 import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerListenersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerPolicyRequest;
 import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerRequest;
 import com.amazonaws.services.elasticloadbalancing.model.DeregisterInstancesFromLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthResult;
 import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
 import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersResult;
 import com.amazonaws.services.elasticloadbalancing.model.DetachLoadBalancerFromSubnetsRequest;
@@ -56,18 +88,36 @@ import com.amazonaws.services.elasticloadbalancing.model.DisableAvailabilityZone
 import com.amazonaws.services.elasticloadbalancing.model.EnableAvailabilityZonesForLoadBalancerRequest;
 import com.amazonaws.services.elasticloadbalancing.model.HealthCheck;
 import com.amazonaws.services.elasticloadbalancing.model.Instance;
+import com.amazonaws.services.elasticloadbalancing.model.InstanceState;
 import com.amazonaws.services.elasticloadbalancing.model.Listener;
 import com.amazonaws.services.elasticloadbalancing.model.ListenerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerAttributes;
 import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
 import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerNotFoundException;
+import com.amazonaws.services.elasticloadbalancing.model.ModifyLoadBalancerAttributesRequest;
+import com.amazonaws.services.elasticloadbalancing.model.PolicyAttribute;
 import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.SetLoadBalancerListenerSSLCertificateRequest;
+import com.amazonaws.services.elasticloadbalancing.model.SetLoadBalancerPoliciesOfListenerRequest;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.net.InetAddresses;
 
 public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl implements ElbController {
 
@@ -92,7 +142,6 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
      *  - AppCookieStickinessPolicy
      *  - LBCookieStickinessPolicy
      *  - LoadBalancerPoliciesForBackendServer
-     *  - LoadBalancerListenerSslCertificate
      *  - Go through com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient carefully, to see nothing else is missed
      */
     
@@ -103,8 +152,77 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
 
     private static final Logger LOG = LoggerFactory.getLogger(ElbControllerImpl.class);
 
+    /** AWS limit on the length of a (classic) ELB name. */
+    protected static final int MAX_ELB_NAME_LENGTH = 32;
+
+    /** Reason recorded in {@link #EXCLUDED_INSTANCES} for members deregistered by the member-failure fast path. */
+    protected static final String EXCLUDED_FAILED = "failed";
+
+    /** Reason recorded in {@link #EXCLUDED_INSTANCES} for members ejected as latency or error-rate outliers. */
+    protected static final String EXCLUDED_OUTLIER = "outlier";
+
+    /** Reason recorded in {@link #EXCLUDED_INSTANCES} for instances held back to keep zones balanced. */
+    protected static final String EXCLUDED_ZONE_BALANCE = "zone-balance";
+
+    /** Consumer names for {@link BackendMetricsSource#getStats(String, Collection)}, so each job gets every period's statistics. */
+    private static final String HEALTH_CHECK_METRICS_CONSUMER = "healthCheck";
+    private static final String OUTLIER_METRICS_CONSUMER = "outlierEjection";
+
+    /** Prefix of the SSL negotiation policies created by this controller, so stale ones can be deleted. */
+    protected static final String SSL_POLICY_NAME_PREFIX = "brooklyn-ssl-";
+
+    /** Policy attribute for basing an SSL negotiation policy on a predefined one. */
+    private static final String SSL_REFERENCE_SECURITY_POLICY = "Reference-Security-Policy";
+
+    private final Object exclusionsMutex = new Object();
+    private final Multimap<Entity, SubscriptionHandle> serverPoolFailureSubscriptions = LinkedHashMultimap.create();
+
+    private final Object backgroundJobsMutex = new Object();
+    private PeriodicJob adaptiveHealthCheckJob;
+    private PeriodicJob resolvedAddressesJob;
+    private PeriodicJob accessLogJob;
+    private AccessLogMetricsSource accessLogMetricsSource;
+    private PeriodicJob outlierEjectionJob;
+    private InstanceIdResolver instanceIdResolver;
+    /** Whether the ELB has been described since starting, so {@link #LOAD_BALANCER_VPC_ID} is known (if any). */
+    private volatile boolean vpcIdDescribed;
+    private PeriodicJob driftDetectionJob;
+    private PeriodicJob healthyHostsJob;
+
+    /** The instances this controller last registered with each ELB (or shard), keyed by ELB name. */
+    private final Map<String, Set<String>> appliedInstances = Maps.newHashMap();
+    /** When this controller last registered each instance (utc millis), keyed by instance id. */
+    private final Map<String, Long> registrationTimes = Maps.newConcurrentMap();
+    /** Also brackets registration changes made by this controller, so a drift check can tell if it overlapped one. */
+    private final DriftDetector driftDetector = new DriftDetector();
+
+    /** When each instance was ejected as an outlier (utc millis), keyed by instance id. */
+    private final Map<String, Long> outlierEjectionTimes = Maps.newConcurrentMap();
+    private BackendMetricsSource defaultBackendMetricsSource;
+
+    private final AtomicLong apiRateWaitNanos = new AtomicLong();
+    private final AtomicLong apiRateSensorsPublishedTime = new AtomicLong();
+
+    private final TimeSeriesStore metrics = new TimeSeriesStore();
+
+    private final Object propagationMutex = new Object();
+    private SubscriptionHandle serverPoolTargetsSubscription;
+    private PeriodicJob propagationJob;
+    private PropagationTracker propagationTracker;
+
+    private final Object tracerMutex = new Object();
+    private Tracer tracer;
+
     @Override
-    protected void doStart(Collection<? extends Location> locations) {
+    protected void doStart(final Collection<? extends Location> locations) {
+        getTracer().call("doStart", new Callable<Void>() {
+            @Override public Void call() {
+                doStartUntraced(locations);
+                return null;
+            }});
+    }
+
+    private void doStartUntraced(Collection<? extends Location> locations) {
         ServiceProblemsLogic.clearProblemsIndicator(this, START);
         ServiceStateLogic.setExpectedState(this, Lifecycle.STARTING);
         try {
@@ -114,13 +232,105 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
             
             ConfigToAttributes.apply(this);
             
+            long startTime = System.currentTimeMillis();
             startLoadBalancer();
+            sensors().set(ELB_IS_RUNNING, true);
             isActive = true;
-            
+
+            if (getRequiredConfig(READINESS_CHECK_ENABLED)) {
+                waitForReady();
+                sensors().set(TIME_TO_READY, Duration.millis(System.currentTimeMillis() - startTime));
+            }
+            // Only once ready, so a controller that failed to start is left without background jobs
+            connectSensors();
             sensors().set(SERVICE_UP, true);
-            
-        } finally {
             ServiceStateLogic.setExpectedState(this, Lifecycle.RUNNING);
+
+        } catch (RuntimeException e) {
+            disconnectSensors();
+            ServiceProblemsLogic.updateProblemsIndicator(this, START, "Failed to start: "+e);
+            ServiceStateLogic.setExpectedState(this, Lifecycle.ON_FIRE);
+            throw e;
+        }
+    }
+
+    @Override
+    public void rebind() {
+        super.rebind();
+        // Subscriptions and background jobs of the entity itself are not persisted, so re-establish them
+        if (Boolean.TRUE.equals(getAttribute(SERVICE_UP))) {
+            connectSensors();
+        }
+    }
+
+    /**
+     * Starts the subscriptions and background jobs that run while the ELB is up.
+     */
+    protected void connectSensors() {
+        subscribeToServerPoolFailures();
+        subscribeToServerPoolTargets();
+        startAdaptiveHealthCheck();
+        startResolvingAddresses();
+        startReadingAccessLogs();
+        startOutlierEjection();
+        startDriftDetection();
+        startRecordingHealthyHosts();
+        if (isWarmPoolEnabled()) {
+            ElbWarmPool.get(getManagementContext()).addUser(getWarmPoolProfile(), getId());
+        }
+    }
+
+    protected void disconnectSensors() {
+        unsubscribeFromServerPoolFailures();
+        unsubscribeFromServerPoolTargets();
+        stopAdaptiveHealthCheck();
+        stopResolvingAddresses();
+        stopReadingAccessLogs();
+        stopOutlierEjection();
+        stopDriftDetection();
+        stopRecordingHealthyHosts();
+    }
+
+    /**
+     * Waits until the ELB (or every shard) is ready to receive traffic, polling with exponential backoff.
+     * 
+     * @throws IllegalStateException if not ready within the configured timeout
+     */
+    protected void waitForReady() {
+        ReadinessChecker checker = getConfig(READINESS_CHECKER);
+        if (checker == null) checker = new SocketReadinessChecker(getHostnameResolver(), Duration.FIVE_SECONDS);
+        int port = getRequiredConfig(LOAD_BALANCER_PORT);
+        Duration timeout = getRequiredConfig(READINESS_TIMEOUT);
+        long maxIntervalMillis = getRequiredConfig(READINESS_MAX_INTERVAL).toMilliseconds();
+
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeout.toMilliseconds();
+        long intervalMillis = 1000;
+        Set<String> unready = Sets.newLinkedHashSet(getHostnames());
+        Exception lastError = null;
+        while (true) {
+            for (Iterator<String> iter = unready.iterator(); iter.hasNext();) {
+                String hostname = iter.next();
+                try {
+                    if (checker.isReady(hostname, port)) {
+                        LOG.debug("ELB {} at {}:{} ready after {}", new Object[] {getAttribute(LOAD_BALANCER_NAME), hostname, port, 
+                                Duration.millis(System.currentTimeMillis() - startTime)});
+                        iter.remove();
+                    }
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    lastError = e;
+                }
+            }
+            if (unready.isEmpty()) return;
+
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                throw new IllegalStateException("ELB "+getAttribute(LOAD_BALANCER_NAME)+" not ready within "+timeout
+                        +" ("+unready+" on port "+port+")"+(lastError != null ? "; last error: "+lastError : ""));
+            }
+            Time.sleep(Math.min(intervalMillis, remainingMillis));
+            intervalMillis = Math.min(intervalMillis * 2, maxIntervalMillis);
         }
     }
 
@@ -165,12 +375,21 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
     @Override
     public void stop() {
         // TODO should we deleteLoadBalancer?
+        disconnectSensors();
         String elbName = getAttribute(LOAD_BALANCER_NAME);
         JcloudsLocation loc = getAttribute(JCLOUDS_LOCATION);
-        if (elbName != null && loc != null && doesLoadBalancerExist(elbName)) {
-            deleteLoadBalancer(elbName);
+        if (elbName != null && loc != null) {
+            for (String shardName : getShardNames(elbName)) {
+                if (doesLoadBalancerExist(shardName)) {
+                    deleteLoadBalancer(shardName);
+                }
+            }
+        }
+        if (loc != null && isWarmPoolEnabled()) {
+            drainWarmPool();
         }
         ServiceStateLogic.setExpectedState(this, Lifecycle.STOPPED);
+        sensors().set(ELB_IS_RUNNING, false);
         sensors().set(SERVICE_UP, false);
     }
 
@@ -186,6 +405,14 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
 
     @Override
     public void reload() {
+        getTracer().call("reload", new Callable<Void>() {
+            @Override public Void call() {
+                reloadUntraced();
+                return null;
+            }});
+    }
+
+    private void reloadUntraced() {
         try {
             JcloudsLocation loc = sensors().get(JCLOUDS_LOCATION);
             
@@ -202,311 +429,2004 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
                 return;
             }
             String elbName = getAttribute(LOAD_BALANCER_NAME);
-            Set<String> targetAddresses = super.getServerPoolAddresses();
-            Set<Instance> instances = Sets.newLinkedHashSet();
-            for (String address : targetAddresses) {
-                Instance instance = new Instance(address);
-                instances.add(instance);
-            }
-    
-            LOG.debug("Reloading ELB "+elbName+"; instances="+instances);
-    
-            AmazonElasticLoadBalancingClient client = newClient(loc);
-            try {
-                DescribeLoadBalancersResult loadBalancers = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)));
-                List<LoadBalancerDescription> loadBalancerDescriptions = loadBalancers.getLoadBalancerDescriptions();
-                Set<Instance> oldInstances = ImmutableSet.copyOf(loadBalancerDescriptions.get(0).getInstances());
-                Set<Instance> removedInstances = Sets.difference(oldInstances, instances);
-                Set<Instance> addedInstances = Sets.difference(instances, oldInstances);
-                
-                if (!addedInstances.isEmpty()) {
-                    RegisterInstancesWithLoadBalancerRequest registerRequest = new RegisterInstancesWithLoadBalancerRequest(elbName, ImmutableList.copyOf(addedInstances));
-                    client.registerInstancesWithLoadBalancer(registerRequest);
-                }
-                if (!removedInstances.isEmpty()) {
-                    DeregisterInstancesFromLoadBalancerRequest deregisterRequest = new DeregisterInstancesFromLoadBalancerRequest(elbName, ImmutableList.copyOf(removedInstances));
-                    client.deregisterInstancesFromLoadBalancer(deregisterRequest);
-                }
-            } finally {
-                if (client != null) client.shutdown();
+            Set<String> targetAddresses = balanceZones(excludeInstances(super.getServerPoolAddresses()));
+            List<String> shardNames = getShardNames(elbName);
+            getTracer().current().setAttribute("elbName", elbName)
+                    .setAttribute("instances", targetAddresses.size())
+                    .setAttribute("shards", shardNames.size());
+
+            if (shardNames.size() == 1) {
+                reconcileInstances(loc, elbName, targetAddresses);
+            } else {
+                reloadShards(loc, new ConsistentHashRing(shardNames).partition(targetAddresses));
             }
+            recordMetric(METRIC_REGISTERED_INSTANCES, targetAddresses.size());
+            onTargetsReloaded(targetAddresses);
         } catch (RuntimeException e) {
             LOG.warn("Problem reloading", e);
             throw Exceptions.propagate(e);
         }
     }
-    
+
+    /**
+     * Reconciles each shard's ELB with its assigned instances, in parallel. A failure in one shard
+     * does not prevent the others from being reconciled; all failures are reported together.
+     */
+    protected void reloadShards(final JcloudsLocation loc, Map<String, Set<String>> assignments) {
+        final Span parent = getTracer().current();
+        final ApiRateLimiter.Priority priority = ApiRateLimiter.getPriority();
+        Map<String, Task<Void>> tasks = Maps.newLinkedHashMap();
+        Map<String, Integer> memberCounts = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Set<String>> entry : assignments.entrySet()) {
+            final String shardName = entry.getKey();
+            final Set<String> shardAddresses = entry.getValue();
+            memberCounts.put(shardName, shardAddresses.size());
+            Task<Void> task = Tasks.<Void>builder()
+                    .displayName("Reloading ELB shard "+shardName)
+                    .body(new Callable<Void>() {
+                        @Override public Void call() {
+                            ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(priority);
+                            try {
+                                return getTracer().call("reloadShard", parent, new Callable<Void>() {
+                                    @Override public Void call() {
+                                        getTracer().current().setAttribute("elbName", shardName);
+                                        reconcileInstances(loc, shardName, shardAddresses);
+                                        return null;
+                                    }});
+                            } finally {
+                                ApiRateLimiter.setPriority(previousPriority);
+                            }
+                        }})
+                    .build();
+            tasks.put(shardName, getExecutionContext().submit(task));
+        }
+
+        List<Throwable> failures = Lists.newArrayList();
+        for (Map.Entry<String, Task<Void>> entry : tasks.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Problem reloading ELB shard "+entry.getKey()+" in "+this, e);
+                failures.add(e);
+            }
+        }
+        if (failures.isEmpty()) {
+            sensors().set(SHARD_MEMBER_COUNTS, memberCounts);
+        } else {
+            throw new CompoundRuntimeException("Failed to reload "+failures.size()+" of "+tasks.size()+" ELB shards in "+this, failures);
+        }
+    }
+
+    /**
+     * Registers and deregisters instances so that the given ELB balances across exactly the given instance ids.
+     */
+    protected void reconcileInstances(JcloudsLocation loc, String elbName, Collection<String> targetAddresses) {
+        Set<Instance> instances = Sets.newLinkedHashSet();
+        for (String address : targetAddresses) {
+            Instance instance = new Instance(address);
+            instances.add(instance);
+        }
+
+        LOG.debug("Reloading ELB "+elbName+"; instances="+instances);
+
+        AmazonElasticLoadBalancing client = newClient(loc);
+        driftDetector.beginRegistrationChange();
+        boolean success = false;
+        try {
+            DescribeLoadBalancersResult loadBalancers = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)));
+            List<LoadBalancerDescription> loadBalancerDescriptions = loadBalancers.getLoadBalancerDescriptions();
+            recordVpcId(loadBalancerDescriptions.get(0));
+            Set<Instance> oldInstances = ImmutableSet.copyOf(loadBalancerDescriptions.get(0).getInstances());
+            Set<Instance> removedInstances = Sets.difference(oldInstances, instances);
+            Set<Instance> addedInstances = Sets.difference(instances, oldInstances);
+            getTracer().current().setAttribute("registered", addedInstances.size()).setAttribute("deregistered", removedInstances.size());
+
+            if (!addedInstances.isEmpty()) {
+                RegisterInstancesWithLoadBalancerRequest registerRequest = new RegisterInstancesWithLoadBalancerRequest(elbName, ImmutableList.copyOf(addedInstances));
+                client.registerInstancesWithLoadBalancer(registerRequest);
+                recordRegistrations(addedInstances, true);
+            }
+            if (!removedInstances.isEmpty()) {
+                DeregisterInstancesFromLoadBalancerRequest deregisterRequest = new DeregisterInstancesFromLoadBalancerRequest(elbName, ImmutableList.copyOf(removedInstances));
+                client.deregisterInstancesFromLoadBalancer(deregisterRequest);
+                recordRegistrations(removedInstances, false);
+            }
+            setAppliedInstances(elbName, targetAddresses);
+            success = true;
+        } finally {
+            // if it failed part way, the registrations are unknown until the next reload
+            if (!success) setAppliedInstances(elbName, null);
+            driftDetector.endRegistrationChange();
+            if (client != null) client.shutdown();
+        }
+    }
+
+    /**
+     * The names of the ELBs managed by this controller: just the given name if not sharded,
+     * or otherwise one name per shard derived from it.
+     */
+    protected List<String> getShardNames(String elbName) {
+        int shardCount = getRequiredConfig(SHARD_COUNT);
+        checkArgument(shardCount >= 1, "%s must be at least 1, but was %s", SHARD_COUNT.getName(), shardCount);
+        if (shardCount == 1) {
+            return ImmutableList.of(elbName);
+        }
+        List<String> result = Lists.newArrayList();
+        for (int i = 0; i < shardCount; i++) {
+            String shardName = elbName + "-" + i;
+            checkArgument(shardName.length() <= MAX_ELB_NAME_LENGTH, "ELB shard name %s too long (max %s characters)", shardName, MAX_ELB_NAME_LENGTH);
+            result.add(shardName);
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    protected boolean isSharded() {
+        return getRequiredConfig(SHARD_COUNT) > 1;
+    }
+
     @Override
     protected String getAddressOfEntity(Entity member) {
+        String result = getJcloudsInstanceId(member);
+        if (result == null && getRequiredConfig(INSTANCE_ID_RESOLUTION_ENABLED)) {
+            result = resolveInstanceId(member);
+        }
+        if (result == null) {
+            LOG.error("Unable to determine instance id of {}; skipping in {}", new Object[] { member, this });
+        }
+        return result;
+    }
+
+    @Nullable
+    private static String getJcloudsInstanceId(Entity member) {
         JcloudsSshMachineLocation machine = (JcloudsSshMachineLocation) Iterables.find(member.getLocations(),
                 Predicates.instanceOf(JcloudsSshMachineLocation.class), null);
-        
-        if (machine != null && machine.getJcloudsId() != null) {
-            return machine.getJcloudsId().split("\\/")[1];
-        } else {
-            LOG.error("Unable to construct JcloudsId representation for {}; skipping in {}", new Object[] { member, this });
+        return (machine != null && machine.getJcloudsId() != null) ? machine.getJcloudsId().split("\\/")[1] : null;
+    }
+
+    /**
+     * Looks up the instance id of a member whose location does not know it, by the member's private address.
+     * If it is not cached, all other such members of the server pool are looked up in the same call, so that
+     * they resolve from the cache as they are added.
+     */
+    @Nullable
+    protected String resolveInstanceId(Entity member) {
+        InstanceIdResolver.Key key = getInstanceIdResolutionKey(member);
+        if (key == null || getAttribute(JCLOUDS_LOCATION) == null) return null;
+        InstanceIdResolver resolver = getInstanceIdResolver();
+        String result = resolver.getCached(member.getId(), key);
+        if (result != null) return result;
+
+        Map<String, InstanceIdResolver.Key> keys = Maps.newLinkedHashMap();
+        Group serverPool = getConfig(SERVER_POOL);
+        if (serverPool != null) {
+            for (Entity other : serverPool.getMembers()) {
+                if (getJcloudsInstanceId(other) != null) continue;
+                InstanceIdResolver.Key otherKey = getInstanceIdResolutionKey(other);
+                if (otherKey != null) keys.put(other.getId(), otherKey);
+            }
+        }
+        keys.put(member.getId(), key);
+        try {
+            return resolver.resolve(keys).get(member.getId());
+        } catch (RuntimeException e) {
+            LOG.warn("Problem looking up instance ids of "+keys.size()+" members of "+this, e);
             return null;
         }
     }
 
-    protected void startLoadBalancer() {
-        String elbName = getAttribute(LOAD_BALANCER_NAME);
-        
-        if (getRequiredConfig(BIND_TO_EXISTING)) {
-            checkNotNull(elbName, "load balancer name must not be null if binding to existing");
-            checkArgument(Strings.isNonBlank(elbName), "load balancer name must be non-blank if binding to existing");
-            reinitLoadBalancer();
-        } else if (getRequiredConfig(REPLACE_EXISTING)) {
-            checkNotNull(elbName, "load balancer name must not be null if configured to replace any existing");
-            checkArgument(Strings.isNonBlank(elbName), "load balancer name must be non-blank if configured to replace any existing");
-            if (doesLoadBalancerExist(elbName)) {
-                deleteLoadBalancer(elbName);
-            }
-            createLoadBalancer(elbName);
-        } else {
-            if (Strings.isBlank(elbName)) {
-                elbName = generateUnusedElbName();
-                sensors().set(LOAD_BALANCER_NAME, elbName);
-            } else {
-                if (doesLoadBalancerExist(elbName)) {
-                    throw new IllegalStateException("Cannot create ELB "+elbName+" in "+this+", because already exists (consider using configuration "+REPLACE_EXISTING.getName()+")");
-                }
-            }
+    /**
+     * What to look up the member's instance by: its subnet address (or subnet hostname, if that is not set),
+     * and its locations, so that the cached instance id is discarded if the member moves. Returns null if
+     * the member has no subnet address yet.
+     */
+    @Nullable
+    protected InstanceIdResolver.Key getInstanceIdResolutionKey(Entity member) {
+        String address = member.getAttribute(Attributes.SUBNET_ADDRESS);
+        if (Strings.isBlank(address)) address = member.getAttribute(Attributes.SUBNET_HOSTNAME);
+        if (Strings.isBlank(address)) return null;
 
-            createLoadBalancer(elbName);
+        StringBuilder locations = new StringBuilder();
+        for (Location loc : member.getLocations()) {
+            locations.append(loc.getId()).append(',');
         }
+        String filterName = InetAddresses.isInetAddress(address) ? InstanceIdResolver.PRIVATE_IP_ADDRESS : InstanceIdResolver.PRIVATE_DNS_NAME;
+        return new InstanceIdResolver.Key(filterName, address, locations.toString());
     }
 
-    protected void createLoadBalancer(String elbName) {
-        JcloudsLocation loc = getLocation();
-        
-        int loadBalancerPort = getRequiredConfig(LOAD_BALANCER_PORT);
-        int instancePort = getRequiredConfig(INSTANCE_PORT);
-        String instanceProtocol = getRequiredConfig(INSTANCE_PROTOCOL);
-        String elbScheme = getConfig(LOAD_BALANCER_SCHEME);
-        String loadBalancerProtocol = getRequiredConfig(LOAD_BALANCER_PROTOCOL);
-        Collection<String> securityGroups = getConfig(LOAD_BALANCER_SECURITY_GROUPS);
-        Collection<String> subnets = getConfig(LOAD_BALANCER_SUBNETS);
-        String sslCertificateId = getConfig(SSL_CERTIFICATE_ID);
-        Set<String> availabilityZoneNames = getAvailabilityZones(loc);
-        Boolean healthCheckEnabled = getConfig(HEALTH_CHECK_ENABLED);
-        Integer healthCheckInterval = getConfig(HEALTH_CHECK_INTERVAL);
-        Integer healthCheckTimeout = getConfig(HEALTH_CHECK_TIMEOUT);
-        Integer healthCheckHealthyThreshold = getConfig(HEALTH_CHECK_HEALTHY_THRESHOLD);
-        Integer healthCheckUnhealthyThreshold = getConfig(HEALTH_CHECK_UNHEALTHY_THRESHOLD);
-        
-        LOG.debug("Creating new ELB '"+elbName+"', for server-pool "+getConfig(SERVER_POOL));
+    protected InstanceIdResolver getInstanceIdResolver() {
+        synchronized (backgroundJobsMutex) {
+            if (instanceIdResolver == null) {
+                instanceIdResolver = new InstanceIdResolver(new InstanceIdResolver.InstanceLookup() {
+                        @Override public Map<String, String> lookup(String filterName, Collection<String> values) {
+                            return describeInstances(filterName, values);
+                        }},
+                        getRequiredConfig(INSTANCE_ID_RESOLUTION_RETRY_PERIOD).toMilliseconds());
+            }
+            return instanceIdResolver;
+        }
+    }
 
-        AmazonElasticLoadBalancingClient client = newClient(loc);
-        try {
-            CreateLoadBalancerRequest createLoadBalancerRequest = new CreateLoadBalancerRequest();
+    /**
+     * The VPC of the ELB, or null if it is in EC2-Classic. Described once, unless already recorded when
+     * reloading.
+     */
+    @Nullable
+    protected String getLoadBalancerVpcId() {
+        String result = getAttribute(LOAD_BALANCER_VPC_ID);
+        if (result != null || vpcIdDescribed) return result;
 
-            createLoadBalancerRequest.setLoadBalancerName(elbName);
-            createLoadBalancerRequest.setAvailabilityZones(availabilityZoneNames);
-            if (Strings.isNonBlank(elbScheme)) createLoadBalancerRequest.setScheme(elbScheme);
-            if (securityGroups != null) createLoadBalancerRequest.setSecurityGroups(securityGroups);
-            if (subnets != null) createLoadBalancerRequest.setSubnets(subnets);
-            
-            Listener listener = new Listener();
-            listener.setProtocol(loadBalancerProtocol);
-            listener.setLoadBalancerPort(loadBalancerPort);
-            listener.setInstancePort(instancePort);
-            listener.setInstanceProtocol(instanceProtocol);
-            if (Strings.isNonBlank(sslCertificateId)) listener.setSSLCertificateId(sslCertificateId);
-            createLoadBalancerRequest.setListeners(ImmutableList.of(listener));
-
-            CreateLoadBalancerResult result = client.createLoadBalancer(createLoadBalancerRequest);
-            
-            if (healthCheckEnabled != null && healthCheckEnabled) {
-                String targetTemplate = getConfig(HEALTH_CHECK_TARGET);
-                Map<String, Object> substitutions = ImmutableMap.<String, Object>builder()
-                        .put("instancePort", instancePort)
-                        .put("instanceProtocol", instanceProtocol)
-                        .build();
-                String target = TemplateProcessor.processTemplateContents(targetTemplate, substitutions);
-
-                HealthCheck healthCheck = new HealthCheck()
-                        .withTarget(target)
-                        .withInterval(healthCheckInterval)
-                        .withTimeout(healthCheckTimeout)
-                        .withHealthyThreshold(healthCheckHealthyThreshold)
-                        .withUnhealthyThreshold(healthCheckUnhealthyThreshold);
-                
-                ConfigureHealthCheckRequest healthCheckReq = new ConfigureHealthCheckRequest()
-                        .withHealthCheck(healthCheck)
-                        .withLoadBalancerName(elbName);
-                client.configureHealthCheck(healthCheckReq);
+        String elbName = getShardNames(checkNotNull(getAttribute(LOAD_BALANCER_NAME), "elbName")).get(0);
+        AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            List<LoadBalancerDescription> descriptions = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)))
+                    .getLoadBalancerDescriptions();
+            if (descriptions.isEmpty()) {
+                throw new IllegalStateException("No load balancer "+elbName+" to find the VPC of");
             }
-            
-            sensors().set(Attributes.HOSTNAME, result.getDNSName());
-            
+            recordVpcId(descriptions.get(0));
+            return getAttribute(LOAD_BALANCER_VPC_ID);
         } finally {
             if (client != null) client.shutdown();
         }
     }
 
-    protected void reinitLoadBalancer() {
-        JcloudsLocation loc = getLocation();
-        String elbName = checkNotNull(getAttribute(LOAD_BALANCER_NAME), LOAD_BALANCER_NAME.getName());
+    protected void recordVpcId(LoadBalancerDescription description) {
+        if (description.getVPCId() != null) sensors().set(LOAD_BALANCER_VPC_ID, description.getVPCId());
+        vpcIdDescribed = true;
+    }
 
-        int loadBalancerPort = getRequiredConfig(LOAD_BALANCER_PORT);
-        int instancePort = getRequiredConfig(INSTANCE_PORT);
-        String instanceProtocol = getRequiredConfig(INSTANCE_PROTOCOL);
-        String elbScheme = getConfig(LOAD_BALANCER_SCHEME);
-        String loadBalancerProtocol = getRequiredConfig(LOAD_BALANCER_PROTOCOL);
-        Collection<String> securityGroups = getConfig(LOAD_BALANCER_SECURITY_GROUPS);
-        Set<String> subnets = (getConfig(LOAD_BALANCER_SUBNETS) != null) ? ImmutableSet.copyOf(getConfig(LOAD_BALANCER_SUBNETS)) : ImmutableSet.<String>of();
-        String sslCertificateId = getConfig(SSL_CERTIFICATE_ID);
-        Set<String> availabilityZoneNames = getAvailabilityZones(loc);
-        Boolean healthCheckEnabled = getConfig(HEALTH_CHECK_ENABLED);
-        Integer healthCheckInterval = getConfig(HEALTH_CHECK_INTERVAL);
-        Integer healthCheckTimeout = getConfig(HEALTH_CHECK_TIMEOUT);
-        Integer healthCheckHealthyThreshold = getConfig(HEALTH_CHECK_HEALTHY_THRESHOLD);
-        Integer healthCheckUnhealthyThreshold = getConfig(HEALTH_CHECK_UNHEALTHY_THRESHOLD);
-        
-        LOG.debug("Re-initialising existing ELB: "+elbName);
+    /**
+     * Looks up the pending or running EC2 instances in the ELB's VPC matching any of the given values of the
+     * filter (in one call), returning their ids keyed by the matching value. Private addresses are only unique
+     * within a VPC, so a value matching more than one instance is left unresolved rather than guessed.
+     */
+    protected Map<String, String> describeInstances(final String filterName, final Collection<String> values) {
+        return getTracer().call("ec2.describeInstances", new Callable<Map<String, String>>() {
+            @Override public Map<String, String> call() {
+                return describeInstancesUntraced(filterName, values);
+            }});
+    }
 
-        AmazonElasticLoadBalancingClient client = newClient(loc);
-        try {
-            // Find out about existing load balancer, so can clear+reset its configuration
-            DescribeLoadBalancersResult loadBalancers = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)));
-            List<LoadBalancerDescription> loadBalancerDescriptions = loadBalancers.getLoadBalancerDescriptions();
-            if (loadBalancerDescriptions.isEmpty()) {
-                throw new IllegalStateException("No existing load balancer with name "+elbName);
-            }
-            LoadBalancerDescription loadBalancerDescription = loadBalancerDescriptions.get(0);
-            
-            // TODO Things we can't change: warn if different from configuration!
-            // Do we just need to dig into API more?!
-            String oldScheme = loadBalancerDescription.getScheme();
-            if (!oldScheme.equals(elbScheme)) {
-                LOG.warn("Existing ELB {} scheme ({}) is different from configuration ({}); cannot modify; continuing", 
-                        new Object[] {elbName, oldScheme, elbScheme});
-            }
+    private Map<String, String> describeInstancesUntraced(String filterName, Collection<String> values) {
+        JcloudsLocation loc = getLocation();
+        String regionName = getRegionName(loc);
+        String vpcId = getLoadBalancerVpcId();
+        ImmutableMultimap.Builder<String, String> filter = ImmutableMultimap.<String, String>builder()
+                .putAll(filterName, values)
+                .putAll("instance-state-name", "pending", "running");
+        if (vpcId != null) filter.put("vpc-id", vpcId);
+        Span span = getTracer().current()
+                .setAttribute("region", regionName)
+                .setAttribute("filter", filterName)
+                .setAttribute("values", values.size());
 
-            // Set the availability zones
-            List<String> oldAvailabilityZoneNames = loadBalancerDescription.getAvailabilityZones();
-            Set<String> oldAvailabilityZoneNamesSet = ImmutableSet.copyOf(oldAvailabilityZoneNames);
-            Set<String> removedAvailabilityZoneNames = Sets.difference(oldAvailabilityZoneNamesSet, availabilityZoneNames);
-            Set<String> addedAvailabilityZoneNames = Sets.difference(availabilityZoneNames, oldAvailabilityZoneNamesSet);
-            if (!addedAvailabilityZoneNames.isEmpty()) {
-                EnableAvailabilityZonesForLoadBalancerRequest enableAvailabilityZonesRequest = new EnableAvailabilityZonesForLoadBalancerRequest()
-                        .withLoadBalancerName(elbName)
-                        .withAvailabilityZones(addedAvailabilityZoneNames);
-                client.enableAvailabilityZonesForLoadBalancer(enableAvailabilityZonesRequest);
-            }
-            if (!removedAvailabilityZoneNames.isEmpty()) {
-                DisableAvailabilityZonesForLoadBalancerRequest disableAvailabilityZonesRequest = new DisableAvailabilityZonesForLoadBalancerRequest()
-                        .withLoadBalancerName(elbName)
-                        .withAvailabilityZones(removedAvailabilityZoneNames);
-                client.disableAvailabilityZonesForLoadBalancer(disableAvailabilityZonesRequest);
+        acquireApiPermit(loc);
+        AWSEC2Api ec2api = loc.getComputeService().getContext().unwrapApi(AWSEC2Api.class);
+        SetMultimap<String, String> matches = LinkedHashMultimap.create();
+        for (Reservation<? extends RunningInstance> reservation : ec2api.getInstanceApi().get().describeInstancesInRegionWithFilter(regionName, filter.build())) {
+            for (RunningInstance instance : reservation) {
+                String value = InstanceIdResolver.PRIVATE_DNS_NAME.equals(filterName) ? instance.getPrivateDnsName() : instance.getPrivateIpAddress();
+                if (value != null) matches.put(value, instance.getId());
             }
-            
-            // Set the security groups
-            // TODO Not changing security groups if config is empty, because calling applySecurityGroups with an empty list causes:
-            //      Caused by: AmazonServiceException: Status Code: 400, AWS Service: AmazonElasticLoadBalancing, AWS Request ID: f0661b5b-30ee-11e3-bd02-232415f6851f, AWS Error Code: ValidationError, AWS Error Message: 1 validation error detected: Value null at 'securityGroups' failed to satisfy constraint: Member must not be null
-            if (securityGroups != null && securityGroups.size() > 0) {
-                ApplySecurityGroupsToLoadBalancerRequest securityGroupsRequest = new ApplySecurityGroupsToLoadBalancerRequest()
-                        .withLoadBalancerName(elbName)
-                        .withSecurityGroups(securityGroups != null ? securityGroups : ImmutableList.<String>of());
-                client.applySecurityGroupsToLoadBalancer(securityGroupsRequest);
+        }
+        Map<String, String> result = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Collection<String>> entry : matches.asMap().entrySet()) {
+            if (entry.getValue().size() == 1) {
+                result.put(entry.getKey(), Iterables.getOnlyElement(entry.getValue()));
+            } else {
+                LOG.warn("Not resolving instance id of {} {} for {}: matches instances {} (vpc {})",
+                        new Object[] {filterName, entry.getKey(), this, entry.getValue(), vpcId});
             }
+        }
+        span.setAttribute("matched", result.size());
+        return result;
+    }
 
-            // Set the subnets
-            Set<String> oldSubnets = ImmutableSet.copyOf(loadBalancerDescription.getSubnets());
-            Set<String> removedSubnets = Sets.difference(oldSubnets, subnets);
-            Set<String> addedSubnets = Sets.difference(subnets, oldSubnets);
-            if (!addedSubnets.isEmpty()) {
-                AttachLoadBalancerToSubnetsRequest attachSubnetsRequest = new AttachLoadBalancerToSubnetsRequest()
-                        .withLoadBalancerName(elbName)
-                        .withSubnets(addedSubnets);
-                client.attachLoadBalancerToSubnets(attachSubnetsRequest);
-            }
-            if (!removedSubnets.isEmpty()) {
-                DetachLoadBalancerFromSubnetsRequest deattachSubnetsRequest = new DetachLoadBalancerFromSubnetsRequest()
-                        .withLoadBalancerName(elbName)
-                        .withSubnets(removedSubnets);
-                client.detachLoadBalancerFromSubnets(deattachSubnetsRequest);
-            }
+    protected void subscribeToServerPoolFailures() {
+        Group serverPool = getConfig(SERVER_POOL);
+        if (serverPool == null || !getRequiredConfig(FAST_DEREGISTRATION_ENABLED)) return;
 
-            // Remove any old listeners, and add the new one
-            List<ListenerDescription> listenerDescriptions = loadBalancerDescription.getListenerDescriptions();
-            List<Integer> listenerPorts = Lists.newArrayList();
-            for (ListenerDescription listenerDescription : listenerDescriptions) {
-                listenerPorts.add(listenerDescription.getListener().getLoadBalancerPort());
-            }
-            if (listenerPorts.size() > 0) {
-                DeleteLoadBalancerListenersRequest deleteListenersRequest = new DeleteLoadBalancerListenersRequest()
-                        .withLoadBalancerName(elbName)
-                        .withLoadBalancerPorts(listenerPorts);
-                client.deleteLoadBalancerListeners(deleteListenersRequest);
+        synchronized (serverPoolFailureSubscriptions) {
+            unsubscribeFromServerPoolFailures();
+            SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+                @Override public void onEvent(SensorEvent<Object> event) {
+                    onServerPoolMemberHealthChanged(event.getSource(), event.getTimestamp());
+                }};
+            serverPoolFailureSubscriptions.put(serverPool, subscriptions().subscribeToMembers(serverPool, Attributes.SERVICE_UP, listener));
+            serverPoolFailureSubscriptions.put(serverPool, subscriptions().subscribeToMembers(serverPool, Attributes.SERVICE_STATE_ACTUAL, listener));
+        }
+    }
+
+    protected void unsubscribeFromServerPoolFailures() {
+        synchronized (serverPoolFailureSubscriptions) {
+            for (Map.Entry<Entity, SubscriptionHandle> entry : serverPoolFailureSubscriptions.entries()) {
+                subscriptions().unsubscribe(entry.getKey(), entry.getValue());
             }
+            serverPoolFailureSubscriptions.clear();
+        }
+    }
 
-            Listener listener = new Listener();
-            listener.setProtocol(loadBalancerProtocol);
-            listener.setLoadBalancerPort(loadBalancerPort);
-            listener.setInstancePort(instancePort);
-            listener.setInstanceProtocol(instanceProtocol);
-            if (Strings.isNonBlank(sslCertificateId)) listener.setSSLCertificateId(sslCertificateId);
-            CreateLoadBalancerListenersRequest createListenersRequest = new CreateLoadBalancerListenersRequest()
-                .withLoadBalancerName(elbName)
-                .withListeners(listener);
-            client.createLoadBalancerListeners(createListenersRequest);
+    /**
+     * The priority path for member failures: deregisters the member's instance immediately (without
+     * waiting for the ELB's health check, or going through {@link #reload()}), and re-registers it
+     * once the member reports that it has recovered.
+     */
+    protected void onServerPoolMemberHealthChanged(Entity member, long detectedTimestamp) {
+        if (!isActive || !Boolean.TRUE.equals(getAttribute(SERVICE_UP))) return;
+        Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+        String instanceId = (targets == null) ? null : targets.get(member);
+        if (instanceId == null) {
+            // The server pool tracking may already have dropped a failed member from the targets (or not yet
+            // added a recovered one), so look up the instance id of any current member of the pool
+            Group serverPool = getConfig(SERVER_POOL);
+            if (serverPool == null || !serverPool.getMembers().contains(member)) return;
+            instanceId = getAddressOfEntity(member);
+            if (instanceId == null) return;
+        }
 
-            // Reset the health check
-            HealthCheck oldHealthCheck = loadBalancerDescription.getHealthCheck();
-            if (healthCheckEnabled != null && healthCheckEnabled) {
-                // TODO remove duplication from createLoadBalancer; would require passing in a huge amount of config
-                // as parameters, or the shared method reading the config itself
-                String targetTemplate = getConfig(HEALTH_CHECK_TARGET);
-                Map<String, Object> substitutions = ImmutableMap.<String, Object>builder()
-                        .put("instancePort", instancePort)
-                        .put("instanceProtocol", instanceProtocol)
-                        .build();
-                String target = TemplateProcessor.processTemplateContents(targetTemplate, substitutions);
-
-                HealthCheck healthCheck = new HealthCheck()
-                        .withTarget(target)
-                        .withInterval(healthCheckInterval)
-                        .withTimeout(healthCheckTimeout)
-                        .withHealthyThreshold(healthCheckHealthyThreshold)
-                        .withUnhealthyThreshold(healthCheckUnhealthyThreshold);
-                
-                ConfigureHealthCheckRequest healthCheckReq = new ConfigureHealthCheckRequest()
-                        .withLoadBalancerName(elbName)
-                        .withHealthCheck(healthCheck);
-                client.configureHealthCheck(healthCheckReq);
-            } else {
-                // TODO Not removing old health check because passing in null for ConfigureHealthCheckRequest gives:
-                //      Caused by: AmazonServiceException: Status Code: 400, AWS Service: AmazonElasticLoadBalancing, AWS Request ID: 47a2b87d-30ef-11e3-bd82-6571b2f68bd5, AWS Error Code: ValidationError, AWS Error Message: 1 validation error detected: Value null at 'healthCheck' failed to satisfy constraint: Member must not be null
-                if (oldHealthCheck != null) {
-                    LOG.warn("Existing ELB {} (in {}) health check ({}) not removed (no new health check wanted; continuing", 
-                            new Object[] {elbName, this, oldHealthCheck});
+        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.FAILURE);
+        try {
+            if (isMemberFailed(member)) {
+                if (excludeInstance(instanceId, EXCLUDED_FAILED)) {
+                    LOG.info("Member {} of {} has failed; deregistering instance {} immediately", new Object[] {member, this, instanceId});
+                    deregisterInstancesNow(ImmutableList.of(instanceId));
+                    sensors().set(FAST_DEREGISTRATION_LATENCY, Duration.millis(System.currentTimeMillis() - detectedTimestamp));
+                }
+            } else if (isMemberRecovered(member)) {
+                if (readmitInstance(instanceId, EXCLUDED_FAILED)) {
+                    LOG.info("Member {} of {} has recovered; re-registering instance {}", new Object[] {member, this, instanceId});
+                    registerInstancesNow(ImmutableList.of(instanceId));
                 }
             }
-            
-            sensors().set(Attributes.HOSTNAME, loadBalancerDescription.getDNSName());
-            
+        } catch (RuntimeException e) {
+            // Exclusions are still honoured by the next reload, which will retry
+            LOG.warn("Problem updating ELB registration of "+instanceId+" (member "+member+") in "+this+"; continuing", e);
         } finally {
-            if (client != null) client.shutdown();
+            ApiRateLimiter.setPriority(previousPriority);
         }
     }
 
+    protected boolean isMemberFailed(Entity member) {
+        Lifecycle state = member.getAttribute(Attributes.SERVICE_STATE_ACTUAL);
+        return Boolean.FALSE.equals(member.getAttribute(Attributes.SERVICE_UP))
+                || state == Lifecycle.ON_FIRE || state == Lifecycle.STOPPING || state == Lifecycle.STOPPED;
+    }
 
-    @Override
-    public void deleteLoadBalancer() {
-        String elbName = checkNotNull(getAttribute(LOAD_BALANCER_NAME), "elbName");
-        deleteLoadBalancer(elbName);
+    protected boolean isMemberRecovered(Entity member) {
+        Lifecycle state = member.getAttribute(Attributes.SERVICE_STATE_ACTUAL);
+        return Boolean.TRUE.equals(member.getAttribute(Attributes.SERVICE_UP))
+                && (state == null || state == Lifecycle.RUNNING);
+    }
+
+    /**
+     * Starts timing membership changes (see {@link PropagationTracker}): each instance added to or removed
+     * from {@link #SERVER_POOL_TARGETS} is timed until a reload has registered or deregistered it (and, if
+     * {@link #PROPAGATION_CONFIRM_HEALTH}, until the ELB reports its health accordingly). A background job
+     * counts overdue changes as SLO breaches, and polls the ELB's instance health while changes await it.
+     */
+    protected void subscribeToServerPoolTargets() {
+        synchronized (propagationMutex) {
+            unsubscribeFromServerPoolTargets();
+            getPropagationTracker().start(toInstanceIds(getAttribute(SERVER_POOL_TARGETS)));
+            serverPoolTargetsSubscription = subscriptions().subscribe(this, SERVER_POOL_TARGETS, new SensorEventListener<Map<Entity, String>>() {
+                @Override public void onEvent(SensorEvent<Map<Entity, String>> event) {
+                    onServerPoolTargetsChanged(event.getValue(), event.getTimestamp());
+                }});
+        }
+        final Duration period = getRequiredConfig(PROPAGATION_HEALTH_POLL_PERIOD);
+        synchronized (backgroundJobsMutex) {
+            if (propagationJob == null) {
+                propagationJob = new PeriodicJob(this, "Track ELB membership propagation", new Callable<Duration>() {
+                    @Override public Duration call() {
+                        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+                        try {
+                            checkPropagations();
+                        } finally {
+                            ApiRateLimiter.setPriority(previousPriority);
+                        }
+                        return period;
+                    }});
+            }
+            propagationJob.start(period);
+        }
+    }
+
+    protected void unsubscribeFromServerPoolTargets() {
+        synchronized (propagationMutex) {
+            if (serverPoolTargetsSubscription != null) {
+                subscriptions().unsubscribe(this, serverPoolTargetsSubscription);
+                serverPoolTargetsSubscription = null;
+            }
+            if (propagationTracker != null) propagationTracker.stop();
+        }
+        synchronized (backgroundJobsMutex) {
+            if (propagationJob != null) propagationJob.stop();
+        }
+    }
+
+    /**
+     * The tracker of membership changes, created on first use so that the latency distribution covers
+     * the controller's whole life.
+     */
+    protected PropagationTracker getPropagationTracker() {
+        synchronized (propagationMutex) {
+            if (propagationTracker == null) {
+                propagationTracker = new PropagationTracker(getRequiredConfig(PROPAGATION_CONFIRM_HEALTH),
+                        getRequiredConfig(PROPAGATION_SLO).toMilliseconds(), new PropagationTracker.Listener() {
+                            @Override public void onPropagated(String instanceId, boolean joined, long latencyMillis) {
+                                onPropagationCompleted(instanceId, joined, latencyMillis);
+                            }
+                            @Override public void onSloBreached(String instanceId, boolean joined) {
+                                LOG.debug("{} of instance {} in ELB {} is overdue", new Object[] {(joined ? "Join" : "Leave"),
+                                        instanceId, getAttribute(LOAD_BALANCER_NAME)});
+                                incrementPropagationSloBreaches();
+                            }});
+            }
+            return propagationTracker;
+        }
+    }
+
+    protected void onServerPoolTargetsChanged(Map<Entity, String> targets, long timestamp) {
+        PropagationTracker tracker = getPropagationTracker();
+        tracker.onTargetsChanged(toInstanceIds(targets), timestamp, System.currentTimeMillis());
+        publishPropagationLatency(tracker);
+    }
+
+    /**
+     * Called after a reload has registered exactly the given instances (on every shard), to complete
+     * the membership changes it has applied.
+     */
+    protected void onTargetsReloaded(Set<String> registeredInstanceIds) {
+        PropagationTracker tracker = getPropagationTracker();
+        tracker.onReloaded(registeredInstanceIds, getExclusions().keySet(), System.currentTimeMillis());
+        publishPropagationLatency(tracker);
+    }
+
+    /**
+     * Counts overdue membership changes as SLO breaches and, if any changes await confirmation, passes
+     * the ELB's instance health to the tracker. Only calls the ELB while changes await confirmation.
+     */
+    protected void checkPropagations() {
+        PropagationTracker tracker = getPropagationTracker();
+        if (tracker.isAwaitingHealth()) {
+            tracker.onHealthReported(describeInstanceHealth(), System.currentTimeMillis());
+        } else {
+            tracker.checkOverdue(System.currentTimeMillis());
+        }
+        publishPropagationLatency(tracker);
+    }
+
+    private void onPropagationCompleted(String instanceId, boolean joined, long latencyMillis) {
+        LOG.debug("{} of instance {} reached ELB {} after {}", new Object[] {(joined ? "Join" : "Leave"), instanceId,
+                getAttribute(LOAD_BALANCER_NAME), Duration.millis(latencyMillis)});
+        sensors().set(PROPAGATION_LATENCY_LAST, Duration.millis(latencyMillis));
+        recordMetric(METRIC_PROPAGATION_LATENCY, latencyMillis);
+    }
+
+    /** Only called by the tracker, while it holds its lock. */
+    private void incrementPropagationSloBreaches() {
+        Long breaches = getAttribute(PROPAGATION_SLO_BREACHES);
+        sensors().set(PROPAGATION_SLO_BREACHES, (breaches == null) ? 1L : breaches + 1);
+    }
+
+    private void publishPropagationLatency(PropagationTracker tracker) {
+        Map<String, Double> result = tracker.getLatencySummary();
+        if (result != null && !result.equals(getAttribute(PROPAGATION_LATENCY))) {
+            sensors().set(PROPAGATION_LATENCY, result);
+        }
+    }
+
+    private static Set<String> toInstanceIds(@Nullable Map<Entity, String> targets) {
+        if (targets == null) return ImmutableSet.of();
+        return ImmutableSet.copyOf(Iterables.filter(targets.values(), Predicates.notNull()));
+    }
+
+    /**
+     * Records that the given instance should not be registered with the ELB (even though its member is
+     * in the server pool), returning false if it was already excluded.
+     */
+    protected boolean excludeInstance(String instanceId, String reason) {
+        synchronized (exclusionsMutex) {
+            Map<String, String> exclusions = getExclusions();
+            if (exclusions.containsKey(instanceId)) return false;
+            Map<String, String> result = Maps.newLinkedHashMap(exclusions);
+            result.put(instanceId, reason);
+            sensors().set(EXCLUDED_INSTANCES, ImmutableMap.copyOf(result));
+            return true;
+        }
+    }
+
+    /**
+     * Removes the exclusion of the given instance, if it was excluded for the given reason,
+     * returning whether it was removed.
+     */
+    protected boolean readmitInstance(String instanceId, String reason) {
+        synchronized (exclusionsMutex) {
+            Map<String, String> exclusions = getExclusions();
+            if (!reason.equals(exclusions.get(instanceId))) return false;
+            Map<String, String> result = Maps.newLinkedHashMap(exclusions);
+            result.remove(instanceId);
+            sensors().set(EXCLUDED_INSTANCES, ImmutableMap.copyOf(result));
+            return true;
+        }
+    }
+
+    /**
+     * Excludes (for the given reason) those of the candidates in the given set, and re-admits the other
+     * candidates if they were excluded for that reason, publishing the exclusions once.
+     */
+    protected void setExclusions(Collection<String> candidates, Set<String> excluded, String reason) {
+        synchronized (exclusionsMutex) {
+            Map<String, String> exclusions = getExclusions();
+            Map<String, String> result = Maps.newLinkedHashMap(exclusions);
+            for (String instanceId : candidates) {
+                if (excluded.contains(instanceId)) {
+                    if (!result.containsKey(instanceId)) result.put(instanceId, reason);
+                } else if (reason.equals(result.get(instanceId))) {
+                    result.remove(instanceId);
+                }
+            }
+            if (!result.equals(exclusions)) {
+                sensors().set(EXCLUDED_INSTANCES, ImmutableMap.copyOf(result));
+            }
+        }
+    }
+
+    /**
+     * Returns the given server-pool addresses minus those currently excluded; exclusions for instances
+     * no longer in the server pool are discarded.
+     */
+    protected Set<String> excludeInstances(Set<String> addresses) {
+        synchronized (exclusionsMutex) {
+            Map<String, String> exclusions = getExclusions();
+            Map<String, String> retained = Maps.filterKeys(exclusions, Predicates.in(addresses));
+            if (retained.size() != exclusions.size()) {
+                sensors().set(EXCLUDED_INSTANCES, ImmutableMap.copyOf(retained));
+            }
+            return ImmutableSet.copyOf(Sets.difference(addresses, retained.keySet()));
+        }
+    }
+
+    /**
+     * Returns the target addresses to register, after holding back instances (or disabling zones) as
+     * configured by {@link #ZONE_BALANCING_MODE}; also publishes the per-zone counts and skew.
+     * 
+     * Instances previously held back are reconsidered each time, so that they are re-admitted once
+     * the other zones catch up.
+     */
+    protected Set<String> balanceZones(Set<String> addresses) {
+        Set<String> zones = getAttribute(LOAD_BALANCER_AVAILABILITY_ZONES);
+        Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+        if (zones == null || zones.isEmpty() || targets == null) return addresses;
+
+        ZoneBalancingMode mode = getRequiredConfig(ZONE_BALANCING_MODE);
+        if (Boolean.TRUE.equals(getConfig(CROSS_ZONE_LOAD_BALANCING))) mode = ZoneBalancingMode.NONE;
+        if (mode == ZoneBalancingMode.DISABLE_LOW_CAPACITY_ZONES && getConfig(LOAD_BALANCER_SUBNETS) != null && !getConfig(LOAD_BALANCER_SUBNETS).isEmpty()) {
+            LOG.warn("Cannot disable availability zones of ELB {} in a VPC; not balancing zones", getAttribute(LOAD_BALANCER_NAME));
+            mode = ZoneBalancingMode.NONE;
+        }
+        double maxSkew = getRequiredConfig(ZONE_BALANCING_MAX_SKEW);
+
+        // Group the candidates (including those held back last time, unless their member has since failed) by zone
+        Map<String, String> exclusions = getExclusions();
+        SetMultimap<String, String> instancesByZone = LinkedHashMultimap.create();
+        Set<String> candidates = Sets.newLinkedHashSet(addresses);
+        for (Map.Entry<Entity, String> entry : targets.entrySet()) {
+            String instanceId = entry.getValue();
+            if (instanceId == null) continue;
+            boolean heldBack = EXCLUDED_ZONE_BALANCE.equals(exclusions.get(instanceId));
+            if (heldBack && !isMemberFailed(entry.getKey())) candidates.add(instanceId);
+            if (!candidates.contains(instanceId)) continue;
+            String zone = getAvailabilityZoneOfEntity(entry.getKey());
+            if (zone != null && zones.contains(zone)) instancesByZone.put(zone, instanceId);
+        }
+
+        ZoneBalancer.Plan plan = new ZoneBalancer(mode, maxSkew).balance(zones, instancesByZone);
+        Set<String> holdBack = plan.getHeldBack();
+        setExclusions(candidates, holdBack, EXCLUDED_ZONE_BALANCE);
+        if (!holdBack.isEmpty()) {
+            LOG.debug("Holding back instances {} from ELB {} to balance zones", holdBack, getAttribute(LOAD_BALANCER_NAME));
+        }
+        applyDisabledZones(zones, plan.getDisabledZones());
+
+        if (!plan.getInstanceCounts().equals(getAttribute(ZONE_INSTANCE_COUNTS))) {
+            sensors().set(ZONE_INSTANCE_COUNTS, plan.getInstanceCounts());
+        }
+        if (getAttribute(ZONE_SKEW) == null || Double.compare(plan.getSkew(), getAttribute(ZONE_SKEW)) != 0) {
+            sensors().set(ZONE_SKEW, plan.getSkew());
+        }
+        return ImmutableSet.copyOf(Sets.difference(candidates, holdBack));
+    }
+
+    /**
+     * Enables or disables zones on the ELB (every shard) so that exactly the given zones are disabled.
+     */
+    protected void applyDisabledZones(Set<String> zones, Set<String> disabledZones) {
+        Set<String> previous = getAttribute(DISABLED_AVAILABILITY_ZONES);
+        if (previous == null) previous = ImmutableSet.of();
+        Set<String> toDisable = ImmutableSet.copyOf(Sets.difference(disabledZones, previous));
+        Set<String> toEnable = ImmutableSet.copyOf(Sets.intersection(Sets.difference(previous, disabledZones), zones));
+        if (toDisable.isEmpty() && toEnable.isEmpty()) return;
+
+        LOG.info("Balancing zones of ELB {}: disabling {}, re-enabling {}", new Object[] {getAttribute(LOAD_BALANCER_NAME), toDisable, toEnable});
+        AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            for (String shardName : getShardNames(getAttribute(LOAD_BALANCER_NAME))) {
+                if (!toEnable.isEmpty()) {
+                    client.enableAvailabilityZonesForLoadBalancer(new EnableAvailabilityZonesForLoadBalancerRequest()
+                            .withLoadBalancerName(shardName)
+                            .withAvailabilityZones(toEnable));
+                }
+                if (!toDisable.isEmpty()) {
+                    client.disableAvailabilityZonesForLoadBalancer(new DisableAvailabilityZonesForLoadBalancerRequest()
+                            .withLoadBalancerName(shardName)
+                            .withAvailabilityZones(toDisable));
+                }
+            }
+        } finally {
+            if (client != null) client.shutdown();
+        }
+        sensors().set(DISABLED_AVAILABILITY_ZONES, ImmutableSet.copyOf(disabledZones));
+    }
+
+    /**
+     * The availability zone of the member's EC2 instance, or null if not known.
+     */
+    @Nullable
+    protected String getAvailabilityZoneOfEntity(Entity member) {
+        JcloudsSshMachineLocation machine = (JcloudsSshMachineLocation) Iterables.find(member.getLocations(),
+                Predicates.instanceOf(JcloudsSshMachineLocation.class), null);
+        if (machine == null || machine.getNode() == null) return null;
+        for (org.jclouds.domain.Location loc = machine.getNode().getLocation(); loc != null; loc = loc.getParent()) {
+            if (loc.getScope() == LocationScope.ZONE) return loc.getId();
+        }
+        return null;
+    }
+
+    private Map<String, String> getExclusions() {
+        Map<String, String> result = getAttribute(EXCLUDED_INSTANCES);
+        return (result == null) ? ImmutableMap.<String, String>of() : result;
+    }
+
+    protected void registerInstancesNow(Collection<String> instanceIds) {
+        JcloudsLocation loc = getLocation();
+        AmazonElasticLoadBalancing client = newClient(loc);
+        driftDetector.beginRegistrationChange();
+        try {
+            for (Map.Entry<String, Collection<Instance>> entry : groupByElb(instanceIds).asMap().entrySet()) {
+                Collection<Instance> changed = withoutApplied(entry.getKey(), entry.getValue(), true);
+                if (changed.isEmpty()) continue;
+                client.registerInstancesWithLoadBalancer(new RegisterInstancesWithLoadBalancerRequest(entry.getKey(), ImmutableList.copyOf(changed)));
+                recordRegistrations(changed, true);
+                updateAppliedInstances(entry.getKey(), changed, true);
+            }
+        } finally {
+            driftDetector.endRegistrationChange();
+            if (client != null) client.shutdown();
+        }
+    }
+
+    protected void deregisterInstancesNow(Collection<String> instanceIds) {
+        JcloudsLocation loc = getLocation();
+        AmazonElasticLoadBalancing client = newClient(loc);
+        driftDetector.beginRegistrationChange();
+        try {
+            for (Map.Entry<String, Collection<Instance>> entry : groupByElb(instanceIds).asMap().entrySet()) {
+                Collection<Instance> changed = withoutApplied(entry.getKey(), entry.getValue(), false);
+                if (changed.isEmpty()) continue;
+                client.deregisterInstancesFromLoadBalancer(new DeregisterInstancesFromLoadBalancerRequest(entry.getKey(), ImmutableList.copyOf(changed)));
+                recordRegistrations(changed, false);
+                updateAppliedInstances(entry.getKey(), changed, false);
+            }
+        } finally {
+            driftDetector.endRegistrationChange();
+            if (client != null) client.shutdown();
+        }
+    }
+
+    private void recordRegistrations(Collection<Instance> instances, boolean registered) {
+        long now = System.currentTimeMillis();
+        for (Instance instance : instances) {
+            if (registered) {
+                registrationTimes.put(instance.getInstanceId(), now);
+            } else {
+                registrationTimes.remove(instance.getInstanceId());
+            }
+        }
+    }
+
+    private void setAppliedInstances(String elbName, @Nullable Collection<String> instanceIds) {
+        synchronized (appliedInstances) {
+            if (instanceIds == null) {
+                appliedInstances.remove(elbName);
+            } else {
+                appliedInstances.put(elbName, ImmutableSet.copyOf(instanceIds));
+            }
+        }
+    }
+
+    /**
+     * The instances not already known to be in the given state, e.g. because a reload has just applied it.
+     */
+    private Collection<Instance> withoutApplied(String elbName, Collection<Instance> instances, boolean registered) {
+        synchronized (appliedInstances) {
+            Set<String> applied = appliedInstances.get(elbName);
+            if (applied == null) return instances;
+            List<Instance> result = Lists.newArrayList();
+            for (Instance instance : instances) {
+                if (applied.contains(instance.getInstanceId()) != registered) result.add(instance);
+            }
+            return result;
+        }
+    }
+
+    private void updateAppliedInstances(String elbName, Collection<Instance> instances, boolean registered) {
+        synchronized (appliedInstances) {
+            Set<String> applied = appliedInstances.get(elbName);
+            if (applied == null) return;
+            Set<String> result = Sets.newLinkedHashSet(applied);
+            for (Instance instance : instances) {
+                if (registered) {
+                    result.add(instance.getInstanceId());
+                } else {
+                    result.remove(instance.getInstanceId());
+                }
+            }
+            appliedInstances.put(elbName, ImmutableSet.copyOf(result));
+        }
+    }
+
+    /**
+     * Groups the instances by the ELB (or ELB shard) they are registered with.
+     */
+    protected Multimap<String, Instance> groupByElb(Collection<String> instanceIds) {
+        List<String> shardNames = getShardNames(checkNotNull(getAttribute(LOAD_BALANCER_NAME), "elbName"));
+        ConsistentHashRing ring = (shardNames.size() > 1) ? new ConsistentHashRing(shardNames) : null;
+        Multimap<String, Instance> result = LinkedHashMultimap.create();
+        for (String instanceId : instanceIds) {
+            result.put((ring == null) ? shardNames.get(0) : ring.shardFor(instanceId), new Instance(instanceId));
+        }
+        return result;
+    }
+
+    protected void startLoadBalancer() {
+        getTracer().call("startLoadBalancer", new Callable<Void>() {
+            @Override public Void call() {
+                startLoadBalancerUntraced();
+                return null;
+            }});
+    }
+
+    private void startLoadBalancerUntraced() {
+        String elbName = getAttribute(LOAD_BALANCER_NAME);
+        Map<String, String> hostnames = Maps.newLinkedHashMap();
+
+        if (getRequiredConfig(BIND_TO_EXISTING)) {
+            checkNotNull(elbName, "load balancer name must not be null if binding to existing");
+            checkArgument(Strings.isNonBlank(elbName), "load balancer name must be non-blank if binding to existing");
+            // Re-binding to existing ELBs can wait for more urgent calls
+            ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+            try {
+                for (String shardName : getShardNames(elbName)) {
+                    hostnames.put(shardName, reinitLoadBalancer(shardName));
+                }
+            } finally {
+                ApiRateLimiter.setPriority(previousPriority);
+            }
+        } else if (getRequiredConfig(REPLACE_EXISTING)) {
+            checkNotNull(elbName, "load balancer name must not be null if configured to replace any existing");
+            checkArgument(Strings.isNonBlank(elbName), "load balancer name must be non-blank if configured to replace any existing");
+            for (String shardName : getShardNames(elbName)) {
+                if (doesLoadBalancerExist(shardName)) {
+                    deleteLoadBalancer(shardName);
+                }
+                hostnames.put(shardName, createLoadBalancer(shardName));
+            }
+        } else {
+            long claimStartTime = System.currentTimeMillis();
+            String claimed = (Strings.isBlank(elbName) && isWarmPoolEnabled()) ? claimFromWarmPool() : null;
+            if (claimed != null) {
+                // Re-initialise the pooled ELB to this configuration, as if binding to an existing ELB
+                elbName = claimed;
+                sensors().set(LOAD_BALANCER_NAME, elbName);
+                hostnames.put(elbName, reinitLoadBalancer(elbName));
+                sensors().set(WARM_POOL_CLAIM_LATENCY, Duration.millis(System.currentTimeMillis() - claimStartTime));
+            } else {
+                if (Strings.isBlank(elbName)) {
+                    elbName = generateUnusedElbName();
+                    sensors().set(LOAD_BALANCER_NAME, elbName);
+                } else {
+                    for (String shardName : getShardNames(elbName)) {
+                        if (doesLoadBalancerExist(shardName)) {
+                            throw new IllegalStateException("Cannot create ELB "+shardName+" in "+this+", because already exists (consider using configuration "+REPLACE_EXISTING.getName()+")");
+                        }
+                    }
+                }
+
+                for (String shardName : getShardNames(elbName)) {
+                    hostnames.put(shardName, createLoadBalancer(shardName));
+                }
+            }
+        }
+
+        // When sharded, the first shard's hostname is also reported as the controller's hostname (and so its url)
+        sensors().set(Attributes.HOSTNAME, Iterables.getFirst(hostnames.values(), null));
+        if (isSharded()) {
+            sensors().set(SHARD_HOSTNAMES, ImmutableMap.copyOf(hostnames));
+        }
+        // Top up the pool whether or not this controller claimed from it, so it is filled before the first claim
+        if (isWarmPoolEnabled()) {
+            refillWarmPool();
+        }
+    }
+
+    /**
+     * Creates the ELB, returning its DNS name.
+     */
+    protected String createLoadBalancer(final String elbName) {
+        return getTracer().call("createLoadBalancer", new Callable<String>() {
+            @Override public String call() {
+                getTracer().current().setAttribute("elbName", elbName);
+                return createLoadBalancerUntraced(elbName);
+            }});
+    }
+
+    private String createLoadBalancerUntraced(String elbName) {
+        JcloudsLocation loc = getLocation();
+        
+        Set<String> availabilityZoneNames = getAvailabilityZones(loc);
+        Boolean healthCheckEnabled = getConfig(HEALTH_CHECK_ENABLED);
+        HealthCheckSettings healthCheckSettings = getConfiguredHealthCheckSettings();
+        
+        LOG.debug("Creating new ELB '"+elbName+"', for server-pool "+getConfig(SERVER_POOL));
+
+        AmazonElasticLoadBalancing client = newClient(loc);
+        try {
+            CreateLoadBalancerResult result = client.createLoadBalancer(newCreateLoadBalancerRequest(elbName, availabilityZoneNames));
+            sensors().set(LOAD_BALANCER_AVAILABILITY_ZONES, ImmutableSet.copyOf(availabilityZoneNames));
+            
+            configureSslNegotiationPolicy(client, elbName, ImmutableList.<String>of(), ImmutableList.<String>of());
+            configureLoadBalancerAttributes(client, elbName);
+
+            if (healthCheckEnabled != null && healthCheckEnabled) {
+                configureHealthCheck(client, elbName, healthCheckSettings);
+            }
+            
+            return result.getDNSName();
+
+        } finally {
+            if (client != null) client.shutdown();
+        }
+    }
+
+    /**
+     * The request to create an ELB with this controller's scheme, subnets, security groups and listener.
+     */
+    protected CreateLoadBalancerRequest newCreateLoadBalancerRequest(String elbName, Set<String> availabilityZoneNames) {
+        String elbScheme = getConfig(LOAD_BALANCER_SCHEME);
+        Collection<String> securityGroups = getConfig(LOAD_BALANCER_SECURITY_GROUPS);
+        Collection<String> subnets = getConfig(LOAD_BALANCER_SUBNETS);
+
+        CreateLoadBalancerRequest result = new CreateLoadBalancerRequest();
+        result.setLoadBalancerName(elbName);
+        result.setAvailabilityZones(availabilityZoneNames);
+        if (Strings.isNonBlank(elbScheme)) result.setScheme(elbScheme);
+        if (securityGroups != null) result.setSecurityGroups(securityGroups);
+        if (subnets != null) result.setSubnets(subnets);
+        result.setListeners(ImmutableList.of(newListener()));
+        return result;
+    }
+
+    protected boolean isWarmPoolEnabled() {
+        return getRequiredConfig(WARM_POOL_SIZE) > 0 && !isSharded();
+    }
+
+    protected String getWarmPoolProfile() {
+        return ElbWarmPool.profileOf(getRegionName(getLocation()), getConfig(LOAD_BALANCER_SCHEME), 
+                getConfig(LOAD_BALANCER_SUBNETS), getConfig(LOAD_BALANCER_SECURITY_GROUPS));
+    }
+
+    /**
+     * Claims an ELB from the warm pool, returning its name (or null if the pool is empty).
+     */
+    @Nullable
+    protected String claimFromWarmPool() {
+        ElbWarmPool pool = ElbWarmPool.get(getManagementContext());
+        String profile = getWarmPoolProfile();
+        String result;
+        AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            result = pool.claim(client, profile, getId());
+        } catch (RuntimeException e) {
+            // fall back to creating an ELB
+            LOG.warn("Unable to claim ELB from warm pool "+profile+" for "+this+"; continuing", e);
+            result = null;
+        } finally {
+            if (client != null) client.shutdown();
+        }
+        if (result == null) {
+            LOG.debug("Warm pool {} empty when starting {}; will create ELB", profile, this);
+        }
+        sensors().set(WARM_POOL_MISSES, pool.getMisses(profile));
+        return result;
+    }
+
+    protected void refillWarmPool() {
+        final ElbWarmPool pool = ElbWarmPool.get(getManagementContext());
+        final String profile = getWarmPoolProfile();
+        final int targetSize = getRequiredConfig(WARM_POOL_SIZE);
+        Task<Void> task = Tasks.<Void>builder()
+                .displayName("Refill ELB warm pool")
+                .body(new Callable<Void>() {
+                    @Override public Void call() {
+                        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+                        AmazonElasticLoadBalancing client = null;
+                        try {
+                            final Set<String> availabilityZoneNames = getAvailabilityZones(getLocation());
+                            client = newClient(getLocation());
+                            int available = pool.refill(client, profile, targetSize, new Function<String, CreateLoadBalancerRequest>() {
+                                @Override public CreateLoadBalancerRequest apply(String elbName) {
+                                    return newCreateLoadBalancerRequest(elbName, availabilityZoneNames);
+                                }});
+                            if (available >= 0) sensors().set(WARM_POOL_AVAILABLE, available);
+                        } catch (RuntimeException e) {
+                            LOG.warn("Problem refilling ELB warm pool "+profile+" (for "+ElbControllerImpl.this+")", e);
+                        } finally {
+                            if (client != null) client.shutdown();
+                            ApiRateLimiter.setPriority(previousPriority);
+                        }
+                        return null;
+                    }})
+                .build();
+        getExecutionContext().submit(task);
+    }
+
+    /**
+     * Deletes pooled ELBs above the pool's size, or all of them if no other controller on this management
+     * node uses the pool, so that they are not left costing money.
+     */
+    protected void drainWarmPool() {
+        ElbWarmPool pool = ElbWarmPool.get(getManagementContext());
+        String profile = getWarmPoolProfile();
+        int targetSize = pool.removeUser(profile, getId()) ? getRequiredConfig(WARM_POOL_SIZE) : 0;
+        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+        AmazonElasticLoadBalancing client = null;
+        try {
+            client = newClient(getLocation());
+            sensors().set(WARM_POOL_AVAILABLE, pool.drain(client, profile, targetSize));
+        } catch (RuntimeException e) {
+            LOG.warn("Problem draining ELB warm pool "+profile+" (for "+this+"); continuing", e);
+        } finally {
+            if (client != null) client.shutdown();
+            ApiRateLimiter.setPriority(previousPriority);
+        }
+    }
+
+    /**
+     * Re-initialises the existing ELB to match this controller's configuration, returning its DNS name.
+     */
+    protected String reinitLoadBalancer(final String elbName) {
+        return getTracer().call("reinitLoadBalancer", new Callable<String>() {
+            @Override public String call() {
+                getTracer().current().setAttribute("elbName", elbName);
+                return reinitLoadBalancerUntraced(elbName);
+            }});
+    }
+
+    private String reinitLoadBalancerUntraced(String elbName) {
+        JcloudsLocation loc = getLocation();
+        checkNotNull(elbName, LOAD_BALANCER_NAME.getName());
+
+        int loadBalancerPort = getRequiredConfig(LOAD_BALANCER_PORT);
+        String elbScheme = getConfig(LOAD_BALANCER_SCHEME);
+        Collection<String> securityGroups = getConfig(LOAD_BALANCER_SECURITY_GROUPS);
+        Set<String> subnets = (getConfig(LOAD_BALANCER_SUBNETS) != null) ? ImmutableSet.copyOf(getConfig(LOAD_BALANCER_SUBNETS)) : ImmutableSet.<String>of();
+        String sslCertificateId = getConfig(SSL_CERTIFICATE_ID);
+        Set<String> availabilityZoneNames = getAvailabilityZones(loc);
+        Boolean healthCheckEnabled = getConfig(HEALTH_CHECK_ENABLED);
+        HealthCheckSettings healthCheckSettings = getConfiguredHealthCheckSettings();
+        
+        LOG.debug("Re-initialising existing ELB: "+elbName);
+
+        AmazonElasticLoadBalancing client = newClient(loc);
+        try {
+            // Find out about existing load balancer, so can clear+reset its configuration
+            DescribeLoadBalancersResult loadBalancers = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)));
+            List<LoadBalancerDescription> loadBalancerDescriptions = loadBalancers.getLoadBalancerDescriptions();
+            if (loadBalancerDescriptions.isEmpty()) {
+                throw new IllegalStateException("No existing load balancer with name "+elbName);
+            }
+            LoadBalancerDescription loadBalancerDescription = loadBalancerDescriptions.get(0);
+            
+            // TODO Things we can't change: warn if different from configuration!
+            // Do we just need to dig into API more?!
+            String oldScheme = loadBalancerDescription.getScheme();
+            if (!oldScheme.equals(elbScheme)) {
+                LOG.warn("Existing ELB {} scheme ({}) is different from configuration ({}); cannot modify; continuing", 
+                        new Object[] {elbName, oldScheme, elbScheme});
+            }
+
+            // Set the availability zones (re-enabling any disabled for zone balancing)
+            sensors().set(LOAD_BALANCER_AVAILABILITY_ZONES, ImmutableSet.copyOf(availabilityZoneNames));
+            sensors().set(DISABLED_AVAILABILITY_ZONES, ImmutableSet.<String>of());
+            List<String> oldAvailabilityZoneNames = loadBalancerDescription.getAvailabilityZones();
+            Set<String> oldAvailabilityZoneNamesSet = ImmutableSet.copyOf(oldAvailabilityZoneNames);
+            Set<String> removedAvailabilityZoneNames = Sets.difference(oldAvailabilityZoneNamesSet, availabilityZoneNames);
+            Set<String> addedAvailabilityZoneNames = Sets.difference(availabilityZoneNames, oldAvailabilityZoneNamesSet);
+            if (!addedAvailabilityZoneNames.isEmpty()) {
+                EnableAvailabilityZonesForLoadBalancerRequest enableAvailabilityZonesRequest = new EnableAvailabilityZonesForLoadBalancerRequest()
+                        .withLoadBalancerName(elbName)
+                        .withAvailabilityZones(addedAvailabilityZoneNames);
+                client.enableAvailabilityZonesForLoadBalancer(enableAvailabilityZonesRequest);
+            }
+            if (!removedAvailabilityZoneNames.isEmpty()) {
+                DisableAvailabilityZonesForLoadBalancerRequest disableAvailabilityZonesRequest = new DisableAvailabilityZonesForLoadBalancerRequest()
+                        .withLoadBalancerName(elbName)
+                        .withAvailabilityZones(removedAvailabilityZoneNames);
+                client.disableAvailabilityZonesForLoadBalancer(disableAvailabilityZonesRequest);
+            }
+            
+            // Set the security groups
+            // TODO Not changing security groups if config is empty, because calling applySecurityGroups with an empty list causes:
+            //      Caused by: AmazonServiceException: Status Code: 400, AWS Service: AmazonElasticLoadBalancing, AWS Request ID: f0661b5b-30ee-11e3-bd02-232415f6851f, AWS Error Code: ValidationError, AWS Error Message: 1 validation error detected: Value null at 'securityGroups' failed to satisfy constraint: Member must not be null
+            if (securityGroups != null && securityGroups.size() > 0) {
+                ApplySecurityGroupsToLoadBalancerRequest securityGroupsRequest = new ApplySecurityGroupsToLoadBalancerRequest()
+                        .withLoadBalancerName(elbName)
+                        .withSecurityGroups(securityGroups != null ? securityGroups : ImmutableList.<String>of());
+                client.applySecurityGroupsToLoadBalancer(securityGroupsRequest);
+            }
+
+            // Set the subnets
+            Set<String> oldSubnets = ImmutableSet.copyOf(loadBalancerDescription.getSubnets());
+            Set<String> removedSubnets = Sets.difference(oldSubnets, subnets);
+            Set<String> addedSubnets = Sets.difference(subnets, oldSubnets);
+            if (!addedSubnets.isEmpty()) {
+                AttachLoadBalancerToSubnetsRequest attachSubnetsRequest = new AttachLoadBalancerToSubnetsRequest()
+                        .withLoadBalancerName(elbName)
+                        .withSubnets(addedSubnets);
+                client.attachLoadBalancerToSubnets(attachSubnetsRequest);
+            }
+            if (!removedSubnets.isEmpty()) {
+                DetachLoadBalancerFromSubnetsRequest deattachSubnetsRequest = new DetachLoadBalancerFromSubnetsRequest()
+                        .withLoadBalancerName(elbName)
+                        .withSubnets(removedSubnets);
+                client.detachLoadBalancerFromSubnets(deattachSubnetsRequest);
+            }
+
+            // Keep the listener if it matches (updating its certificate in-place if that is all that differs);
+            // remove any other old listeners, and add the new one if needed. Recreating the listener would
+            // drop connections, so is avoided where possible.
+            Listener listener = newListener();
+            ListenerDescription matchingListener = null;
+            List<Integer> staleListenerPorts = Lists.newArrayList();
+            for (ListenerDescription listenerDescription : loadBalancerDescription.getListenerDescriptions()) {
+                if (matchingListener == null && isSameListenerIgnoringCertificate(listenerDescription.getListener(), listener)) {
+                    matchingListener = listenerDescription;
+                } else {
+                    staleListenerPorts.add(listenerDescription.getListener().getLoadBalancerPort());
+                }
+            }
+            if (staleListenerPorts.size() > 0) {
+                DeleteLoadBalancerListenersRequest deleteListenersRequest = new DeleteLoadBalancerListenersRequest()
+                        .withLoadBalancerName(elbName)
+                        .withLoadBalancerPorts(staleListenerPorts);
+                client.deleteLoadBalancerListeners(deleteListenersRequest);
+            }
+            List<String> listenerPolicyNames;
+            if (matchingListener == null) {
+                CreateLoadBalancerListenersRequest createListenersRequest = new CreateLoadBalancerListenersRequest()
+                    .withLoadBalancerName(elbName)
+                    .withListeners(listener);
+                client.createLoadBalancerListeners(createListenersRequest);
+                listenerPolicyNames = ImmutableList.of();
+            } else {
+                if (Strings.isNonBlank(sslCertificateId) && !sslCertificateId.equals(matchingListener.getListener().getSSLCertificateId())) {
+                    LOG.info("Replacing SSL certificate of ELB {} listener on port {}: {} -> {}", 
+                            new Object[] {elbName, loadBalancerPort, matchingListener.getListener().getSSLCertificateId(), sslCertificateId});
+                    setSslCertificate(client, elbName, sslCertificateId);
+                }
+                listenerPolicyNames = (matchingListener.getPolicyNames() != null) ? matchingListener.getPolicyNames() : ImmutableList.<String>of();
+            }
+
+            List<String> existingPolicyNames = (loadBalancerDescription.getPolicies() != null && loadBalancerDescription.getPolicies().getOtherPolicies() != null) 
+                    ? loadBalancerDescription.getPolicies().getOtherPolicies() 
+                    : ImmutableList.<String>of();
+            configureSslNegotiationPolicy(client, elbName, existingPolicyNames, listenerPolicyNames);
+            configureLoadBalancerAttributes(client, elbName);
+
+            // Reset the health check
+            HealthCheck oldHealthCheck = loadBalancerDescription.getHealthCheck();
+            if (healthCheckEnabled != null && healthCheckEnabled) {
+                configureHealthCheck(client, elbName, healthCheckSettings);
+            } else {
+                // TODO Not removing old health check because passing in null for ConfigureHealthCheckRequest gives:
+                //      Caused by: AmazonServiceException: Status Code: 400, AWS Service: AmazonElasticLoadBalancing, AWS Request ID: 47a2b87d-30ef-11e3-bd82-6571b2f68bd5, AWS Error Code: ValidationError, AWS Error Message: 1 validation error detected: Value null at 'healthCheck' failed to satisfy constraint: Member must not be null
+                if (oldHealthCheck != null) {
+                    LOG.warn("Existing ELB {} (in {}) health check ({}) not removed (no new health check wanted; continuing", 
+                            new Object[] {elbName, this, oldHealthCheck});
+                }
+            }
+            
+            return loadBalancerDescription.getDNSName();
+
+        } finally {
+            if (client != null) client.shutdown();
+        }
+    }
+
+
+    protected Listener newListener() {
+        String sslCertificateId = getConfig(SSL_CERTIFICATE_ID);
+        Listener result = new Listener();
+        result.setProtocol(getRequiredConfig(LOAD_BALANCER_PROTOCOL));
+        result.setLoadBalancerPort(getRequiredConfig(LOAD_BALANCER_PORT));
+        result.setInstancePort(getRequiredConfig(INSTANCE_PORT));
+        result.setInstanceProtocol(getRequiredConfig(INSTANCE_PROTOCOL));
+        if (Strings.isNonBlank(sslCertificateId)) result.setSSLCertificateId(sslCertificateId);
+        return result;
+    }
+
+    static boolean isSameListenerIgnoringCertificate(Listener existing, Listener wanted) {
+        // the ELB reports protocols in upper-case, and the instance protocol defaults to the front-end protocol
+        String existingInstanceProtocol = (existing.getInstanceProtocol() != null) ? existing.getInstanceProtocol() : existing.getProtocol();
+        return Objects.equal(existing.getLoadBalancerPort(), wanted.getLoadBalancerPort())
+                && Objects.equal(existing.getInstancePort(), wanted.getInstancePort())
+                && wanted.getProtocol().equalsIgnoreCase(existing.getProtocol())
+                && wanted.getInstanceProtocol().equalsIgnoreCase(existingInstanceProtocol);
+    }
+
+    private boolean isSecureListener() {
+        String protocol = getRequiredConfig(LOAD_BALANCER_PROTOCOL);
+        return "HTTPS".equalsIgnoreCase(protocol) || "SSL".equalsIgnoreCase(protocol);
+    }
+
+    @Override
+    public void setSslCertificate(String sslCertificateId) {
+        checkArgument(Strings.isNonBlank(sslCertificateId), "sslCertificateId must not be blank");
+        checkState(isSecureListener(), "ELB %s protocol %s does not use a certificate", getAttribute(LOAD_BALANCER_NAME), getConfig(LOAD_BALANCER_PROTOCOL));
+        String elbName = checkNotNull(getAttribute(LOAD_BALANCER_NAME), "elbName");
+
+        AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            for (String shardName : getShardNames(elbName)) {
+                setSslCertificate(client, shardName, sslCertificateId);
+            }
+        } finally {
+            if (client != null) client.shutdown();
+        }
+        // So that the certificate is kept if the ELB is later re-initialised (e.g. when rebinding to it)
+        config().set(SSL_CERTIFICATE_ID, sslCertificateId);
+    }
+
+    protected void setSslCertificate(AmazonElasticLoadBalancing client, String elbName, String sslCertificateId) {
+        client.setLoadBalancerListenerSSLCertificate(new SetLoadBalancerListenerSSLCertificateRequest()
+                .withLoadBalancerName(elbName)
+                .withLoadBalancerPort(getRequiredConfig(LOAD_BALANCER_PORT))
+                .withSSLCertificateId(sslCertificateId));
+    }
+
+    /**
+     * The attributes of the configured SSL negotiation policy, or null if the ELB's default policy is to be used.
+     */
+    @Nullable
+    protected Map<String, String> getSslNegotiationPolicyAttributes() {
+        Map<String, String> attributes = getConfig(SSL_NEGOTIATION_POLICY_ATTRIBUTES);
+        String predefinedPolicy = getConfig(SSL_NEGOTIATION_POLICY);
+        if (attributes != null && !attributes.isEmpty()) {
+            if (Strings.isNonBlank(predefinedPolicy)) {
+                LOG.warn("ELB {} configured with both {} and {}; using the custom attributes", 
+                        new Object[] {getAttribute(LOAD_BALANCER_NAME), SSL_NEGOTIATION_POLICY.getName(), SSL_NEGOTIATION_POLICY_ATTRIBUTES.getName()});
+            }
+            return ImmutableSortedMap.copyOf(attributes);
+        } else if (Strings.isNonBlank(predefinedPolicy)) {
+            return ImmutableSortedMap.of(SSL_REFERENCE_SECURITY_POLICY, predefinedPolicy);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Creates (if not already on the ELB) and applies the configured SSL negotiation policy to the listener,
+     * then deletes any policies previously created by this controller that are no longer used.
+     * 
+     * ELB policies cannot be modified, so the policy's name is derived from its attributes: a config
+     * change results in a new policy, and re-applying the same config makes no calls. Other policies of
+     * the listener (e.g. stickiness policies added outside of Brooklyn) are kept.
+     */
+    protected void configureSslNegotiationPolicy(AmazonElasticLoadBalancing client, String elbName, 
+            List<String> existingPolicyNames, List<String> listenerPolicyNames) {
+        Map<String, String> attributes = isSecureListener() ? getSslNegotiationPolicyAttributes() : null;
+        String policyName = (attributes == null) ? null : SSL_POLICY_NAME_PREFIX + Hashing.murmur3_32().hashString(attributes.toString(), Charsets.UTF_8);
+
+        if (policyName != null && !existingPolicyNames.contains(policyName)) {
+            List<PolicyAttribute> policyAttributes = Lists.newArrayList();
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                policyAttributes.add(new PolicyAttribute(entry.getKey(), entry.getValue()));
+            }
+            LOG.debug("Creating SSL negotiation policy {} on ELB {}: {}", new Object[] {policyName, elbName, attributes});
+            client.createLoadBalancerPolicy(new CreateLoadBalancerPolicyRequest()
+                    .withLoadBalancerName(elbName)
+                    .withPolicyName(policyName)
+                    .withPolicyTypeName("SSLNegotiationPolicyType")
+                    .withPolicyAttributes(policyAttributes));
+        }
+
+        // Replace only our own SSL policies, so an unused one is detached (and can then be deleted)
+        List<String> wantedListenerPolicyNames = Lists.newArrayList();
+        for (String listenerPolicyName : listenerPolicyNames) {
+            if (!listenerPolicyName.startsWith(SSL_POLICY_NAME_PREFIX)) wantedListenerPolicyNames.add(listenerPolicyName);
+        }
+        if (policyName != null) wantedListenerPolicyNames.add(policyName);
+        if (!ImmutableSet.copyOf(listenerPolicyNames).equals(ImmutableSet.copyOf(wantedListenerPolicyNames))) {
+            client.setLoadBalancerPoliciesOfListener(new SetLoadBalancerPoliciesOfListenerRequest()
+                    .withLoadBalancerName(elbName)
+                    .withLoadBalancerPort(getRequiredConfig(LOAD_BALANCER_PORT))
+                    .withPolicyNames(wantedListenerPolicyNames));
+        }
+        sensors().set(SSL_NEGOTIATION_POLICY_ACTIVE, policyName);
+
+        for (String existingPolicyName : existingPolicyNames) {
+            if (existingPolicyName.startsWith(SSL_POLICY_NAME_PREFIX) && !existingPolicyName.equals(policyName)) {
+                try {
+                    client.deleteLoadBalancerPolicy(new DeleteLoadBalancerPolicyRequest(elbName, existingPolicyName));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    LOG.warn("Unable to delete old SSL negotiation policy "+existingPolicyName+" of ELB "+elbName+"; continuing", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the configured idle timeout and cross-zone load balancing, if either is set.
+     */
+    protected void configureLoadBalancerAttributes(AmazonElasticLoadBalancing client, String elbName) {
+        Integer idleTimeout = getConfig(CONNECTION_IDLE_TIMEOUT);
+        Boolean crossZone = getConfig(CROSS_ZONE_LOAD_BALANCING);
+        if (idleTimeout == null && crossZone == null) return;
+
+        LoadBalancerAttributes attributes = new LoadBalancerAttributes();
+        if (idleTimeout != null) attributes.setConnectionSettings(new ConnectionSettings().withIdleTimeout(idleTimeout));
+        if (crossZone != null) attributes.setCrossZoneLoadBalancing(new CrossZoneLoadBalancing().withEnabled(crossZone));
+        client.modifyLoadBalancerAttributes(new ModifyLoadBalancerAttributesRequest()
+                .withLoadBalancerName(elbName)
+                .withLoadBalancerAttributes(attributes));
+    }
+
+    protected HealthCheckSettings getConfiguredHealthCheckSettings() {
+        return new HealthCheckSettings(
+                getRequiredConfig(HEALTH_CHECK_INTERVAL),
+                getRequiredConfig(HEALTH_CHECK_TIMEOUT),
+                getRequiredConfig(HEALTH_CHECK_HEALTHY_THRESHOLD),
+                getRequiredConfig(HEALTH_CHECK_UNHEALTHY_THRESHOLD));
+    }
+
+    /**
+     * The settings last applied to the ELB, or the configured settings if none have been applied.
+     */
+    protected HealthCheckSettings getActiveHealthCheckSettings() {
+        Integer interval = getAttribute(HEALTH_CHECK_ACTIVE_INTERVAL);
+        Integer timeout = getAttribute(HEALTH_CHECK_ACTIVE_TIMEOUT);
+        Integer healthyThreshold = getAttribute(HEALTH_CHECK_ACTIVE_HEALTHY_THRESHOLD);
+        Integer unhealthyThreshold = getAttribute(HEALTH_CHECK_ACTIVE_UNHEALTHY_THRESHOLD);
+        if (interval == null || timeout == null || healthyThreshold == null || unhealthyThreshold == null) {
+            return getConfiguredHealthCheckSettings();
+        }
+        return new HealthCheckSettings(interval, timeout, healthyThreshold, unhealthyThreshold);
+    }
+
+    protected void configureHealthCheck(AmazonElasticLoadBalancing client, String elbName, HealthCheckSettings settings) {
+        String targetTemplate = getConfig(HEALTH_CHECK_TARGET);
+        Map<String, Object> substitutions = ImmutableMap.<String, Object>builder()
+                .put("instancePort", getRequiredConfig(INSTANCE_PORT))
+                .put("instanceProtocol", getRequiredConfig(INSTANCE_PROTOCOL))
+                .build();
+        String target = TemplateProcessor.processTemplateContents(targetTemplate, substitutions);
+
+        HealthCheck healthCheck = new HealthCheck()
+                .withTarget(target)
+                .withInterval(settings.getInterval())
+                .withTimeout(settings.getTimeout())
+                .withHealthyThreshold(settings.getHealthyThreshold())
+                .withUnhealthyThreshold(settings.getUnhealthyThreshold());
+
+        ConfigureHealthCheckRequest healthCheckReq = new ConfigureHealthCheckRequest()
+                .withLoadBalancerName(elbName)
+                .withHealthCheck(healthCheck);
+        client.configureHealthCheck(healthCheckReq);
+
+        sensors().set(HEALTH_CHECK_ACTIVE_INTERVAL, settings.getInterval());
+        sensors().set(HEALTH_CHECK_ACTIVE_TIMEOUT, settings.getTimeout());
+        sensors().set(HEALTH_CHECK_ACTIVE_HEALTHY_THRESHOLD, settings.getHealthyThreshold());
+        sensors().set(HEALTH_CHECK_ACTIVE_UNHEALTHY_THRESHOLD, settings.getUnhealthyThreshold());
+    }
+
+    protected void startAdaptiveHealthCheck() {
+        if (!getRequiredConfig(HEALTH_CHECK_ADAPTIVE_ENABLED) || !Boolean.TRUE.equals(getConfig(HEALTH_CHECK_ENABLED))) return;
+        final Duration period = getRequiredConfig(HEALTH_CHECK_ADAPTIVE_PERIOD);
+        synchronized (backgroundJobsMutex) {
+            if (adaptiveHealthCheckJob == null) {
+                adaptiveHealthCheckJob = new PeriodicJob(this, "Adaptive ELB health check", new Callable<Duration>() {
+                    @Override public Duration call() {
+                        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+                        try {
+                            adaptHealthCheck();
+                        } finally {
+                            ApiRateLimiter.setPriority(previousPriority);
+                        }
+                        return period;
+                    }});
+            }
+            adaptiveHealthCheckJob.start(period);
+        }
+    }
+
+    protected void stopAdaptiveHealthCheck() {
+        synchronized (backgroundJobsMutex) {
+            if (adaptiveHealthCheckJob != null) adaptiveHealthCheckJob.stop();
+        }
+    }
+
+    /**
+     * Retunes the health check from recent backend statistics, re-applying it to the ELB (or every
+     * shard) only if the new settings differ meaningfully from those currently applied.
+     */
+    protected void adaptHealthCheck() {
+        if (!Boolean.TRUE.equals(getAttribute(SERVICE_UP))) return;
+        Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+        if (targets == null || targets.isEmpty()) return;
+
+        HealthCheckTuner tuner = new HealthCheckTuner(
+                new HealthCheckSettings(
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MIN_INTERVAL),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MIN_TIMEOUT),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MIN_HEALTHY_THRESHOLD),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MIN_UNHEALTHY_THRESHOLD)),
+                new HealthCheckSettings(
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MAX_INTERVAL),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MAX_TIMEOUT),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MAX_HEALTHY_THRESHOLD),
+                        getRequiredConfig(HEALTH_CHECK_ADAPTIVE_MAX_UNHEALTHY_THRESHOLD)));
+
+        Map<Entity, BackendStats> stats = getBackendMetricsSource().getStats(HEALTH_CHECK_METRICS_CONSUMER, targets.keySet());
+        int falseFailures = countFalseFailures(targets);
+        HealthCheckSettings current = getActiveHealthCheckSettings();
+        HealthCheckSettings proposed = tuner.tune(current, stats.values(), falseFailures);
+
+        if (proposed.isSignificantlyDifferentFrom(current)) {
+            LOG.info("Retuning health check of ELB {}: {} -> {} (backend stats {}; {} false failures)",
+                    new Object[] {getAttribute(LOAD_BALANCER_NAME), current, proposed, stats, falseFailures});
+            AmazonElasticLoadBalancing client = newClient(getLocation());
+            try {
+                for (String shardName : getShardNames(getAttribute(LOAD_BALANCER_NAME))) {
+                    configureHealthCheck(client, shardName, proposed);
+                }
+            } finally {
+                if (client != null) client.shutdown();
+            }
+        } else {
+            LOG.debug("Not retuning health check of ELB {}: {} -> {} is not a significant change",
+                    new Object[] {getAttribute(LOAD_BALANCER_NAME), current, proposed});
+        }
+    }
+
+    /**
+     * Counts instances the ELB reports as out-of-service although Brooklyn reports their member healthy,
+     * which indicates the health check is too aggressive.
+     * 
+     * Instances registered too recently to have passed the health check's healthy threshold are not counted,
+     * as the ELB reports every new instance as out-of-service until then.
+     */
+    protected int countFalseFailures(Map<Entity, String> targets) {
+        HealthCheckSettings settings = getActiveHealthCheckSettings();
+        long warmupMillis = 1000L * settings.getInterval() * settings.getHealthyThreshold();
+        long now = System.currentTimeMillis();
+        Set<String> healthyInstanceIds = Sets.newHashSet();
+        for (Map.Entry<Entity, String> entry : targets.entrySet()) {
+            String instanceId = entry.getValue();
+            if (instanceId == null || !isMemberRecovered(entry.getKey())) continue;
+            Long registeredAt = registrationTimes.get(instanceId);
+            if (registeredAt != null && now - registeredAt < warmupMillis) continue;
+            healthyInstanceIds.add(instanceId);
+        }
+        int result = 0;
+        for (Map.Entry<String, String> entry : describeInstanceHealth().entrySet()) {
+            if ("OutOfService".equals(entry.getValue()) && healthyInstanceIds.contains(entry.getKey())) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The state of each instance registered with the ELB (across all shards), keyed by instance id. Also
+     * records {@link #METRIC_HEALTHY_HOSTS}, so every check of the instances' health contributes to it.
+     */
+    protected Map<String, String> describeInstanceHealth() {
+        Map<String, String> result = Maps.newLinkedHashMap();
+        AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            for (String shardName : getShardNames(getAttribute(LOAD_BALANCER_NAME))) {
+                DescribeInstanceHealthResult health = client.describeInstanceHealth(new DescribeInstanceHealthRequest(shardName));
+                for (InstanceState state : health.getInstanceStates()) {
+                    result.put(state.getInstanceId(), state.getState());
+                }
+            }
+        } finally {
+            if (client != null) client.shutdown();
+        }
+        recordMetric(METRIC_HEALTHY_HOSTS, Collections.frequency(result.values(), "InService"));
+        return result;
+    }
+
+    protected void startRecordingHealthyHosts() {
+        final Duration period = getRequiredConfig(HEALTHY_HOSTS_POLL_PERIOD);
+        if (period.toMilliseconds() <= 0) return;
+        synchronized (backgroundJobsMutex) {
+            if (healthyHostsJob == null) {
+                healthyHostsJob = new PeriodicJob(this, "Record ELB healthy hosts", new Callable<Duration>() {
+                    @Override public Duration call() {
+                        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+                        try {
+                            recordHealthyHosts();
+                        } finally {
+                            ApiRateLimiter.setPriority(previousPriority);
+                        }
+                        return period;
+                    }});
+            }
+            healthyHostsJob.start(period);
+        }
+    }
+
+    protected void stopRecordingHealthyHosts() {
+        synchronized (backgroundJobsMutex) {
+            if (healthyHostsJob != null) healthyHostsJob.stop();
+        }
+    }
+
+    /**
+     * Records the number of instances the ELB (across all shards) reports as InService.
+     */
+    protected void recordHealthyHosts() {
+        describeInstanceHealth();
+    }
+
+    protected void startResolvingAddresses() {
+        if (!getRequiredConfig(RESOLVED_ADDRESSES_ENABLED)) return;
+        synchronized (backgroundJobsMutex) {
+            if (resolvedAddressesJob == null) {
+                resolvedAddressesJob = new PeriodicJob(this, "Resolve ELB hostname", new Callable<Duration>() {
+                    @Override public Duration call() {
+                        return resolveAddresses();
+                    }});
+            }
+            resolvedAddressesJob.start(Duration.ONE_SECOND);
+        }
+    }
+
+    protected void stopResolvingAddresses() {
+        synchronized (backgroundJobsMutex) {
+            if (resolvedAddressesJob != null) resolvedAddressesJob.stop();
+        }
+    }
+
+    /**
+     * Resolves the ELB's hostname (or every shard's), publishing {@link #RESOLVED_ADDRESSES} if the set
+     * of addresses has changed.
+     * 
+     * @return when to resolve again: the shortest TTL reported by the resolver (or the configured default),
+     *         bounded by the configured min and max refresh
+     */
+    protected Duration resolveAddresses() {
+        Duration minRefresh = getRequiredConfig(RESOLVED_ADDRESSES_MIN_REFRESH);
+        Duration maxRefresh = getRequiredConfig(RESOLVED_ADDRESSES_MAX_REFRESH);
+        Duration ttl = getRequiredConfig(RESOLVED_ADDRESSES_DEFAULT_TTL);
+
+        Set<String> hostnames = getHostnames();
+        if (hostnames.isEmpty()) return minRefresh;
+
+        HostnameResolver resolver = getHostnameResolver();
+
+        Set<String> addresses = Sets.newTreeSet();
+        Duration shortestTtl = null;
+        for (String hostname : hostnames) {
+            HostnameResolver.Resolution resolution;
+            try {
+                resolution = resolver.resolve(hostname);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                // e.g. a new ELB's DNS name takes a few minutes to propagate; keep the last known addresses
+                LOG.debug("Unable to resolve hostname "+hostname+" of ELB "+getAttribute(LOAD_BALANCER_NAME)+" (retrying in "+minRefresh+"): "+e);
+                return minRefresh;
+            }
+            addresses.addAll(resolution.getAddresses());
+            if (resolution.getTtl() != null && (shortestTtl == null || resolution.getTtl().isShorterThan(shortestTtl))) {
+                shortestTtl = resolution.getTtl();
+            }
+        }
+
+        Set<String> result = ImmutableSet.copyOf(addresses);
+        if (!result.equals(getAttribute(RESOLVED_ADDRESSES))) {
+            LOG.debug("Resolved addresses of ELB {} changed: {} -> {}", new Object[] {getAttribute(LOAD_BALANCER_NAME), getAttribute(RESOLVED_ADDRESSES), result});
+            sensors().set(RESOLVED_ADDRESSES, result);
+        }
+
+        if (shortestTtl != null) ttl = shortestTtl;
+        if (ttl.isShorterThan(minRefresh)) return minRefresh;
+        if (ttl.isLongerThan(maxRefresh)) return maxRefresh;
+        return ttl;
+    }
+
+    protected HostnameResolver getHostnameResolver() {
+        HostnameResolver result = getConfig(HOSTNAME_RESOLVER);
+        return (result != null) ? result : new InetAddressHostnameResolver();
+    }
+
+    /**
+     * The DNS names of the ELB, or of every shard if sharded.
+     */
+    protected Set<String> getHostnames() {
+        Set<String> result = Sets.newLinkedHashSet();
+        Map<String, String> shardHostnames = getAttribute(SHARD_HOSTNAMES);
+        if (shardHostnames != null) {
+            result.addAll(shardHostnames.values());
+        }
+        if (getAttribute(HOSTNAME) != null) {
+            result.add(getAttribute(HOSTNAME));
+        }
+        return result;
+    }
+
+    protected void startReadingAccessLogs() {
+        if (getAccessLogMetricsSource() == null) return;
+        final Duration period = getRequiredConfig(ACCESS_LOG_POLL_PERIOD);
+        synchronized (backgroundJobsMutex) {
+            if (accessLogJob == null) {
+                accessLogJob = new PeriodicJob(this, "Read ELB access logs", new Callable<Duration>() {
+                    @Override public Duration call() throws IOException {
+                        pollAccessLogs();
+                        return period;
+                    }});
+            }
+            accessLogJob.start(period);
+        }
+    }
+
+    protected void stopReadingAccessLogs() {
+        synchronized (backgroundJobsMutex) {
+            if (accessLogJob != null) accessLogJob.stop();
+        }
+    }
+
+    /**
+     * Reads new access log entries, publishing {@link #ACCESS_LOG_BACKEND_STATS} if there were any.
+     */
+    protected void pollAccessLogs() throws IOException {
+        Map<String, BackendStats> statsByAddress = getAccessLogMetricsSource().poll();
+        if (statsByAddress.isEmpty()) return;
+        recordAccessLogMetrics(statsByAddress.values());
+
+        Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+        Map<String, BackendStats> result = Maps.newLinkedHashMap();
+        if (targets != null) {
+            for (Entity member : targets.keySet()) {
+                String address = AccessLogMetricsSource.getBackendAddress(member);
+                BackendStats stats = (address == null) ? null : statsByAddress.get(address);
+                if (stats != null) result.put(member.getId(), stats);
+            }
+        }
+        if (result.size() < statsByAddress.size()) {
+            LOG.debug("Access logs of ELB {} include backends that are not (or no longer) server pool members: {}", 
+                    getAttribute(LOAD_BALANCER_NAME), statsByAddress.keySet());
+        }
+        sensors().set(ACCESS_LOG_BACKEND_STATS, ImmutableMap.copyOf(result));
+    }
+
+    /**
+     * Records the totals over all backends of an access-log poll in the controller's metric history.
+     */
+    protected void recordAccessLogMetrics(Collection<BackendStats> stats) {
+        long requests = 0;
+        long errors = 0;
+        long timedRequests = 0;
+        double totalLatency = 0;
+        double maxP99Latency = Double.NaN;
+        for (BackendStats backend : stats) {
+            requests += backend.getRequestCount();
+            errors += backend.getErrorCount();
+            if (!Double.isNaN(backend.getMeanLatencyMillis())) {
+                timedRequests += backend.getRequestCount();
+                totalLatency += backend.getMeanLatencyMillis() * backend.getRequestCount();
+            }
+            double p99Latency = backend.getP99LatencyMillis();
+            if (!Double.isNaN(p99Latency) && (Double.isNaN(maxP99Latency) || p99Latency > maxP99Latency)) {
+                maxP99Latency = p99Latency;
+            }
+        }
+        recordMetric(METRIC_REQUESTS, requests);
+        recordMetric(METRIC_ERRORS, errors);
+        if (timedRequests > 0) recordMetric(METRIC_LATENCY_MEAN, totalLatency / timedRequests);
+        recordMetric(METRIC_LATENCY_P99_MAX, maxP99Latency);
+    }
+
+    /**
+     * Adds a value to the named metric's history (ignoring NaN).
+     */
+    protected void recordMetric(String name, double value) {
+        if (Double.isNaN(value)) return;
+        metrics.record(name, value);
+        Set<String> names = metrics.getNames();
+        if (!names.equals(getAttribute(METRIC_NAMES))) {
+            sensors().set(METRIC_NAMES, names);
+        }
+    }
+
+    @Override
+    public Double getMetric(String metric, String aggregation, String window) {
+        checkNotNull(metric, "metric");
+        checkNotNull(aggregation, "aggregation");
+        checkNotNull(window, "window");
+        return metrics.aggregate(metric, TimeSeries.Aggregation.valueOf(aggregation.trim().toUpperCase()), Duration.of(window));
+    }
+
+    /**
+     * The source reading the configured access logs, or null if none are configured.
+     */
+    @Nullable
+    protected AccessLogMetricsSource getAccessLogMetricsSource() {
+        synchronized (backgroundJobsMutex) {
+            if (accessLogMetricsSource == null) {
+                AccessLogStore store = getConfig(ACCESS_LOG_STORE);
+                String directory = getConfig(ACCESS_LOG_DIRECTORY);
+                if (store == null && Strings.isNonBlank(directory)) {
+                    store = new LocalDirectoryAccessLogStore(new File(directory));
+                }
+                if (store != null) {
+                    accessLogMetricsSource = new AccessLogMetricsSource(store);
+                }
+            }
+            return accessLogMetricsSource;
+        }
+    }
+
+    protected void startOutlierEjection() {
+        if (!getRequiredConfig(OUTLIER_EJECTION_ENABLED)) return;
+        final Duration period = getRequiredConfig(OUTLIER_EJECTION_PERIOD);
+        synchronized (backgroundJobsMutex) {
+            if (outlierEjectionJob == null) {
+                outlierEjectionJob = new PeriodicJob(this, "ELB outlier ejection", new Callable<Duration>() {
+                    @Override public Duration call() {
+                        ejectOutliers();
+                        return period;
+                    }});
+            }
+            outlierEjectionJob.start(period);
+        }
+    }
+
+    protected void stopOutlierEjection() {
+        synchronized (backgroundJobsMutex) {
+            if (outlierEjectionJob != null) outlierEjectionJob.stop();
+        }
+    }
+
+    /**
+     * Re-admits outliers whose cool-down has expired, then compares the registered members' recent
+     * statistics and ejects (i.e. excludes and deregisters) the worst outliers, up to the
+     * configured fraction of the pool.
+     */
+    protected void ejectOutliers() {
+        if (!isActive || !Boolean.TRUE.equals(getAttribute(SERVICE_UP))) return;
+        Map<Entity, String> targets = getAttribute(SERVER_POOL_TARGETS);
+        if (targets == null || targets.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        long cooldown = getRequiredConfig(OUTLIER_EJECTION_COOLDOWN).toMilliseconds();
+
+        outlierEjectionTimes.keySet().retainAll(getExclusions().keySet());
+        List<String> readmitted = Lists.newArrayList();
+        for (Map.Entry<String, String> entry : getExclusions().entrySet()) {
+            if (!EXCLUDED_OUTLIER.equals(entry.getValue())) continue;
+            String instanceId = entry.getKey();
+            Long ejectedAt = outlierEjectionTimes.get(instanceId);
+            if (ejectedAt == null) {
+                // ejection time is not persisted, so after rebind the cool-down starts again
+                outlierEjectionTimes.put(instanceId, now);
+            } else if (now - ejectedAt >= cooldown && readmitInstance(instanceId, EXCLUDED_OUTLIER)) {
+                outlierEjectionTimes.remove(instanceId);
+                readmitted.add(instanceId);
+            }
+        }
+        if (readmitted.size() > 0) {
+            LOG.info("Re-admitting outlier instances {} to ELB {} after cool-down", readmitted, getAttribute(LOAD_BALANCER_NAME));
+            registerInstancesNow(readmitted);
+        }
+
+        // Every excluded member (failed, held back for zone balance, or ejected) counts towards the cap
+        Map<String, String> exclusions = getExclusions();
+        Map<Entity, String> registered = Maps.newLinkedHashMap();
+        int poolSize = 0;
+        int ejectedCount = 0;
+        for (Map.Entry<Entity, String> entry : targets.entrySet()) {
+            if (entry.getValue() == null) continue;
+            poolSize++;
+            if (exclusions.containsKey(entry.getValue())) {
+                ejectedCount++;
+            } else {
+                registered.put(entry.getKey(), entry.getValue());
+            }
+        }
+        int maxEjected = (int) Math.floor(getRequiredConfig(OUTLIER_MAX_EJECTION_FRACTION) * poolSize);
+
+        OutlierDetector detector = new OutlierDetector(
+                getRequiredConfig(OUTLIER_LATENCY_FACTOR),
+                getRequiredConfig(OUTLIER_MIN_LATENCY_DELTA_MILLIS),
+                getRequiredConfig(OUTLIER_ERROR_RATE_MARGIN),
+                getRequiredConfig(OUTLIER_MIN_REQUESTS),
+                getRequiredConfig(OUTLIER_MIN_POOL_SIZE));
+        Map<Entity, String> outliers = detector.findOutliers(getBackendMetricsSource().getStats(OUTLIER_METRICS_CONSUMER, registered.keySet()));
+
+        Map<String, String> ejectedReasons = Maps.newLinkedHashMap();
+        List<String> ejected = Lists.newArrayList();
+        for (Map.Entry<Entity, String> outlier : outliers.entrySet()) {
+            Entity member = outlier.getKey();
+            String instanceId = registered.get(member);
+            if (ejectedCount >= maxEjected) {
+                LOG.info("Not ejecting outlier {} (instance {}) from ELB {}: {} of {} members already excluded; {}",
+                        new Object[] {member, instanceId, getAttribute(LOAD_BALANCER_NAME), ejectedCount, poolSize, outlier.getValue()});
+                continue;
+            }
+            if (excludeInstance(instanceId, EXCLUDED_OUTLIER)) {
+                LOG.info("Ejecting outlier {} (instance {}) from ELB {}: {}", 
+                        new Object[] {member, instanceId, getAttribute(LOAD_BALANCER_NAME), outlier.getValue()});
+                outlierEjectionTimes.put(instanceId, now);
+                ejectedReasons.put(member.getId(), outlier.getValue());
+                ejected.add(instanceId);
+                ejectedCount++;
+            }
+        }
+        if (ejected.size() > 0) {
+            deregisterInstancesNow(ejected);
+        }
+
+        // Keep the reasons of members still ejected, dropping those re-admitted or no longer in the pool
+        Map<String, String> previousReasons = getAttribute(EJECTED_MEMBERS);
+        exclusions = getExclusions();
+        Map<String, String> result = Maps.newLinkedHashMap();
+        for (Map.Entry<Entity, String> entry : targets.entrySet()) {
+            String memberId = entry.getKey().getId();
+            if (entry.getValue() == null || !EXCLUDED_OUTLIER.equals(exclusions.get(entry.getValue()))) continue;
+            if (ejectedReasons.containsKey(memberId)) {
+                result.put(memberId, ejectedReasons.get(memberId));
+            } else {
+                String reason = (previousReasons == null) ? null : previousReasons.get(memberId);
+                result.put(memberId, (reason != null) ? reason : "outlier");
+            }
+        }
+        if (!result.equals(previousReasons)) {
+            sensors().set(EJECTED_MEMBERS, ImmutableMap.copyOf(result));
+        }
+    }
+
+    /**
+     * The configured {@link #BACKEND_METRICS_SOURCE}; otherwise the access logs if configured (as they
+     * give latency percentiles), or else the members' request sensors.
+     */
+    protected BackendMetricsSource getBackendMetricsSource() {
+        BackendMetricsSource result = getConfig(BACKEND_METRICS_SOURCE);
+        if (result != null) return result;
+        result = getAccessLogMetricsSource();
+        if (result != null) return result;
+        synchronized (backgroundJobsMutex) {
+            if (defaultBackendMetricsSource == null) {
+                defaultBackendMetricsSource = new MemberSensorMetricsSource();
+            }
+            return defaultBackendMetricsSource;
+        }
+    }
+
+    protected void startDriftDetection() {
+        if (!getRequiredConfig(DRIFT_DETECTION_ENABLED)) return;
+        final Duration minPeriod = getRequiredConfig(DRIFT_DETECTION_MIN_PERIOD);
+        final Duration maxPeriod = getRequiredConfig(DRIFT_DETECTION_MAX_PERIOD);
+        synchronized (backgroundJobsMutex) {
+            if (driftDetectionJob == null) {
+                driftDetectionJob = new PeriodicJob(this, "Detect ELB drift", new Callable<Duration>() {
+                    private Duration period = minPeriod;
+                    @Override public Duration call() {
+                        ApiRateLimiter.Priority previousPriority = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+                        try {
+                            // back off while the ELB stays in sync
+                            boolean inSync = detectDrift();
+                            period = inSync ? Duration.millis(Math.min(period.toMilliseconds() * 2, maxPeriod.toMilliseconds())) : minPeriod;
+                        } catch (RuntimeException e) {
+                            LOG.warn("Problem checking ELB "+getAttribute(LOAD_BALANCER_NAME)+" for drift; will retry", e);
+                            period = minPeriod;
+                        } finally {
+                            ApiRateLimiter.setPriority(previousPriority);
+                        }
+                        return period;
+                    }});
+            }
+            driftDetectionJob.start(minPeriod);
+        }
+    }
+
+    protected void stopDriftDetection() {
+        synchronized (backgroundJobsMutex) {
+            if (driftDetectionJob != null) driftDetectionJob.stop();
+        }
+    }
+
+    /**
+     * Checks the ELB (every shard, with one describe call) for changes made outside this controller,
+     * publishing {@link #ELB_IS_RUNNING} and {@link #DRIFT}, and undoing the drift if {@link #DRIFT_REPAIR_ENABLED}.
+     * See {@link DriftDetector} for how the check avoids detailed comparisons, and how it avoids repairing
+     * based on a description made stale by a concurrent registration change.
+     * 
+     * @return whether the ELB was found to be in sync
+     */
+    protected boolean detectDrift() {
+        String elbName = getAttribute(LOAD_BALANCER_NAME);
+        if (elbName == null || !Boolean.TRUE.equals(getAttribute(SERVICE_UP))) return false;
+        List<String> shardNames = getShardNames(elbName);
+        long changes = driftDetector.getRegistrationChanges();
+        if (driftDetector.isRegistrationChanging()) return false;
+
+        final AmazonElasticLoadBalancing client = newClient(getLocation());
+        try {
+            List<LoadBalancerDescription> descriptions;
+            try {
+                descriptions = client.describeLoadBalancers(new DescribeLoadBalancersRequest(shardNames)).getLoadBalancerDescriptions();
+            } catch (LoadBalancerNotFoundException e) {
+                driftDetector.forgetOutcome();
+                setElbRunning(false);
+                publishDrift(ImmutableList.of((shardNames.size() == 1) ? "ELB "+elbName+" not found" : "Not all ELB shards "+shardNames+" found"));
+                return false;
+            }
+            setElbRunning(true);
+
+            final DriftDetector.Expected expected = new DriftDetector.Expected(getAppliedInstances(), newListener(),
+                    Boolean.TRUE.equals(getConfig(HEALTH_CHECK_ENABLED)) ? getActiveHealthCheckSettings() : null);
+            DriftDetector.Check check = driftDetector.check(descriptions, expected);
+            if (check.isUnchanged()) return true;
+            if (!driftDetector.isUnchangedSince(changes)) {
+                LOG.debug("Drift check of ELB {} overlapped a registration change; checking again", elbName);
+                return false;
+            }
+            driftDetector.recordOutcome(check);
+            final List<DriftDetector.Difference> drift = check.getDifferences();
+            publishDrift(Lists.transform(drift, Functions.toStringFunction()));
+            if (drift.isEmpty()) return true;
+
+            if (getRequiredConfig(DRIFT_REPAIR_ENABLED)) {
+                LOG.warn("ELB {} has drifted from what {} applied; repairing: {}", new Object[] {elbName, this, drift});
+                boolean repaired = driftDetector.repairIfUnchangedSince(changes, new Runnable() {
+                    @Override public void run() {
+                        repairDrift(client, drift, expected);
+                    }});
+                if (!repaired) {
+                    LOG.debug("Not repairing ELB {}, as a registration change started since it was described; checking again", elbName);
+                }
+            } else {
+                LOG.warn("ELB {} has drifted from what {} applied: {}", new Object[] {elbName, this, drift});
+            }
+            return false;
+        } finally {
+            if (client != null) client.shutdown();
+        }
+    }
+
+    /**
+     * Undoes the differences in instances and health check (but not a missing listener, which is only
+     * recreated by restarting the controller).
+     */
+    protected void repairDrift(AmazonElasticLoadBalancing client, List<DriftDetector.Difference> drift, DriftDetector.Expected expected) {
+        for (DriftDetector.Difference difference : drift) {
+            String elbName = difference.getElbName();
+            switch (difference.getKind()) {
+            case INSTANCES_DEREGISTERED:
+                client.registerInstancesWithLoadBalancer(new RegisterInstancesWithLoadBalancerRequest(elbName, toInstances(difference.getInstanceIds())));
+                recordRegistrations(toInstances(difference.getInstanceIds()), true);
+                incrementDriftRepairs();
+                break;
+            case INSTANCES_REGISTERED:
+                client.deregisterInstancesFromLoadBalancer(new DeregisterInstancesFromLoadBalancerRequest(elbName, toInstances(difference.getInstanceIds())));
+                recordRegistrations(toInstances(difference.getInstanceIds()), false);
+                incrementDriftRepairs();
+                break;
+            case HEALTH_CHECK:
+                configureHealthCheck(client, elbName, expected.getHealthCheck());
+                incrementDriftRepairs();
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    protected void setElbRunning(boolean running) {
+        if (Boolean.valueOf(running).equals(getAttribute(ELB_IS_RUNNING))) return;
+        sensors().set(ELB_IS_RUNNING, running);
+        if (running) {
+            ServiceProblemsLogic.clearProblemsIndicator(this, ELB_IS_RUNNING);
+        } else {
+            LOG.warn("ELB {} of {} not found", getAttribute(LOAD_BALANCER_NAME), this);
+            ServiceProblemsLogic.updateProblemsIndicator(this, ELB_IS_RUNNING, "ELB "+getAttribute(LOAD_BALANCER_NAME)+" not found");
+        }
+    }
+
+    private void publishDrift(List<String> drift) {
+        if (!drift.isEmpty()) {
+            Long count = getAttribute(DRIFT_COUNT);
+            sensors().set(DRIFT_COUNT, (count == null) ? 1L : count + 1);
+        }
+        if (!drift.equals(getAttribute(DRIFT))) {
+            sensors().set(DRIFT, ImmutableList.copyOf(drift));
+        }
+    }
+
+    private void incrementDriftRepairs() {
+        Long count = getAttribute(DRIFT_REPAIR_COUNT);
+        sensors().set(DRIFT_REPAIR_COUNT, (count == null) ? 1L : count + 1);
+    }
+
+    private Map<String, Set<String>> getAppliedInstances() {
+        synchronized (appliedInstances) {
+            return ImmutableMap.copyOf(appliedInstances);
+        }
+    }
+
+    private static List<Instance> toInstances(Collection<String> instanceIds) {
+        List<Instance> result = Lists.newArrayList();
+        for (String instanceId : instanceIds) {
+            result.add(new Instance(instanceId));
+        }
+        return result;
+    }
+
+    @Override
+    public void deleteLoadBalancer() {
+        String elbName = checkNotNull(getAttribute(LOAD_BALANCER_NAME), "elbName");
+        // deliberately deleted, so not drift; and neither background jobs nor reloads should call the deleted ELB
+        disconnectSensors();
+        isActive = false;
+        for (String shardName : getShardNames(elbName)) {
+            deleteLoadBalancer(shardName);
+        }
+        sensors().set(ELB_IS_RUNNING, false);
+        sensors().set(LOAD_BALANCER_VPC_ID, null);
+        vpcIdDescribed = false;
     }
 
     protected String generateUnusedElbName() {
+        return getTracer().call("generateUnusedElbName", new Callable<String>() {
+            @Override public String call() {
+                return generateUnusedElbNameUntraced();
+            }});
+    }
+
+    private String generateUnusedElbNameUntraced() {
+        Span span = getTracer().current();
         int maxAttempts = 100;
         String elbName = null;
         ConfigBag setup = config().getBag();
         for (int i = 0; i < maxAttempts; i++) {
             elbName = new JcloudsMachineNamer().generateNewGroupId(setup);
-            boolean exists = doesLoadBalancerExist(elbName);
-            if (!exists) return elbName;
+            span.setAttribute("attempts", i+1);
+            if (isSharded()) {
+                // leave room for the shard suffix
+                elbName = Strings.maxlen(elbName, MAX_ELB_NAME_LENGTH - 1 - Integer.toString(getRequiredConfig(SHARD_COUNT) - 1).length());
+            }
+            boolean exists = false;
+            for (String shardName : getShardNames(elbName)) {
+                exists |= doesLoadBalancerExist(shardName);
+            }
+            if (!exists) {
+                span.setAttribute("elbName", elbName);
+                return elbName;
+            }
             LOG.debug("Auto-generated ELB name {} in {} conflicts with existing; trying again (attempt {}) to generate name", new Object[] {elbName, this, (i+2)});
         }
         throw new IllegalStateException("Failed to unused auto-genreate ELB name after "+maxAttempts+" attempts (last attempt was "+elbName+")");
@@ -514,7 +2434,7 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
     
     protected boolean doesLoadBalancerExist(String elbName) {
         JcloudsLocation loc = getLocation();
-        AmazonElasticLoadBalancingClient client = newClient(loc);
+        AmazonElasticLoadBalancing client = newClient(loc);
         try {
             DescribeLoadBalancersResult loadBalancers = client.describeLoadBalancers(new DescribeLoadBalancersRequest(ImmutableList.of(elbName)));
             List<LoadBalancerDescription> loadBalancerDescriptions = loadBalancers.getLoadBalancerDescriptions();
@@ -531,7 +2451,7 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
         JcloudsLocation loc = getLocation();
         LOG.debug("Deleting ELB: "+elbName);
 
-        AmazonElasticLoadBalancingClient client = newClient(loc);
+        AmazonElasticLoadBalancing client = newClient(loc);
         try {
             DeleteLoadBalancerRequest deleteLoadBalancerRequest = new DeleteLoadBalancerRequest(elbName);
             client.deleteLoadBalancer(deleteLoadBalancerRequest);
@@ -540,16 +2460,21 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
         }
     }
 
-    private Set<String> getAvailabilityZones(JcloudsLocation loc) {
+    private Set<String> getAvailabilityZones(final JcloudsLocation loc) {
         Collection<String> availabilityZones = getConfig(AVAILABILITY_ZONES);
         if (availabilityZones == null) {
             String locName = loc.getRegion();
             if (isAvailabilityZone(locName)) {
                 return ImmutableSet.of(locName); // location is a single availability zone
             } else {
-                String regionName = getRegionName(loc);
-                AWSEC2Api ec2api = loc.getComputeService().getContext().unwrapApi(AWSEC2Api.class);
-                Set<AvailabilityZoneInfo> zones = ec2api.getAvailabilityZoneAndRegionApi().get().describeAvailabilityZonesInRegion(regionName);
+                final String regionName = getRegionName(loc);
+                final AWSEC2Api ec2api = loc.getComputeService().getContext().unwrapApi(AWSEC2Api.class);
+                Set<AvailabilityZoneInfo> zones = getTracer().call("ec2.describeAvailabilityZones", new Callable<Set<AvailabilityZoneInfo>>() {
+                    @Override public Set<AvailabilityZoneInfo> call() {
+                        getTracer().current().setAttribute("region", regionName);
+                        acquireApiPermit(loc);
+                        return ec2api.getAvailabilityZoneAndRegionApi().get().describeAvailabilityZonesInRegion(regionName);
+                    }});
                 
                 Set<String> result = Sets.newLinkedHashSet();
                 for (AvailabilityZoneInfo zone : zones) {
@@ -574,15 +2499,112 @@ public class ElbControllerImpl extends AbstractNonProvisionedControllerImpl impl
         return Strings.isNonBlank(name) && Character.isLetter(name.charAt(name.length()-1));
     }
     
-    protected AmazonElasticLoadBalancingClient newClient(JcloudsLocation loc) {
+    /**
+     * Creates a client for the ELB API, using the configured {@link #ELB_CLIENT_FACTORY} if there is one.
+     * All ELB calls made by this controller go through clients created here.
+     */
+    protected AmazonElasticLoadBalancing newClient(JcloudsLocation loc) {
         String regionName = getRegionName(loc);
+        Tracer tracer = getTracer();
+        ElbClientFactory clientFactory = getConfig(ELB_CLIENT_FACTORY);
+        if (clientFactory != null) {
+            return tracer.traced(rateLimited(loc, clientFactory.newClient(loc, regionName)), AmazonElasticLoadBalancing.class, "elb.");
+        }
+
         AWSCredentials awsCredentials = new BasicAWSCredentials(loc.getIdentity(), loc.getCredential());
-        AmazonElasticLoadBalancingClient client = new AmazonElasticLoadBalancingClient(awsCredentials);
+        ClientConfiguration clientConfiguration = new ClientConfiguration();
+        if (tracer.isEnabled()) {
+            clientConfiguration.setRetryPolicy(newRetryCountingPolicy(PredefinedRetryPolicies.DEFAULT));
+        }
+        AmazonElasticLoadBalancingClient client = new AmazonElasticLoadBalancingClient(awsCredentials, clientConfiguration);
         
         Region targetRegion = Region.getRegion(Regions.fromName(regionName));
         client.setRegion(targetRegion);
         
-        return client;
+        return tracer.traced(rateLimited(loc, client), AmazonElasticLoadBalancing.class, "elb.");
+    }
+
+    /**
+     * The shared rate limit for the location's account and region, or null if not limited. The rate and
+     * burst are read from the management node's configuration, so every controller sharing the bucket
+     * agrees on them, whichever starts first.
+     */
+    @Nullable
+    protected ApiRateLimiter getApiRateLimiter(JcloudsLocation loc) {
+        Double rateLimit = getManagementContext().getConfig().getConfig(API_RATE_LIMIT);
+        if (rateLimit == null || rateLimit <= 0) return null;
+        Integer burst = getManagementContext().getConfig().getConfig(API_RATE_BURST);
+        String account = (loc.getIdentity() != null) ? loc.getIdentity() : "";
+        return ApiRateLimiter.get(getManagementContext(), account, getRegionName(loc), rateLimit, (burst == null) ? 1 : burst);
+    }
+
+    private AmazonElasticLoadBalancing rateLimited(JcloudsLocation loc, AmazonElasticLoadBalancing client) {
+        final ApiRateLimiter limiter = getApiRateLimiter(loc);
+        if (limiter == null) return client;
+        return limiter.limited(client, AmazonElasticLoadBalancing.class, new ApiRateLimiter.Listener() {
+            @Override public void onAcquired(long waitNanos) {
+                onApiPermitAcquired(limiter, waitNanos);
+            }});
+    }
+
+    /**
+     * Waits for a permit for a call to AWS not made through {@link #newClient(JcloudsLocation)}, e.g. to EC2.
+     */
+    protected void acquireApiPermit(JcloudsLocation loc) {
+        ApiRateLimiter limiter = getApiRateLimiter(loc);
+        if (limiter == null) return;
+        try {
+            onApiPermitAcquired(limiter, limiter.acquire());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Records the wait on the current span, and publishes the rate limit sensors (at most once a second,
+     * as this is called for every call to AWS).
+     */
+    protected void onApiPermitAcquired(ApiRateLimiter limiter, long waitNanos) {
+        long totalWaitNanos = apiRateWaitNanos.addAndGet(waitNanos);
+        if (waitNanos > 0) getTracer().current().setAttribute("rateLimitWaitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+
+        long now = System.currentTimeMillis();
+        long lastPublished = apiRateSensorsPublishedTime.get();
+        if (now - lastPublished >= 1000 && apiRateSensorsPublishedTime.compareAndSet(lastPublished, now)) {
+            sensors().set(API_RATE_UTILISATION, limiter.getUtilisation());
+            sensors().set(API_RATE_WAIT_TIME, Duration.millis(TimeUnit.NANOSECONDS.toMillis(totalWaitNanos)));
+        }
+    }
+
+    /**
+     * Wraps the retry policy to record the number of retries of each AWS call on its span.
+     */
+    protected RetryPolicy newRetryCountingPolicy(final RetryPolicy delegate) {
+        final Tracer tracer = getTracer();
+        return new RetryPolicy(delegate.getRetryCondition(), new RetryPolicy.BackoffStrategy() {
+                    @Override public long delayBeforeNextRetry(AmazonWebServiceRequest request, AmazonClientException exception, int retriesAttempted) {
+                        tracer.current().setAttribute("retries", retriesAttempted + 1);
+                        return delegate.getBackoffStrategy().delayBeforeNextRetry(request, exception, retriesAttempted);
+                    }},
+                delegate.getMaxErrorRetry(),
+                delegate.isMaxErrorRetryInClientConfigHonored());
+    }
+
+    /**
+     * The tracer for this controller's operations, exporting to the configured {@link #TRACING_SPAN_EXPORTER}
+     * (or {@link #TRACING_FILE}); it does not trace if neither is configured.
+     */
+    protected Tracer getTracer() {
+        synchronized (tracerMutex) {
+            if (tracer == null) {
+                SpanExporter exporter = getConfig(TRACING_SPAN_EXPORTER);
+                if (exporter == null && Strings.isNonBlank(getConfig(TRACING_FILE))) {
+                    exporter = new FileSpanExporter(new File(getConfig(TRACING_FILE)));
+                }
+                tracer = new Tracer(exporter);
+            }
+            return tracer;
+        }
     }
     
     protected <T> T getRequiredConfig(ConfigKey<T> key) {
@@ -0,0 +1,425 @@
+package brooklyn.entity.proxy.aws;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancing.model.AddTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersResult;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.RemoveTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.Tag;
+import com.amazonaws.services.elasticloadbalancing.model.TagDescription;
+import com.amazonaws.services.elasticloadbalancing.model.TagKeyOnly;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+/**
+ * A pool of pre-created, unassigned ELBs, so that a controller can start by claiming one (and
+ * re-initialising it to its configuration) rather than waiting for a new ELB and its DNS name.
+ *
+ * The pool's state is kept in AWS itself: a pooled ELB is named {@code brooklyn-pool-<profile>-<id>}
+ * and tagged {@value #POOL_TAG}={@code <profile>} until claimed, when that tag is replaced by
+ * {@value #CLAIMED_BY_TAG}. The profile identifies the settings that cannot be changed once the ELB
+ * exists (or are slow to change): region, scheme, subnets and security groups.
+ *
+ * Claims and refills of a profile are serialised within a management node (there is one pool object
+ * per {@link ManagementContext}). Across management nodes, a claimant first adds a tag unique to its
+ * claim, then re-reads the tags: it has won only if the ELB is still pooled and has no other claim tag,
+ * and otherwise removes its tag and tries the next ELB. Of two concurrent claims at most one wins
+ * (though both may lose). An ELB left with the claim tag of a node that failed mid-claim is never
+ * claimed; once the tag is older than {@link #ABANDONED_CLAIM_MILLIS}, the ELB is deleted by the first
+ * {@link #drain(AmazonElasticLoadBalancing, String, int) drain} after a listing finds it.
+ *
+ * Pooled ELBs cost money while they wait, so the pool is drained down to its target size (by claiming
+ * the newest ELBs and deleting them) when it is refilled and when a controller using it stops, and is
+ * emptied when the last controller using it on this management node stops.
+ *
+ * Listing the pool means describing every ELB in the region, so each management node lists a profile
+ * once and then tracks it from its own claims, refills and drains; it re-lists after losing a claim, as
+ * that shows another node is using the pool, but at most once per minimum listing interval.
+ */
+public class ElbWarmPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ElbWarmPool.class);
+
+    public static final String POOL_TAG = "brooklyn.warmPool";
+    public static final String CLAIMED_BY_TAG = "brooklyn.claimedBy";
+    /** Prefix of the tag added by a claim in progress, followed by an id unique to that claim. */
+    public static final String CLAIM_TAG_PREFIX = "brooklyn.claim.";
+    public static final String NAME_PREFIX = "brooklyn-pool-";
+
+    /** Separates the claimant from the claim's time (utc millis) in the value of a claim tag. */
+    private static final String CLAIM_TIME_SEPARATOR = "@";
+
+    /** Limit on the number of ELBs per DescribeTags call. */
+    private static final int DESCRIBE_TAGS_BATCH_SIZE = 20;
+
+    /** Number of pooled ELBs to try, when claims are lost to other management nodes, before giving up. */
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+
+    /** How old a claim tag must be for its claim to be treated as abandoned. */
+    public static final long ABANDONED_CLAIM_MILLIS = 60*60*1000L;
+
+    /** The default minimum time between listings of a profile (after the first). */
+    public static final long DEFAULT_MIN_LISTING_INTERVAL_MILLIS = 60*1000L;
+
+    /** The claimant of ELBs claimed in order to delete them. */
+    private static final String DRAIN_CLAIMANT = "warmPoolDrain";
+
+    private static final Map<ManagementContext, ElbWarmPool> INSTANCES = new WeakHashMap<ManagementContext, ElbWarmPool>();
+
+    public static ElbWarmPool get(ManagementContext mgmt) {
+        synchronized (INSTANCES) {
+            ElbWarmPool result = INSTANCES.get(mgmt);
+            if (result == null) {
+                result = new ElbWarmPool();
+                INSTANCES.put(mgmt, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The pool's key for ELBs with the given (unchangeable) settings.
+     */
+    public static String profileOf(String regionName, @Nullable String scheme, @Nullable Collection<String> subnets, @Nullable Collection<String> securityGroups) {
+        String description = Joiner.on("|").join(
+                regionName,
+                (scheme == null) ? "" : scheme,
+                (subnets == null) ? "" : Joiner.on(",").join(Sets.newTreeSet(subnets)),
+                (securityGroups == null) ? "" : Joiner.on(",").join(Sets.newTreeSet(securityGroups)));
+        return Hashing.murmur3_32().hashString(description, Charsets.UTF_8).toString();
+    }
+
+    private final Map<String, Object> claimLocks = Maps.newHashMap();
+    private final Set<String> refilling = Sets.newHashSet();
+    private final ConcurrentMap<String, AtomicLong> misses = Maps.newConcurrentMap();
+    /** The unclaimed ELBs of each profile listed so far, oldest first. */
+    private final Map<String, List<String>> available = Maps.newHashMap();
+    /** When each profile was last listed, and which listings are known to be stale. */
+    private final Map<String, Long> listedTimes = Maps.newHashMap();
+    private final Set<String> stale = Sets.newHashSet();
+    /** The ELBs of each profile with abandoned claims, found by the last listing. */
+    private final SetMultimap<String, String> abandoned = LinkedHashMultimap.create();
+    /** The controllers on this management node using each profile. */
+    private final SetMultimap<String, String> users = LinkedHashMultimap.create();
+    private final long minListingIntervalMillis;
+
+    protected ElbWarmPool() {
+        this(DEFAULT_MIN_LISTING_INTERVAL_MILLIS);
+    }
+
+    protected ElbWarmPool(long minListingIntervalMillis) {
+        this.minListingIntervalMillis = minListingIntervalMillis;
+    }
+
+    /** Records that the controller uses the profile, so the pool is not emptied while it runs. */
+    public void addUser(String profile, String userId) {
+        synchronized (users) {
+            users.put(profile, userId);
+        }
+    }
+
+    /**
+     * Records that the controller no longer uses the profile.
+     *
+     * @return whether other controllers on this management node still use it
+     */
+    public boolean removeUser(String profile, String userId) {
+        synchronized (users) {
+            users.remove(profile, userId);
+            return users.containsKey(profile);
+        }
+    }
+
+    /**
+     * Claims an available ELB of the given profile, returning its name, or null if none are available.
+     */
+    @Nullable
+    public String claim(AmazonElasticLoadBalancing client, String profile, String claimant) {
+        synchronized (getClaimLock(profile)) {
+            Set<String> tried = Sets.newHashSet();
+            for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+                List<String> candidates = listAvailable(client, profile);
+                candidates.removeAll(tried);
+                String candidate = Iterables.getFirst(candidates, null);
+                if (candidate == null) break;
+                tried.add(candidate);
+                // Whether or not this claim wins, the ELB is no longer available
+                forget(profile, candidate);
+                if (tryClaim(client, profile, candidate, claimant)) {
+                    LOG.info("Claimed ELB {} from warm pool {} for {}", new Object[] {candidate, profile, claimant});
+                    return candidate;
+                }
+                LOG.debug("Lost claim of ELB {} from warm pool {} for {}; will re-list the pool", new Object[] {candidate, profile, claimant});
+                synchronized (available) {
+                    stale.add(profile);
+                }
+            }
+            getMissCounter(profile).incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Creates ELBs until the given profile has the target number available, or drains any above the target;
+     * does nothing if the profile is already being refilled.
+     *
+     * @param requestFactory creates the request for an ELB with the given name
+     * @return the number available (or -1 if a refill was already in progress)
+     */
+    public int refill(AmazonElasticLoadBalancing client, String profile, int targetSize, Function<String, CreateLoadBalancerRequest> requestFactory) {
+        synchronized (refilling) {
+            if (!refilling.add(profile)) return -1;
+        }
+        try {
+            int count = listAvailable(client, profile).size();
+            if (count > targetSize) {
+                return drain(client, profile, targetSize);
+            }
+            for (; count < targetSize; count++) {
+                String name = NAME_PREFIX + profile + "-" + Identifiers.makeRandomId(8).toLowerCase();
+                LOG.debug("Creating ELB {} for warm pool {}", name, profile);
+                client.createLoadBalancer(requestFactory.apply(name)
+                        .withTags(new Tag().withKey(POOL_TAG).withValue(profile)));
+                synchronized (available) {
+                    List<String> names = available.get(profile);
+                    if (names != null) names.add(name);
+                }
+            }
+            return count;
+        } finally {
+            synchronized (refilling) {
+                refilling.remove(profile);
+            }
+        }
+    }
+
+    /**
+     * Deletes the newest unclaimed ELBs of the given profile until at most the target number are available,
+     * and deletes those whose claims were abandoned. Each is claimed before it is deleted, so an ELB being
+     * claimed by another management node is left to it.
+     *
+     * @return the number available
+     */
+    public int drain(AmazonElasticLoadBalancing client, String profile, int targetSize) {
+        synchronized (getClaimLock(profile)) {
+            List<String> candidates = listAvailable(client, profile);
+            int count = candidates.size();
+            for (String elbName : Lists.reverse(candidates)) {
+                if (count <= targetSize) break;
+                // Whether deleted here or claimed by another node, the ELB is no longer available
+                forget(profile, elbName);
+                count--;
+                if (tryClaim(client, profile, elbName, DRAIN_CLAIMANT)) {
+                    LOG.info("Deleting surplus ELB {} from warm pool {}", elbName, profile);
+                    client.deleteLoadBalancer(new DeleteLoadBalancerRequest(elbName));
+                }
+            }
+            List<String> abandonedNames;
+            synchronized (available) {
+                abandonedNames = Lists.newArrayList(abandoned.removeAll(profile));
+            }
+            for (String elbName : abandonedNames) {
+                LOG.info("Deleting ELB {} from warm pool {}, as its claim was abandoned", elbName, profile);
+                client.deleteLoadBalancer(new DeleteLoadBalancerRequest(elbName));
+            }
+            return count;
+        }
+    }
+
+    /** The number of claims of the profile that found no ELB available, since this management node started. */
+    public long getMisses(String profile) {
+        return getMissCounter(profile).get();
+    }
+
+    /**
+     * The unclaimed ELBs of the given profile (as a new list), oldest first, listing them if not already known,
+     * or if known to be stale and not listed within the minimum listing interval.
+     */
+    protected List<String> listAvailable(AmazonElasticLoadBalancing client, String profile) {
+        synchronized (available) {
+            List<String> result = available.get(profile);
+            boolean relist = stale.contains(profile) && System.currentTimeMillis() - listedTimes.get(profile) >= minListingIntervalMillis;
+            if (result != null && !relist) return Lists.newArrayList(result);
+        }
+        Set<String> abandonedNames = Sets.newLinkedHashSet();
+        List<String> result = describeAvailable(client, profile, abandonedNames);
+        synchronized (available) {
+            available.put(profile, Lists.newArrayList(result));
+            listedTimes.put(profile, System.currentTimeMillis());
+            stale.remove(profile);
+            abandoned.replaceValues(profile, abandonedNames);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a tag unique to this claim, then checks that no other claim has been made: if two management
+     * nodes claim at once, each reads its tags after adding its own, so at least one sees the other's tag.
+     */
+    protected boolean tryClaim(AmazonElasticLoadBalancing client, String profile, String elbName, String claimant) {
+        String claimTag = CLAIM_TAG_PREFIX + Identifiers.makeRandomId(8);
+        client.addTags(new AddTagsRequest()
+                .withLoadBalancerNames(elbName)
+                .withTags(new Tag().withKey(claimTag).withValue(claimant + CLAIM_TIME_SEPARATOR + System.currentTimeMillis())));
+
+        TagDescription tagDescription = Iterables.getOnlyElement(client.describeTags(new DescribeTagsRequest().withLoadBalancerNames(elbName)).getTagDescriptions());
+        Map<String, String> tags = toMap(tagDescription);
+        boolean won = profile.equals(tags.get(POOL_TAG)) && !hasClaim(tags, claimTag);
+
+        if (won) {
+            // Tag as claimed first, so a failure part way never leaves an ELB that is neither pooled nor claimed
+            client.addTags(new AddTagsRequest()
+                    .withLoadBalancerNames(elbName)
+                    .withTags(new Tag().withKey(CLAIMED_BY_TAG).withValue(claimant)));
+            client.removeTags(new RemoveTagsRequest()
+                    .withLoadBalancerNames(elbName)
+                    .withTags(new TagKeyOnly().withKey(POOL_TAG), new TagKeyOnly().withKey(claimTag)));
+        } else {
+            client.removeTags(new RemoveTagsRequest()
+                    .withLoadBalancerNames(elbName)
+                    .withTags(new TagKeyOnly().withKey(claimTag)));
+        }
+        return won;
+    }
+
+    /** Whether the ELB is claimed, or has a claim in progress (other than the given one). */
+    private static boolean hasClaim(Map<String, String> tags, @Nullable String ownClaimTag) {
+        if (tags.containsKey(CLAIMED_BY_TAG)) return true;
+        for (String key : tags.keySet()) {
+            if (key.startsWith(CLAIM_TAG_PREFIX) && !key.equals(ownClaimTag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the ELB has a claim in progress, but every claim tag is older than {@link #ABANDONED_CLAIM_MILLIS}
+     * (so the claims' nodes failed), and it has not been claimed.
+     */
+    private static boolean hasOnlyAbandonedClaims(Map<String, String> tags, long now) {
+        if (tags.containsKey(CLAIMED_BY_TAG)) return false;
+        boolean result = false;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!tag.getKey().startsWith(CLAIM_TAG_PREFIX)) continue;
+            Long claimTime = parseClaimTime(tag.getValue());
+            if (claimTime == null || now - claimTime < ABANDONED_CLAIM_MILLIS) return false;
+            result = true;
+        }
+        return result;
+    }
+
+    @Nullable
+    private static Long parseClaimTime(@Nullable String claimTagValue) {
+        int index = (claimTagValue == null) ? -1 : claimTagValue.lastIndexOf(CLAIM_TIME_SEPARATOR);
+        if (index < 0) return null;
+        try {
+            return Long.parseLong(claimTagValue.substring(index + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> toMap(TagDescription tagDescription) {
+        Map<String, String> result = Maps.newHashMap();
+        for (Tag tag : tagDescription.getTags()) {
+            result.put(tag.getKey(), tag.getValue());
+        }
+        return result;
+    }
+
+    private void forget(String profile, String elbName) {
+        synchronized (available) {
+            List<String> names = available.get(profile);
+            if (names != null) names.remove(elbName);
+        }
+    }
+
+    /**
+     * Lists the unclaimed ELBs of the given profile, oldest first, by describing every ELB in the region.
+     *
+     * @param abandonedNames populated with the ELBs of the profile whose claims were abandoned
+     */
+    protected List<String> describeAvailable(AmazonElasticLoadBalancing client, String profile, Set<String> abandonedNames) {
+        String prefix = NAME_PREFIX + profile + "-";
+        Map<String, LoadBalancerDescription> candidates = Maps.newLinkedHashMap();
+        String marker = null;
+        do {
+            DescribeLoadBalancersResult page = client.describeLoadBalancers(new DescribeLoadBalancersRequest().withMarker(marker));
+            for (LoadBalancerDescription lb : page.getLoadBalancerDescriptions()) {
+                if (lb.getLoadBalancerName().startsWith(prefix)) candidates.put(lb.getLoadBalancerName(), lb);
+            }
+            marker = page.getNextMarker();
+        } while (marker != null);
+
+        Set<String> unclaimed = Sets.newHashSet();
+        long now = System.currentTimeMillis();
+        for (List<String> batch : Iterables.partition(candidates.keySet(), DESCRIBE_TAGS_BATCH_SIZE)) {
+            List<TagDescription> tagDescriptions = client.describeTags(new DescribeTagsRequest().withLoadBalancerNames(batch)).getTagDescriptions();
+            for (TagDescription tagDescription : tagDescriptions) {
+                Map<String, String> tags = toMap(tagDescription);
+                if (profile.equals(tags.get(POOL_TAG)) && !hasClaim(tags, null)) {
+                    unclaimed.add(tagDescription.getLoadBalancerName());
+                } else if (profile.equals(tags.get(POOL_TAG)) && hasOnlyAbandonedClaims(tags, now)) {
+                    abandonedNames.add(tagDescription.getLoadBalancerName());
+                }
+            }
+        }
+
+        // Prefer the oldest, as its DNS name is the most likely to have propagated
+        List<LoadBalancerDescription> sorted = Lists.newArrayList(candidates.values());
+        Collections.sort(sorted, new Comparator<LoadBalancerDescription>() {
+            @Override public int compare(LoadBalancerDescription o1, LoadBalancerDescription o2) {
+                if (o1.getCreatedTime() == null || o2.getCreatedTime() == null) return 0;
+                return o1.getCreatedTime().compareTo(o2.getCreatedTime());
+            }});
+        List<String> result = Lists.newArrayList();
+        for (LoadBalancerDescription lb : sorted) {
+            if (unclaimed.contains(lb.getLoadBalancerName())) result.add(lb.getLoadBalancerName());
+        }
+        return result;
+    }
+
+    private Object getClaimLock(String profile) {
+        synchronized (claimLocks) {
+            Object result = claimLocks.get(profile);
+            if (result == null) {
+                result = new Object();
+                claimLocks.put(profile, result);
+            }
+            return result;
+        }
+    }
+
+    private AtomicLong getMissCounter(String profile) {
+        misses.putIfAbsent(profile, new AtomicLong());
+        return misses.get(profile);
+    }
+}
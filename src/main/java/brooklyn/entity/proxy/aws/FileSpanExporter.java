@@ -0,0 +1,70 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+
+/**
+ * Appends spans to a local file, one JSON object per line, so traces can be collected without any
+ * tracing infrastructure (e.g. to build a flame graph of a slow start from its parent/child spans).
+ *
+ * Each line has the fields traceId, spanId, parentSpanId (if any), name, startTimeUtc (millis),
+ * durationMicros, attributes, and error (if the operation failed).
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File file;
+
+    public FileSpanExporter(File file) {
+        this.file = checkNotNull(file, "file");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void export(Span span) {
+        Map<String, Object> json = Maps.newLinkedHashMap();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        if (span.getParentSpanId() != null) json.put("parentSpanId", span.getParentSpanId());
+        json.put("name", span.getName());
+        json.put("startTimeUtc", span.getStartTimeUtc());
+        json.put("durationMicros", span.getDurationNanos() / 1000);
+        json.put("attributes", span.getAttributes());
+        if (span.getError() != null) json.put("error", span.getError());
+
+        try {
+            byte[] line = (MAPPER.writeValueAsString(json) + "\n").getBytes(Charsets.UTF_8);
+            // Serialised between the controllers of a management node sharing the file; a single
+            // write per line keeps lines whole
+            synchronized (FileSpanExporter.class) {
+                OutputStream out = new FileOutputStream(file, true);
+                try {
+                    out.write(line);
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileSpanExporter["+file+"]";
+    }
+}
@@ -0,0 +1,86 @@
+package brooklyn.entity.proxy.aws;
+
+import java.io.Serializable;
+
+import com.google.common.base.Objects;
+
+/**
+ * The timing parameters of an ELB health check (the target is derived separately, from configuration).
+ */
+public class HealthCheckSettings implements Serializable {
+
+    private static final long serialVersionUID = 4619274837651018743L;
+
+    private final int interval;
+    private final int timeout;
+    private final int healthyThreshold;
+    private final int unhealthyThreshold;
+
+    /**
+     * @param interval           seconds between health checks of an instance
+     * @param timeout            seconds during which no response means a failed check
+     * @param healthyThreshold   consecutive successes before an instance is marked healthy
+     * @param unhealthyThreshold consecutive failures before an instance is marked unhealthy
+     */
+    public HealthCheckSettings(int interval, int timeout, int healthyThreshold, int unhealthyThreshold) {
+        this.interval = interval;
+        this.timeout = timeout;
+        this.healthyThreshold = healthyThreshold;
+        this.unhealthyThreshold = unhealthyThreshold;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getHealthyThreshold() {
+        return healthyThreshold;
+    }
+
+    public int getUnhealthyThreshold() {
+        return unhealthyThreshold;
+    }
+
+    /**
+     * Whether the difference is worth an API call to re-apply: a change in either threshold, or a change
+     * to the interval or timeout of more than 20% (and at least one second).
+     */
+    public boolean isSignificantlyDifferentFrom(HealthCheckSettings other) {
+        return healthyThreshold != other.healthyThreshold
+                || unhealthyThreshold != other.unhealthyThreshold
+                || isSignificantlyDifferent(interval, other.interval)
+                || isSignificantlyDifferent(timeout, other.timeout);
+    }
+
+    private static boolean isSignificantlyDifferent(int val1, int val2) {
+        int diff = Math.abs(val1 - val2);
+        return diff >= 1 && diff > 0.2 * Math.min(val1, val2);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HealthCheckSettings)) return false;
+        HealthCheckSettings o = (HealthCheckSettings) obj;
+        return interval == o.interval && timeout == o.timeout
+                && healthyThreshold == o.healthyThreshold && unhealthyThreshold == o.unhealthyThreshold;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(interval, timeout, healthyThreshold, unhealthyThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("interval", interval)
+                .add("timeout", timeout)
+                .add("healthyThreshold", healthyThreshold)
+                .add("unhealthyThreshold", unhealthyThreshold)
+                .toString();
+    }
+}
@@ -0,0 +1,106 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Recomputes health-check settings from observed backend behaviour, within operator-supplied bounds.
+ *
+ * <ul>
+ *   <li>The timeout is set to a multiple of the backends' tail latency, so that slow-but-working
+ *       backends are not failed, and the interval to twice the timeout (it must always exceed the timeout).
+ *   <li>The thresholds are raised by one each time the ELB has failed instances that Brooklyn reports as
+ *       healthy, or when most backends show large latency spikes (e.g. GC pauses), and otherwise decay by
+ *       one towards their minimum, so that failures are detected quickly when the pool is stable.
+ * </ul>
+ */
+public class HealthCheckTuner {
+
+    /** Multiple of the tail latency to allow before a health probe is considered failed. */
+    public static final double TIMEOUT_HEADROOM = 3.0;
+
+    /** Multiple of the mean latency used as the tail latency, when no percentiles are available. */
+    public static final double MEAN_TO_TAIL_RATIO = 3.0;
+
+    /** p99/p50 ratio above which a backend is considered to have latency spikes. */
+    public static final double SPIKE_RATIO = 5.0;
+
+    private final HealthCheckSettings min;
+    private final HealthCheckSettings max;
+
+    public HealthCheckTuner(HealthCheckSettings min, HealthCheckSettings max) {
+        this.min = checkNotNull(min, "min");
+        this.max = checkNotNull(max, "max");
+        checkArgument(min.getInterval() <= max.getInterval(), "min interval %s greater than max %s", min.getInterval(), max.getInterval());
+        checkArgument(min.getTimeout() <= max.getTimeout(), "min timeout %s greater than max %s", min.getTimeout(), max.getTimeout());
+        checkArgument(min.getTimeout() < max.getInterval(), "min timeout %s must be less than max interval %s", min.getTimeout(), max.getInterval());
+        checkArgument(min.getHealthyThreshold() <= max.getHealthyThreshold(), "min healthy threshold greater than max");
+        checkArgument(min.getUnhealthyThreshold() <= max.getUnhealthyThreshold(), "min unhealthy threshold greater than max");
+    }
+
+    /**
+     * @param current        the settings currently applied to the ELB
+     * @param stats          recent statistics of the backends
+     * @param falseFailures  number of instances the ELB reports as out-of-service while Brooklyn reports them healthy
+     */
+    public HealthCheckSettings tune(HealthCheckSettings current, Collection<BackendStats> stats, int falseFailures) {
+        int timeout = current.getTimeout();
+        int interval = current.getInterval();
+
+        double tailLatencyMillis = poolTailLatencyMillis(stats);
+        if (!Double.isNaN(tailLatencyMillis)) {
+            timeout = clamp((int) Math.ceil(tailLatencyMillis * TIMEOUT_HEADROOM / 1000), min.getTimeout(), max.getTimeout());
+            interval = clamp(2 * timeout, min.getInterval(), max.getInterval());
+        }
+        if (interval <= timeout) {
+            if (timeout < max.getInterval()) {
+                interval = timeout + 1;
+            } else {
+                timeout = interval - 1;
+            }
+        }
+
+        boolean unstable = falseFailures > 0 || isMostlySpiky(stats);
+        int step = unstable ? 1 : -1;
+        int unhealthyThreshold = clamp(current.getUnhealthyThreshold() + step, min.getUnhealthyThreshold(), max.getUnhealthyThreshold());
+        int healthyThreshold = clamp(current.getHealthyThreshold() + (falseFailures > 0 ? 1 : -1), min.getHealthyThreshold(), max.getHealthyThreshold());
+
+        return new HealthCheckSettings(interval, timeout, healthyThreshold, unhealthyThreshold);
+    }
+
+    /**
+     * The 90th percentile of the backends' tail latencies (so a single slow backend does not dictate
+     * the settings for the whole pool), or NaN if there is no data.
+     */
+    protected double poolTailLatencyMillis(Collection<BackendStats> stats) {
+        List<Double> tails = Lists.newArrayList();
+        for (BackendStats stat : stats) {
+            double tail = Double.isNaN(stat.getP99LatencyMillis()) ? stat.getMeanLatencyMillis() * MEAN_TO_TAIL_RATIO : stat.getP99LatencyMillis();
+            if (!Double.isNaN(tail)) tails.add(tail);
+        }
+        if (tails.isEmpty()) return Double.NaN;
+        Collections.sort(tails);
+        return tails.get((int) Math.ceil(0.9 * tails.size()) - 1);
+    }
+
+    protected boolean isMostlySpiky(Collection<BackendStats> stats) {
+        int known = 0;
+        int spiky = 0;
+        for (BackendStats stat : stats) {
+            if (Double.isNaN(stat.getP50LatencyMillis()) || Double.isNaN(stat.getP99LatencyMillis()) || stat.getP50LatencyMillis() <= 0) continue;
+            known++;
+            if (stat.getP99LatencyMillis() / stat.getP50LatencyMillis() > SPIKE_RATIO) spiky++;
+        }
+        return known > 0 && spiky * 2 > known;
+    }
+
+    private static int clamp(int val, int lower, int upper) {
+        return Math.max(lower, Math.min(upper, val));
+    }
+}
@@ -0,0 +1,50 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.UnknownHostException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSortedSet;
+
+/**
+ * Resolves a hostname (e.g. the ELB's DNS name) to its current set of addresses.
+ */
+public interface HostnameResolver {
+
+    Resolution resolve(String hostname) throws UnknownHostException;
+
+    public static class Resolution {
+        private final Set<String> addresses;
+        private final Duration ttl;
+
+        /**
+         * @param addresses the resolved IP addresses
+         * @param ttl       how long the result may be cached for, or null if the resolver does not know
+         */
+        public Resolution(Iterable<String> addresses, @Nullable Duration ttl) {
+            this.addresses = ImmutableSortedSet.copyOf(checkNotNull(addresses, "addresses"));
+            this.ttl = ttl;
+        }
+
+        /** The addresses, in sorted order (so that resolutions can be compared). */
+        public Set<String> getAddresses() {
+            return addresses;
+        }
+
+        @Nullable
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("addresses", addresses).add("ttl", ttl).toString();
+        }
+    }
+}
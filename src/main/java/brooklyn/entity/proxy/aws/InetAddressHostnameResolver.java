@@ -0,0 +1,25 @@
+package brooklyn.entity.proxy.aws;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Resolves hostnames with {@link InetAddress#getAllByName(String)}.
+ *
+ * The JDK does not expose the DNS record's TTL, so the resolution's TTL is unknown (null). Note that
+ * the JVM also caches successful lookups, for {@code networkaddress.cache.ttl} seconds (30 by default).
+ */
+public class InetAddressHostnameResolver implements HostnameResolver {
+
+    @Override
+    public Resolution resolve(String hostname) throws UnknownHostException {
+        List<String> addresses = Lists.newArrayList();
+        for (InetAddress address : InetAddress.getAllByName(hostname)) {
+            addresses.add(address.getHostAddress());
+        }
+        return new Resolution(addresses, null);
+    }
+}
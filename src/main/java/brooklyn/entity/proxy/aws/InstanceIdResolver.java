@@ -0,0 +1,175 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * Maps members to EC2 instance ids by their private IP address or private DNS name, for members whose
+ * location does not know the instance id (e.g. BYON, WinRM or externally provisioned machines).
+ *
+ * Unresolved members are looked up together, with one EC2 DescribeInstances call per filter (and per
+ * {@link #MAX_FILTER_VALUES} values), so resolving a large pool costs a constant number of calls. Results
+ * are cached against each member's {@link Key}, so a member is looked up again if its address or
+ * location changes; members that could not be resolved are retried after the retry period.
+ *
+ * Thread-safe.
+ */
+public class InstanceIdResolver {
+
+    /** EC2 filter matching an instance's private IPv4 address. */
+    public static final String PRIVATE_IP_ADDRESS = "private-ip-address";
+
+    /** EC2 filter matching an instance's private DNS name. */
+    public static final String PRIVATE_DNS_NAME = "private-dns-name";
+
+    /** The most values to pass for one filter in a single call. */
+    public static final int MAX_FILTER_VALUES = 200;
+
+    /**
+     * Looks up instances in EC2.
+     */
+    public interface InstanceLookup {
+        /**
+         * @return the ids of the instances matching any of the given values of the filter, keyed by value
+         */
+        Map<String, String> lookup(String filterName, Collection<String> values);
+    }
+
+    /**
+     * What a member is looked up by: a filter and value, and a fingerprint of the member's locations
+     * (so that a new location invalidates the cached result even if the address is reused).
+     */
+    public static class Key {
+        private final String filterName;
+        private final String value;
+        private final String locationFingerprint;
+
+        public Key(String filterName, String value, String locationFingerprint) {
+            this.filterName = checkNotNull(filterName, "filterName");
+            this.value = checkNotNull(value, "value");
+            this.locationFingerprint = checkNotNull(locationFingerprint, "locationFingerprint");
+        }
+
+        public String getFilterName() {
+            return filterName;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return filterName.equals(other.filterName) && value.equals(other.value) && locationFingerprint.equals(other.locationFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(filterName, value, locationFingerprint);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("filter", filterName).add("value", value).add("locations", locationFingerprint).toString();
+        }
+    }
+
+    private static class Resolution {
+        final Key key;
+        final String instanceId;
+        final long timestamp;
+
+        Resolution(Key key, @Nullable String instanceId, long timestamp) {
+            this.key = key;
+            this.instanceId = instanceId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final InstanceLookup lookup;
+    private final long retryMillis;
+    private final Map<String, Resolution> cache = Maps.newLinkedHashMap();
+
+    /**
+     * @param retryMillis how long to wait before looking up a member again if it could not be resolved
+     */
+    public InstanceIdResolver(InstanceLookup lookup, long retryMillis) {
+        checkArgument(retryMillis >= 0, "retryMillis must not be negative, but was %s", retryMillis);
+        this.lookup = checkNotNull(lookup, "lookup");
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * The cached instance id of the member, or null if it has not been resolved with this key
+     * (or could not be).
+     */
+    @Nullable
+    public synchronized String getCached(String memberId, Key key) {
+        Resolution resolution = cache.get(memberId);
+        return (resolution != null && resolution.key.equals(key)) ? resolution.instanceId : null;
+    }
+
+    /**
+     * Resolves the given members (keyed by member id), looking up together all those not already cached
+     * with the same key. Members not in the given map are forgotten.
+     *
+     * @return the instance id of each member that could be resolved
+     */
+    public synchronized Map<String, String> resolve(Map<String, Key> keys) {
+        long now = System.currentTimeMillis();
+        cache.keySet().retainAll(keys.keySet());
+
+        SetMultimap<String, String> valuesByFilter = LinkedHashMultimap.create();
+        for (Map.Entry<String, Key> entry : keys.entrySet()) {
+            Resolution resolution = cache.get(entry.getKey());
+            boolean stale = resolution == null || !resolution.key.equals(entry.getValue())
+                    || (resolution.instanceId == null && now - resolution.timestamp >= retryMillis);
+            if (stale) {
+                valuesByFilter.put(entry.getValue().getFilterName(), entry.getValue().getValue());
+            }
+        }
+
+        Map<String, String> found = Maps.newHashMap();
+        for (Map.Entry<String, Collection<String>> entry : valuesByFilter.asMap().entrySet()) {
+            for (List<String> batch : Iterables.partition(entry.getValue(), MAX_FILTER_VALUES)) {
+                Map<String, String> instanceIds = lookup.lookup(entry.getKey(), batch);
+                for (Map.Entry<String, String> match : instanceIds.entrySet()) {
+                    found.put(entry.getKey() + "=" + match.getKey(), match.getValue());
+                }
+            }
+        }
+
+        Map<String, String> result = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Key> entry : keys.entrySet()) {
+            Key key = entry.getValue();
+            if (valuesByFilter.containsEntry(key.getFilterName(), key.getValue())) {
+                cache.put(entry.getKey(), new Resolution(key, found.get(key.getFilterName() + "=" + key.getValue()), now));
+            }
+            Resolution resolution = cache.get(entry.getKey());
+            if (resolution != null && resolution.instanceId != null) {
+                result.put(entry.getKey(), resolution.instanceId);
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this).add("cached", cache.size()).add("retryMillis", retryMillis).toString();
+    }
+}
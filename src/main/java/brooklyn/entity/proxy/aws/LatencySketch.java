@@ -0,0 +1,130 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+
+/**
+ * A mergeable histogram of latencies, for estimating percentiles with a bounded relative error.
+ *
+ * Values are counted in logarithmically-sized buckets (each {@code gamma} times wider than the last),
+ * so any percentile is estimated to within the configured relative accuracy (1% by default) whatever
+ * the distribution. Memory is a few KB per sketch regardless of the number of values, and sketches
+ * with the same accuracy can be merged exactly (e.g. summaries from several log files or time windows).
+ *
+ * Not thread-safe.
+ */
+public class LatencySketch implements Serializable {
+
+    private static final long serialVersionUID = 4962367715183513547L;
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** Values at or below this (1 microsecond) share the first bucket. */
+    private static final double MIN_TRACKABLE_MILLIS = 0.001;
+
+    private final double relativeAccuracy;
+    private final double logGamma;
+    private long[] counts = new long[64];
+    private long count;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public LatencySketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public LatencySketch(double relativeAccuracy) {
+        checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "relativeAccuracy must be between 0 and 1, but was %s", relativeAccuracy);
+        this.relativeAccuracy = relativeAccuracy;
+        this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    }
+
+    public void add(double millis) {
+        if (Double.isNaN(millis) || millis < 0) return;
+        int index = indexOf(millis);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index]++;
+        count++;
+        sum += millis;
+        min = (count == 1) ? millis : Math.min(min, millis);
+        max = (count == 1) ? millis : Math.max(max, millis);
+    }
+
+    /**
+     * Adds all the values of the other sketch to this one.
+     */
+    public void merge(LatencySketch other) {
+        checkArgument(other.relativeAccuracy == relativeAccuracy, "cannot merge sketches of different accuracy (%s and %s)", relativeAccuracy, other.relativeAccuracy);
+        if (other.count == 0) return;
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        min = (count == 0) ? other.min : Math.min(min, other.min);
+        max = (count == 0) ? other.max : Math.max(max, other.max);
+        count += other.count;
+        sum += other.sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /** The mean of the values added, or NaN if there are none. */
+    public double getMean() {
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    /**
+     * An estimate of the given quantile (e.g. 0.99), or NaN if no values have been added.
+     */
+    public double getQuantile(double quantile) {
+        checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1, but was %s", quantile);
+        if (count == 0) return Double.NaN;
+        if (quantile == 0) return min;
+        if (quantile == 1) return max;
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // the estimate can be outside [min, max] for the extreme buckets
+                return Math.max(min, Math.min(max, valueOf(i)));
+            }
+        }
+        return max;
+    }
+
+    private int indexOf(double millis) {
+        if (millis <= MIN_TRACKABLE_MILLIS) return 0;
+        return (int) Math.ceil(Math.log(millis / MIN_TRACKABLE_MILLIS) / logGamma);
+    }
+
+    /** The value at the centre of the bucket, which is within the relative accuracy of every value in it. */
+    private double valueOf(int index) {
+        if (index == 0) return MIN_TRACKABLE_MILLIS;
+        double gamma = Math.exp(logGamma);
+        return MIN_TRACKABLE_MILLIS * Math.exp(index * logGamma) * 2 / (gamma + 1);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("count", count)
+                .add("mean", getMean())
+                .add("p50", getQuantile(0.5))
+                .add("p99", getQuantile(0.99))
+                .add("max", max)
+                .toString();
+    }
+}
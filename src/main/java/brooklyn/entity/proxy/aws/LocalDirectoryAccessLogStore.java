@@ -0,0 +1,66 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads access logs from a local directory (and its sub-directories, matching the
+ * {@code AWSLogs/<account>/elasticloadbalancing/<region>/<yyyy>/<mm>/<dd>/} layout ELB writes to S3),
+ * e.g. one kept up-to-date with {@code aws s3 sync}.
+ */
+public class LocalDirectoryAccessLogStore implements AccessLogStore {
+
+    private final File directory;
+
+    public LocalDirectoryAccessLogStore(File directory) {
+        this.directory = checkNotNull(directory, "directory");
+    }
+
+    @Override
+    public Map<String, Long> listFiles() throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("Access log directory "+directory+" does not exist");
+        }
+        Map<String, Long> result = Maps.newTreeMap();
+        listFiles(directory, "", result);
+        return result;
+    }
+
+    private void listFiles(File dir, String prefix, Map<String, Long> result) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", result);
+            } else if (file.getName().endsWith(".log")) {
+                result.put(prefix + file.getName(), file.length());
+            }
+        }
+    }
+
+    @Override
+    public InputStream open(String name, long offset) throws IOException {
+        InputStream result = new FileInputStream(new File(directory, name));
+        try {
+            ByteStreams.skipFully(result, offset);
+            return result;
+        } catch (IOException e) {
+            result.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("directory", directory).toString();
+    }
+}
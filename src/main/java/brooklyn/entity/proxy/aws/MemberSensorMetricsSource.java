@@ -0,0 +1,79 @@
+package brooklyn.entity.proxy.aws;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.sensor.Sensors;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Derives backend statistics from the cumulative request counters that members publish as sensors
+ * (by default, those of Brooklyn's web-app entities: {@code webapp.reqs.total}, {@code webapp.reqs.errors}
+ * and {@code webapp.reqs.processingTime.total}).
+ *
+ * Only the mean latency is available from such counters, so the percentiles are reported as NaN.
+ * The counter values are remembered per consumer, so each consumer gets the deltas since its own previous call.
+ */
+public class MemberSensorMetricsSource implements BackendMetricsSource {
+
+    public static final String DEFAULT_REQUEST_COUNT_SENSOR = "webapp.reqs.total";
+    public static final String DEFAULT_ERROR_COUNT_SENSOR = "webapp.reqs.errors";
+    public static final String DEFAULT_TOTAL_PROCESSING_TIME_SENSOR = "webapp.reqs.processingTime.total";
+
+    private final AttributeSensor<Number> requestCountSensor;
+    private final AttributeSensor<Number> errorCountSensor;
+    private final AttributeSensor<Number> totalProcessingTimeSensor;
+
+    /** Counter values (requests, errors, processing time) at each consumer's previous call, keyed by consumer then member id. */
+    private final ConcurrentMap<String, Map<String, long[]>> previousByConsumer = Maps.newConcurrentMap();
+
+    public MemberSensorMetricsSource() {
+        this(DEFAULT_REQUEST_COUNT_SENSOR, DEFAULT_ERROR_COUNT_SENSOR, DEFAULT_TOTAL_PROCESSING_TIME_SENSOR);
+    }
+
+    public MemberSensorMetricsSource(String requestCountSensor, String errorCountSensor, String totalProcessingTimeSensor) {
+        this.requestCountSensor = Sensors.newSensor(Number.class, requestCountSensor);
+        this.errorCountSensor = Sensors.newSensor(Number.class, errorCountSensor);
+        this.totalProcessingTimeSensor = Sensors.newSensor(Number.class, totalProcessingTimeSensor);
+    }
+
+    @Override
+    public Map<Entity, BackendStats> getStats(String consumer, Collection<? extends Entity> members) {
+        Map<String, long[]> previous = previousByConsumer.get(consumer);
+        if (previous == null) {
+            previous = Maps.newConcurrentMap();
+            Map<String, long[]> existing = previousByConsumer.putIfAbsent(consumer, previous);
+            if (existing != null) previous = existing;
+        }
+        Map<Entity, BackendStats> result = Maps.newLinkedHashMap();
+        Set<String> memberIds = Sets.newHashSet();
+        for (Entity member : members) {
+            memberIds.add(member.getId());
+            Number requests = member.getAttribute(requestCountSensor);
+            Number processingTime = member.getAttribute(totalProcessingTimeSensor);
+            if (requests == null || processingTime == null) continue;
+            Number errors = member.getAttribute(errorCountSensor);
+
+            long[] current = new long[] {requests.longValue(), (errors == null ? 0 : errors.longValue()), processingTime.longValue()};
+            long[] prev = previous.put(member.getId(), current);
+            if (prev == null) continue;
+
+            long requestDelta = current[0] - prev[0];
+            if (requestDelta <= 0) continue; // no new requests, or the counters were reset
+            long errorDelta = Math.max(0, current[1] - prev[1]);
+            long timeDelta = Math.max(0, current[2] - prev[2]);
+            result.put(member, new BackendStats(requestDelta, errorDelta, ((double) timeDelta) / requestDelta));
+        }
+        Iterables.removeIf(previous.keySet(), Predicates.not(Predicates.in(memberIds)));
+        return ImmutableMap.copyOf(result);
+    }
+}
@@ -0,0 +1,133 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Finds backends whose latency or error rate is far worse than the rest of the pool's.
+ *
+ * Each backend is compared against the pool as a whole (rather than against fixed thresholds), so
+ * that a pool-wide slowdown, e.g. from a slow shared dependency, does not make every backend look
+ * like an outlier:
+ * <ul>
+ *   <li>latency: the backend's p99 latency (or mean, if the source has no percentiles) is more than
+ *       {@code latencyFactor} times the pool's median, and at least {@code minLatencyDeltaMillis} more
+ *   <li>errors: the backend's error rate is more than {@code errorRateMargin} above the pool's
+ * </ul>
+ * Only backends with at least {@code minRequests} requests are considered, and nothing is reported
+ * unless at least {@code minPoolSize} such backends can be compared.
+ */
+public class OutlierDetector {
+
+    private final double latencyFactor;
+    private final double minLatencyDeltaMillis;
+    private final double errorRateMargin;
+    private final long minRequests;
+    private final int minPoolSize;
+
+    public OutlierDetector(double latencyFactor, double minLatencyDeltaMillis, double errorRateMargin, long minRequests, int minPoolSize) {
+        checkArgument(latencyFactor > 1, "latencyFactor must be greater than 1, but was %s", latencyFactor);
+        checkArgument(errorRateMargin > 0, "errorRateMargin must be positive, but was %s", errorRateMargin);
+        checkArgument(minPoolSize >= 2, "minPoolSize must be at least 2, but was %s", minPoolSize);
+        this.latencyFactor = latencyFactor;
+        this.minLatencyDeltaMillis = minLatencyDeltaMillis;
+        this.errorRateMargin = errorRateMargin;
+        this.minRequests = minRequests;
+        this.minPoolSize = minPoolSize;
+    }
+
+    /**
+     * Returns the outliers, with the reason each is an outlier, most severe first.
+     */
+    public <K> Map<K, String> findOutliers(Map<K, BackendStats> stats) {
+        Map<K, BackendStats> eligible = Maps.newLinkedHashMap();
+        long totalRequests = 0;
+        long totalErrors = 0;
+        for (Map.Entry<K, BackendStats> entry : stats.entrySet()) {
+            if (entry.getValue().getRequestCount() >= minRequests) {
+                eligible.put(entry.getKey(), entry.getValue());
+                totalRequests += entry.getValue().getRequestCount();
+                totalErrors += entry.getValue().getErrorCount();
+            }
+        }
+        if (eligible.size() < minPoolSize) return ImmutableMap.of();
+
+        double poolErrorRate = ((double) totalErrors) / totalRequests;
+        double medianLatency = median(eligible.values());
+
+        final Map<K, Double> severities = Maps.newHashMap();
+        Map<K, String> reasons = Maps.newHashMap();
+        for (Map.Entry<K, BackendStats> entry : eligible.entrySet()) {
+            BackendStats member = entry.getValue();
+            double latency = latencyOf(member);
+            double latencySeverity = 0;
+            if (!Double.isNaN(latency) && !Double.isNaN(medianLatency) && medianLatency > 0
+                    && latency - medianLatency >= minLatencyDeltaMillis) {
+                latencySeverity = latency / (latencyFactor * medianLatency);
+            }
+            double errorSeverity = member.getErrorRate() / (poolErrorRate + errorRateMargin);
+
+            if (latencySeverity > 1 && latencySeverity >= errorSeverity) {
+                severities.put(entry.getKey(), latencySeverity);
+                reasons.put(entry.getKey(), String.format("%s latency %.0fms is %.1fx the pool median of %.0fms",
+                        (Double.isNaN(member.getP99LatencyMillis()) ? "mean" : "p99"), latency, latency / medianLatency, medianLatency));
+            } else if (errorSeverity > 1) {
+                severities.put(entry.getKey(), errorSeverity);
+                reasons.put(entry.getKey(), String.format("error rate %.1f%% exceeds the pool's %.1f%% by more than %.1f%%",
+                        member.getErrorRate() * 100, poolErrorRate * 100, errorRateMargin * 100));
+            }
+        }
+
+        List<K> outliers = Lists.newArrayList(severities.keySet());
+        Collections.sort(outliers, new Comparator<K>() {
+            @Override public int compare(K o1, K o2) {
+                return Double.compare(severities.get(o2), severities.get(o1));
+            }});
+        Map<K, String> result = Maps.newLinkedHashMap();
+        for (K outlier : outliers) {
+            result.put(outlier, reasons.get(outlier));
+        }
+        return result;
+    }
+
+    private static double latencyOf(BackendStats stats) {
+        return Double.isNaN(stats.getP99LatencyMillis()) ? stats.getMeanLatencyMillis() : stats.getP99LatencyMillis();
+    }
+
+    private static double median(Iterable<BackendStats> stats) {
+        List<Double> latencies = Lists.newArrayList();
+        for (BackendStats member : stats) {
+            double latency = latencyOf(member);
+            if (!Double.isNaN(latency)) latencies.add(latency);
+        }
+        if (latencies.isEmpty()) return Double.NaN;
+        double[] sorted = new double[latencies.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return (sorted.length % 2 == 1) ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("latencyFactor", latencyFactor)
+                .add("minLatencyDeltaMillis", minLatencyDeltaMillis)
+                .add("errorRateMargin", errorRateMargin)
+                .add("minRequests", minRequests)
+                .add("minPoolSize", minPoolSize)
+                .toString();
+    }
+}
@@ -0,0 +1,98 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.mgmt.Task;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.core.task.ScheduledTask;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A background job run in an entity's execution context, which re-schedules itself after each run.
+ *
+ * The body returns the delay before it should next run, so jobs can back off or follow an external
+ * schedule (e.g. a DNS TTL); returning null stops the job. If the body throws, the error is logged
+ * and the job is re-run after the previous delay.
+ *
+ * Like other entity tasks, the job is not persisted: the entity must start it again on rebind.
+ */
+class PeriodicJob {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PeriodicJob.class);
+
+    private final EntityInternal entity;
+    private final String displayName;
+    private final Callable<Duration> body;
+
+    private Task<?> current;
+    private Duration lastDelay;
+    private boolean running;
+
+    PeriodicJob(EntityInternal entity, String displayName, Callable<Duration> body) {
+        this.entity = checkNotNull(entity, "entity");
+        this.displayName = checkNotNull(displayName, "displayName");
+        this.body = checkNotNull(body, "body");
+    }
+
+    public synchronized void start(Duration initialDelay) {
+        if (running) return;
+        running = true;
+        schedule(initialDelay);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private synchronized void schedule(Duration delay) {
+        if (!running) return;
+        lastDelay = delay;
+        ScheduledTask task = new ScheduledTask(MutableMap.of("displayName", displayName, "delay", delay), new Callable<Task<?>>() {
+            @Override public Task<?> call() {
+                return Tasks.<Void>builder()
+                        .displayName(displayName)
+                        .body(new Callable<Void>() {
+                            @Override public Void call() {
+                                runOnce();
+                                return null;
+                            }})
+                        .build();
+            }});
+        current = entity.getExecutionContext().submit(task);
+    }
+
+    private void runOnce() {
+        Duration next;
+        try {
+            next = body.call();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Problem in "+displayName+" for "+entity+"; will retry", e);
+            next = lastDelay;
+        }
+        if (next == null) {
+            LOG.debug("{} for {} finished", displayName, entity);
+            synchronized (this) {
+                running = false;
+                current = null;
+            }
+        } else {
+            schedule(next);
+        }
+    }
+}
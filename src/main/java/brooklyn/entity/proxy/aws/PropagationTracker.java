@@ -0,0 +1,216 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Times each membership change (an instance joining or leaving the server pool) until it reaches the
+ * ELB: until a reload has registered or deregistered the instance, or (if {@code confirmHealth}) until
+ * the ELB then reports the instance InService (for a join), or OutOfService or gone (for a leave).
+ *
+ * A reload can run before the event for the change it applies is delivered, so the instances registered
+ * by the last reload are remembered: a change that reload has already applied is complete straight away.
+ *
+ * A change pending for longer than the SLO is counted as a breach once, whether it is found overdue by
+ * {@link #checkOverdue(long)} or only completes late. Changes pending for over an hour are no longer timed.
+ *
+ * All times are utc millis, passed in by the caller.
+ */
+public class PropagationTracker {
+
+    /** Notified (while the tracker's lock is held) of each completed change and each breach. */
+    public interface Listener {
+        void onPropagated(String instanceId, boolean joined, long latencyMillis);
+        void onSloBreached(String instanceId, boolean joined);
+    }
+
+    public static final long GIVE_UP_MILLIS = 60*60*1000L;
+
+    /** A membership change that has not yet reached the ELB. */
+    private static class PendingChange {
+        final boolean joined;
+        final long timestamp;
+        boolean awaitingHealth;
+        boolean breached;
+
+        PendingChange(boolean joined, long timestamp) {
+            this.joined = joined;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final boolean confirmHealth;
+    private final long sloMillis;
+    private final Listener listener;
+
+    private boolean started;
+    /** Instance ids in the server pool when last observed. */
+    private Set<String> observedTargets = ImmutableSet.of();
+    /** Instance ids registered by the last reload, or null if there has not been one since starting. */
+    private Set<String> reloadedTargets;
+    /** Membership changes being timed, keyed by instance id. */
+    private final Map<String, PendingChange> pending = Maps.newLinkedHashMap();
+    private final LatencySketch latency = new LatencySketch();
+
+    public PropagationTracker(boolean confirmHealth, long sloMillis, Listener listener) {
+        this.confirmHealth = confirmHealth;
+        this.sloMillis = sloMillis;
+        this.listener = checkNotNull(listener, "listener");
+    }
+
+    /** Starts (or restarts) timing changes to the given instances, forgetting any pending changes. */
+    public synchronized void start(Set<String> currentTargets) {
+        started = true;
+        observedTargets = ImmutableSet.copyOf(currentTargets);
+        reloadedTargets = null;
+        pending.clear();
+    }
+
+    public synchronized void stop() {
+        started = false;
+        pending.clear();
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    /** Starts timing the instances added to and removed from the server pool, as of the given time. */
+    public synchronized void onTargetsChanged(Set<String> targets, long timestamp, long now) {
+        if (!started) return;
+        for (String instanceId : Sets.difference(targets, observedTargets)) {
+            PendingChange change = new PendingChange(true, timestamp);
+            pending.put(instanceId, change);
+            if (reloadedTargets != null && reloadedTargets.contains(instanceId)) onApplied(instanceId, change, now);
+        }
+        for (String instanceId : Sets.difference(observedTargets, targets)) {
+            PendingChange change = new PendingChange(false, timestamp);
+            pending.put(instanceId, change);
+            if (reloadedTargets != null && !reloadedTargets.contains(instanceId)) onApplied(instanceId, change, now);
+        }
+        observedTargets = ImmutableSet.copyOf(targets);
+    }
+
+    /**
+     * Called after a reload has registered exactly the given instances, to complete the changes it has
+     * applied. Joins of excluded instances are no longer timed, as they are deliberately not registered.
+     */
+    public synchronized void onReloaded(Set<String> registered, Set<String> excluded, long now) {
+        if (!started) return;
+        reloadedTargets = ImmutableSet.copyOf(registered);
+        for (Map.Entry<String, PendingChange> entry : ImmutableList.copyOf(pending.entrySet())) {
+            String instanceId = entry.getKey();
+            PendingChange change = entry.getValue();
+            if (change.awaitingHealth) continue;
+            if (change.joined ? registered.contains(instanceId) : !registered.contains(instanceId)) {
+                onApplied(instanceId, change, now);
+            } else if (change.joined && excluded.contains(instanceId)) {
+                pending.remove(instanceId);
+            }
+        }
+        checkOverdue(now);
+    }
+
+    /** Whether any change awaits confirmation of the ELB's instance health. */
+    public synchronized boolean isAwaitingHealth() {
+        for (PendingChange change : pending.values()) {
+            if (change.awaitingHealth) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Completes the changes awaiting confirmation for which the ELB reports the instance InService (for
+     * a join), or OutOfService or not registered (for a leave).
+     *
+     * @param states the state of each instance registered with the ELB, keyed by instance id
+     */
+    public synchronized void onHealthReported(Map<String, String> states, long now) {
+        if (!started) return;
+        for (Map.Entry<String, PendingChange> entry : ImmutableList.copyOf(pending.entrySet())) {
+            PendingChange change = entry.getValue();
+            if (!change.awaitingHealth) continue;
+            String state = states.get(entry.getKey());
+            if (change.joined ? "InService".equals(state) : (state == null || "OutOfService".equals(state))) {
+                complete(entry.getKey(), change, now);
+            }
+        }
+        checkOverdue(now);
+    }
+
+    /**
+     * Counts changes pending for longer than the SLO as breaches (rather than only once they complete,
+     * which might be never), and stops timing changes pending for over an hour.
+     */
+    public synchronized void checkOverdue(long now) {
+        for (Iterator<Map.Entry<String, PendingChange>> iter = pending.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, PendingChange> entry = iter.next();
+            PendingChange change = entry.getValue();
+            if (!change.breached && now - change.timestamp > sloMillis) {
+                change.breached = true;
+                listener.onSloBreached(entry.getKey(), change.joined);
+            }
+            if (now - change.timestamp > GIVE_UP_MILLIS) {
+                iter.remove();
+            }
+        }
+    }
+
+    /** The instance ids with a change still being timed. */
+    public synchronized Set<String> getPending() {
+        return ImmutableSet.copyOf(pending.keySet());
+    }
+
+    /**
+     * The distribution of completed changes' latencies (ms): count, mean, p50, p90, p99 and max; or null
+     * if none have completed.
+     */
+    @Nullable
+    public synchronized Map<String, Double> getLatencySummary() {
+        if (latency.getCount() == 0) return null;
+        return ImmutableMap.<String, Double>builder()
+                .put("count", (double) latency.getCount())
+                .put("mean", latency.getMean())
+                .put("p50", latency.getQuantile(0.5))
+                .put("p90", latency.getQuantile(0.9))
+                .put("p99", latency.getQuantile(0.99))
+                .put("max", latency.getQuantile(1))
+                .build();
+    }
+
+    private void onApplied(String instanceId, PendingChange change, long now) {
+        if (confirmHealth) {
+            change.awaitingHealth = true;
+        } else {
+            complete(instanceId, change, now);
+        }
+    }
+
+    private void complete(String instanceId, PendingChange change, long now) {
+        pending.remove(instanceId);
+        long millis = Math.max(0, now - change.timestamp);
+        latency.add(millis);
+        if (!change.breached && millis > sloMillis) {
+            change.breached = true;
+            listener.onSloBreached(instanceId, change.joined);
+        }
+        listener.onPropagated(instanceId, change.joined, millis);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("confirmHealth", confirmHealth).add("sloMillis", sloMillis).toString();
+    }
+}
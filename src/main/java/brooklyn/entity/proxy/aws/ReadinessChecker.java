@@ -0,0 +1,13 @@
+package brooklyn.entity.proxy.aws;
+
+/**
+ * Checks whether the ELB is ready to receive traffic at the given hostname and listener port.
+ */
+public interface ReadinessChecker {
+
+    /**
+     * Returns true if the ELB is ready; false (or throws) if not yet ready, in which case the check
+     * will be retried.
+     */
+    boolean isReady(String hostname, int port) throws Exception;
+}
@@ -0,0 +1,59 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+
+/**
+ * Considers the ELB ready once its hostname resolves and a TCP connection can be made to the listener
+ * port at one of the resolved addresses.
+ *
+ * Note the ELB accepts connections as soon as its listener is up, even before any instances are
+ * registered or healthy.
+ */
+public class SocketReadinessChecker implements ReadinessChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SocketReadinessChecker.class);
+
+    private final HostnameResolver resolver;
+    private final Duration connectTimeout;
+
+    public SocketReadinessChecker() {
+        this(new InetAddressHostnameResolver(), Duration.FIVE_SECONDS);
+    }
+
+    public SocketReadinessChecker(HostnameResolver resolver, Duration connectTimeout) {
+        this.resolver = checkNotNull(resolver, "resolver");
+        this.connectTimeout = checkNotNull(connectTimeout, "connectTimeout");
+    }
+
+    @Override
+    public boolean isReady(String hostname, int port) throws Exception {
+        HostnameResolver.Resolution resolution = resolver.resolve(hostname);
+        for (String address : resolution.getAddresses()) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(address, port), (int) connectTimeout.toMilliseconds());
+                return true;
+            } catch (IOException e) {
+                LOG.trace("Unable to connect to {}:{} ({}): {}", new Object[] {address, port, hostname, e});
+            } finally {
+                socket.close();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("resolver", resolver).add("connectTimeout", connectTimeout).toString();
+    }
+}
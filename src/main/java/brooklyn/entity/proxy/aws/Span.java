@@ -0,0 +1,119 @@
+package brooklyn.entity.proxy.aws;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * A timed operation, such as a reload or a single AWS call, started by a {@link Tracer}.
+ *
+ * Spans of the same trace share a trace id, and each records its parent, so an exported trace can be
+ * rendered as a tree (or flame graph) of where the time went. A span must be {@link #end() ended}
+ * (typically in a finally block) by the thread that started it, to restore that thread's current span.
+ */
+public class Span {
+
+    private final Tracer tracer;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startTimeUtc;
+    private final long startNanos;
+    private final Span previous;
+    private final Map<String, Object> attributes = Collections.synchronizedMap(Maps.<String, Object>newLinkedHashMap());
+
+    private volatile long durationNanos = -1;
+    private volatile String error;
+
+    Span(Tracer tracer, String traceId, String spanId, @Nullable String parentSpanId, String name, @Nullable Span previous) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.previous = previous;
+        this.startTimeUtc = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    @Nullable
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** When the span started (utc millis). */
+    public long getStartTimeUtc() {
+        return startTimeUtc;
+    }
+
+    /** The span's duration, or -1 if it has not ended. */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public Map<String, Object> getAttributes() {
+        synchronized (attributes) {
+            return ImmutableMap.copyOf(attributes);
+        }
+    }
+
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    public Span setAttribute(String key, @Nullable Object value) {
+        if (value != null) attributes.put(key, value);
+        return this;
+    }
+
+    /** Records that the operation failed; the span must still be ended. */
+    public Span setError(Throwable e) {
+        error = e.toString();
+        return this;
+    }
+
+    /**
+     * Ends the span, and exports it. Has no effect if already ended.
+     */
+    public void end() {
+        synchronized (this) {
+            if (durationNanos >= 0) return;
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        tracer.onEnd(this);
+    }
+
+    Span getPrevious() {
+        return previous;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("name", name)
+                .add("traceId", traceId)
+                .add("spanId", spanId)
+                .add("parentSpanId", parentSpanId)
+                .add("durationNanos", durationNanos)
+                .toString();
+    }
+}
@@ -0,0 +1,13 @@
+package brooklyn.entity.proxy.aws;
+
+/**
+ * Receives the spans of a {@link Tracer} as they end, e.g. to write them to a file or send them to a
+ * tracing system.
+ *
+ * Called synchronously by the thread that ended the span, so implementations should be quick and
+ * thread-safe; an exception thrown is logged and otherwise ignored.
+ */
+public interface SpanExporter {
+
+    void export(Span span);
+}
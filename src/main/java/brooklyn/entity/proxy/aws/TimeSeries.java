@@ -0,0 +1,157 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+import com.google.common.base.Objects;
+
+/**
+ * A bounded in-memory history of one metric, kept at several resolutions so that recent values are
+ * fine-grained and older ones are downsampled.
+ *
+ * Each tier is a ring of fixed-size buckets held in primitive arrays (sum, count, min and max per
+ * bucket), so recording a value allocates nothing and memory is fixed when the series is created.
+ * Every value is added to the current bucket of each tier; a bucket is reset when the ring wraps
+ * round to it. By default the tiers are 10 seconds for an hour, 5 minutes for a day, and 1 hour for
+ * a week (about 30KB).
+ */
+public class TimeSeries {
+
+    public enum Aggregation {
+        AVG,
+        MIN,
+        MAX,
+        SUM,
+        COUNT,
+        /** The sum per second over the window, e.g. for a series of request counts. */
+        RATE;
+    }
+
+    private static final long[] DEFAULT_RESOLUTIONS_MILLIS = {10*1000, 5*60*1000, 60*60*1000};
+    private static final int[] DEFAULT_CAPACITIES = {360, 288, 168};
+
+    private static class Tier {
+        final long resolutionMillis;
+        final long[] bucketIds;
+        final double[] sums;
+        final double[] mins;
+        final double[] maxs;
+        final int[] counts;
+
+        Tier(long resolutionMillis, int capacity) {
+            this.resolutionMillis = resolutionMillis;
+            this.bucketIds = new long[capacity];
+            this.sums = new double[capacity];
+            this.mins = new double[capacity];
+            this.maxs = new double[capacity];
+            this.counts = new int[capacity];
+            Arrays.fill(bucketIds, -1);
+        }
+
+        long getRetentionMillis() {
+            return resolutionMillis * bucketIds.length;
+        }
+
+        void add(long timestamp, double value) {
+            long bucketId = timestamp / resolutionMillis;
+            int slot = (int) (bucketId % bucketIds.length);
+            if (bucketIds[slot] != bucketId) {
+                if (bucketIds[slot] > bucketId) return; // older than the tier's retention
+                bucketIds[slot] = bucketId;
+                sums[slot] = 0;
+                counts[slot] = 0;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxs[slot] = Double.NEGATIVE_INFINITY;
+            }
+            sums[slot] += value;
+            counts[slot]++;
+            mins[slot] = Math.min(mins[slot], value);
+            maxs[slot] = Math.max(maxs[slot], value);
+        }
+    }
+
+    private final Tier[] tiers;
+
+    public TimeSeries() {
+        this(DEFAULT_RESOLUTIONS_MILLIS, DEFAULT_CAPACITIES);
+    }
+
+    /**
+     * @param resolutionsMillis the bucket size of each tier, finest first
+     * @param capacities        the number of buckets of each tier
+     */
+    public TimeSeries(long[] resolutionsMillis, int[] capacities) {
+        checkArgument(resolutionsMillis.length > 0 && resolutionsMillis.length == capacities.length,
+                "must have a capacity for each of at least one resolution");
+        tiers = new Tier[resolutionsMillis.length];
+        for (int i = 0; i < tiers.length; i++) {
+            checkArgument(resolutionsMillis[i] > 0 && capacities[i] > 0, "resolutions and capacities must be positive");
+            checkArgument(i == 0 || resolutionsMillis[i] > resolutionsMillis[i-1], "resolutions must be increasing");
+            tiers[i] = new Tier(resolutionsMillis[i], capacities[i]);
+        }
+    }
+
+    /** How far back the coarsest tier goes. */
+    public long getRetentionMillis() {
+        return tiers[tiers.length - 1].getRetentionMillis();
+    }
+
+    public synchronized void record(long timestampUtc, double value) {
+        if (Double.isNaN(value)) return;
+        for (Tier tier : tiers) {
+            tier.add(timestampUtc, value);
+        }
+    }
+
+    /**
+     * Aggregates the values recorded in the window ending at the given time, from the finest tier that
+     * retains the whole window (so the window is effectively rounded to that tier's resolution).
+     *
+     * @return the aggregate, or NaN if there are no values in the window (except 0 for COUNT and RATE)
+     */
+    public synchronized double aggregate(Aggregation aggregation, long windowMillis, long nowUtc) {
+        checkArgument(windowMillis > 0, "window must be positive, but was %s", windowMillis);
+        Tier tier = tiers[tiers.length - 1];
+        for (Tier candidate : tiers) {
+            if (candidate.getRetentionMillis() >= windowMillis) {
+                tier = candidate;
+                break;
+            }
+        }
+
+        long lastBucketId = nowUtc / tier.resolutionMillis;
+        long firstBucketId = Math.max(0, (nowUtc - windowMillis) / tier.resolutionMillis + 1);
+        firstBucketId = Math.max(firstBucketId, lastBucketId - tier.bucketIds.length + 1);
+        double sum = 0;
+        long count = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (long bucketId = firstBucketId; bucketId <= lastBucketId; bucketId++) {
+            int slot = (int) (bucketId % tier.bucketIds.length);
+            if (tier.bucketIds[slot] != bucketId) continue;
+            sum += tier.sums[slot];
+            count += tier.counts[slot];
+            min = Math.min(min, tier.mins[slot]);
+            max = Math.max(max, tier.maxs[slot]);
+        }
+
+        switch (aggregation) {
+        case COUNT: return count;
+        case RATE: return sum / (windowMillis / 1000d);
+        case SUM: return (count == 0) ? Double.NaN : sum;
+        case AVG: return (count == 0) ? Double.NaN : sum / count;
+        case MIN: return (count == 0) ? Double.NaN : min;
+        case MAX: return (count == 0) ? Double.NaN : max;
+        default: throw new IllegalStateException("Unexpected aggregation "+aggregation);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("tiers", tiers.length)
+                .add("retentionMillis", getRetentionMillis())
+                .toString();
+    }
+}
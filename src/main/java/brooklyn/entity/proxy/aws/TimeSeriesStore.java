@@ -0,0 +1,51 @@
+package brooklyn.entity.proxy.aws;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+/**
+ * A controller's named {@link TimeSeries}, created on first use.
+ *
+ * Held in memory only: the history is lost on restart or rebind.
+ */
+public class TimeSeriesStore {
+
+    private final ConcurrentMap<String, TimeSeries> series = Maps.newConcurrentMap();
+
+    public void record(String name, double value) {
+        record(name, System.currentTimeMillis(), value);
+    }
+
+    public void record(String name, long timestampUtc, double value) {
+        TimeSeries result = series.get(name);
+        if (result == null) {
+            series.putIfAbsent(name, new TimeSeries());
+            result = series.get(name);
+        }
+        result.record(timestampUtc, value);
+    }
+
+    /**
+     * Aggregates the named series over the window ending now.
+     *
+     * @return the aggregate (see {@link TimeSeries#aggregate(TimeSeries.Aggregation, long, long)}),
+     *         or null if nothing has been recorded in that series
+     */
+    @Nullable
+    public Double aggregate(String name, TimeSeries.Aggregation aggregation, Duration window) {
+        TimeSeries result = series.get(name);
+        if (result == null) return null;
+        return result.aggregate(aggregation, window.toMilliseconds(), System.currentTimeMillis());
+    }
+
+    public Set<String> getNames() {
+        return ImmutableSortedSet.copyOf(series.keySet());
+    }
+}
@@ -0,0 +1,183 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Starts {@link Span spans}, tracking each thread's current span so that nested spans (e.g. the AWS
+ * calls made during a reload) record their parent, and passes ended spans to a {@link SpanExporter}.
+ *
+ * Work handed to another thread can continue the trace by passing the current span as the parent
+ * explicitly, with {@link #start(String, Span)}.
+ *
+ * Without an exporter, tracing costs nothing: no spans are created, and {@link #current()} is always
+ * the {@link #NOOP_SPAN}.
+ */
+public class Tracer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
+    /** Methods of AWS clients that are not calls to AWS, so are not traced. */
+    private static final Set<String> UNTRACED_METHODS = ImmutableSet.of(
+            "shutdown", "setEndpoint", "setRegion", "getCachedResponseMetadata",
+            "toString", "hashCode", "equals");
+
+    /**
+     * The current span when there is none (or tracing is not enabled), which discards its attributes, so
+     * callers of {@link #current()} need not check for null.
+     */
+    public static final Span NOOP_SPAN = new Span(null, "", "", null, "noop", null) {
+        @Override public Span setAttribute(String key, @Nullable Object value) {
+            return this;
+        }
+        @Override public Span setError(Throwable e) {
+            return this;
+        }
+        @Override public void end() {
+        }
+    };
+
+    private final SpanExporter exporter;
+    private final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+    /**
+     * @param exporter where to send ended spans, or null to not trace
+     */
+    public Tracer(@Nullable SpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public boolean isEnabled() {
+        return exporter != null;
+    }
+
+    /**
+     * Starts a span as a child of this thread's current span (or of a new trace, if none), making it
+     * the current span until ended.
+     */
+    public Span start(String name) {
+        return start(name, current.get());
+    }
+
+    /**
+     * Starts a span as a child of the given span (or of a new trace, if null or the {@link #NOOP_SPAN}),
+     * making it this thread's current span until ended. Returns the {@link #NOOP_SPAN} if not enabled.
+     */
+    public Span start(String name, @Nullable Span parent) {
+        if (!isEnabled()) return NOOP_SPAN;
+        if (parent == NOOP_SPAN) parent = null;
+        String traceId = (parent != null) ? parent.getTraceId() : Identifiers.makeRandomId(16);
+        String parentSpanId = (parent != null) ? parent.getSpanId() : null;
+        Span result = new Span(this, traceId, Identifiers.makeRandomId(8), parentSpanId, name, current.get());
+        current.set(result);
+        return result;
+    }
+
+    /** The span most recently started (and not yet ended) by this thread, or the {@link #NOOP_SPAN} if none. */
+    public Span current() {
+        Span result = current.get();
+        return (result != null) ? result : NOOP_SPAN;
+    }
+
+    /**
+     * Calls the body in a span (a child of this thread's current span), which records any failure. The body
+     * can add attributes to the span through {@link #current()}.
+     */
+    public <T> T call(String name, Callable<T> body) {
+        return call(name, current.get(), body);
+    }
+
+    /**
+     * Calls the body in a span that is a child of the given span (or of a new trace, if null), which records
+     * any failure. Checked exceptions are propagated wrapped in a runtime exception. If not enabled, just
+     * calls the body.
+     */
+    public <T> T call(String name, @Nullable Span parent, Callable<T> body) {
+        if (!isEnabled()) {
+            try {
+                return body.call();
+            } catch (Exception e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+        Span span = start(name, parent);
+        try {
+            return body.call();
+        } catch (Exception e) {
+            span.setError(e);
+            throw Exceptions.propagate(e);
+        } finally {
+            span.end();
+        }
+    }
+
+    void onEnd(Span span) {
+        if (current.get() == span) {
+            if (span.getPrevious() != null) {
+                current.set(span.getPrevious());
+            } else {
+                current.remove();
+            }
+        }
+        if (exporter != null) {
+            try {
+                exporter.export(span);
+            } catch (Exception e) {
+                LOG.warn("Problem exporting span "+span+" to "+exporter+"; continuing", e);
+            }
+        }
+    }
+
+    /**
+     * Returns a proxy of the given client, which records a span (named with the prefix and method name)
+     * for each call. If not enabled, returns the client itself.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T traced(final T delegate, Class<T> type, final String prefix) {
+        checkNotNull(delegate, "delegate");
+        if (!isEnabled()) return delegate;
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (UNTRACED_METHODS.contains(method.getName())) {
+                    return invokeUnwrapping(delegate, method, args);
+                }
+                Span span = start(prefix + method.getName());
+                try {
+                    return invokeUnwrapping(delegate, method, args);
+                } catch (Throwable e) {
+                    span.setError(e);
+                    throw e;
+                } finally {
+                    span.end();
+                }
+            }});
+    }
+
+    private static Object invokeUnwrapping(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Tracer[exporter="+exporter+"]";
+    }
+}
@@ -0,0 +1,167 @@
+package brooklyn.entity.proxy.aws;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.TreeMultimap;
+
+/**
+ * Decides which availability zones to disable, or which instances to hold back, so that no zone's
+ * instances get more than {@code maxSkew} times an even share of the load (as the ELB, with cross-zone
+ * load balancing off, gives each zone an equal share of traffic however many instances it has).
+ *
+ * The skew of the least-occupied zone is N/(k*n), for N instances spread across k occupied zones, n of
+ * them in that zone. Unoccupied zones are ignored, as the ELB stops routing to them.
+ *
+ * The instances held back in a zone are those with the highest ids, so the same ones are chosen each time.
+ */
+public class ZoneBalancer {
+
+    /**
+     * What to apply to the ELB, and the resulting spread.
+     */
+    public static class Plan {
+        private final Set<String> disabledZones;
+        private final Set<String> heldBack;
+        private final Map<String, Integer> instanceCounts;
+        private final double skew;
+
+        Plan(Set<String> disabledZones, Set<String> heldBack, Map<String, Integer> instanceCounts, double skew) {
+            this.disabledZones = ImmutableSet.copyOf(disabledZones);
+            this.heldBack = ImmutableSet.copyOf(heldBack);
+            this.instanceCounts = ImmutableMap.copyOf(instanceCounts);
+            this.skew = skew;
+        }
+
+        /** The zones to disable. */
+        public Set<String> getDisabledZones() {
+            return disabledZones;
+        }
+
+        /** The instances not to register. */
+        public Set<String> getHeldBack() {
+            return heldBack;
+        }
+
+        /** The number of instances to register in each zone (including disabled zones). */
+        public Map<String, Integer> getInstanceCounts() {
+            return instanceCounts;
+        }
+
+        /** The skew of the enabled zones, once the plan is applied. */
+        public double getSkew() {
+            return skew;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("disabledZones", disabledZones).add("heldBack", heldBack)
+                    .add("instanceCounts", instanceCounts).add("skew", skew).toString();
+        }
+    }
+
+    private final ElbController.ZoneBalancingMode mode;
+    private final double maxSkew;
+
+    public ZoneBalancer(ElbController.ZoneBalancingMode mode, double maxSkew) {
+        checkArgument(maxSkew >= 1, "maxSkew must be at least 1, but was %s", maxSkew);
+        this.mode = checkNotNull(mode, "mode");
+        this.maxSkew = maxSkew;
+    }
+
+    /**
+     * @param zones           the ELB's availability zones
+     * @param instancesByZone the candidate instances in each zone (instances in other zones are ignored)
+     */
+    public Plan balance(Set<String> zones, SetMultimap<String, String> instancesByZone) {
+        SortedSetMultimap<String, String> sorted = TreeMultimap.create();
+        for (Map.Entry<String, String> entry : instancesByZone.entries()) {
+            if (zones.contains(entry.getKey())) sorted.put(entry.getKey(), entry.getValue());
+        }
+
+        Set<String> disabledZones = Sets.newLinkedHashSet();
+        Set<String> heldBack = Sets.newLinkedHashSet();
+        if (mode == ElbController.ZoneBalancingMode.DISABLE_LOW_CAPACITY_ZONES) {
+            // Repeatedly disable the worst zone (which shifts its traffic to the others) while it is too skewed
+            Map<String, Integer> counts = countByZone(zones, sorted, disabledZones);
+            while (countOccupied(counts) > 1 && computeSkew(counts) > maxSkew) {
+                disabledZones.add(leastOccupied(counts));
+                counts = countByZone(zones, sorted, disabledZones);
+            }
+        } else if (mode == ElbController.ZoneBalancingMode.HOLD_BACK_EXCESS) {
+            Map<String, Integer> counts = countByZone(zones, sorted, disabledZones);
+            String smallest = leastOccupied(counts);
+            if (smallest != null) {
+                int cap = Math.max(counts.get(smallest), (int) Math.floor(counts.get(smallest) * maxSkew));
+                for (String zone : sorted.keySet()) {
+                    List<String> instances = Lists.newArrayList(sorted.get(zone));
+                    if (instances.size() > cap) heldBack.addAll(instances.subList(cap, instances.size()));
+                }
+            }
+        }
+
+        sorted.values().removeAll(heldBack);
+        return new Plan(disabledZones, heldBack,
+                countByZone(zones, sorted, ImmutableSet.<String>of()),
+                computeSkew(countByZone(zones, sorted, disabledZones)));
+    }
+
+    /**
+     * The load on instances in the least-occupied zone, relative to an even share across all instances
+     * (or 1 if there are no instances).
+     */
+    static double computeSkew(Map<String, Integer> counts) {
+        String smallest = leastOccupied(counts);
+        if (smallest == null) return 1;
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        return ((double) total) / (countOccupied(counts) * counts.get(smallest));
+    }
+
+    private static Map<String, Integer> countByZone(Set<String> zones, SetMultimap<String, String> instancesByZone, Set<String> excludedZones) {
+        Map<String, Integer> result = Maps.newTreeMap();
+        for (String zone : zones) {
+            if (!excludedZones.contains(zone)) result.put(zone, instancesByZone.get(zone).size());
+        }
+        return result;
+    }
+
+    private static int countOccupied(Map<String, Integer> counts) {
+        int result = 0;
+        for (int count : counts.values()) {
+            if (count > 0) result++;
+        }
+        return result;
+    }
+
+    /** The occupied zone with the fewest instances, or null if none are occupied. */
+    @Nullable
+    private static String leastOccupied(Map<String, Integer> counts) {
+        String result = null;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 0 && (result == null || entry.getValue() < counts.get(result))) result = entry.getKey();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("mode", mode).add("maxSkew", maxSkew).toString();
+    }
+}
@@ -0,0 +1,111 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.location.Location;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.group.BasicGroup;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs an {@link ElbController} offline against a {@link RecordingElbClient}, with a server pool of
+ * {@link TestEntity} members that report their instance id in {@link #INSTANCE_ID}.
+ */
+public abstract class AbstractElbControllerTest extends BrooklynAppUnitTestSupport {
+
+    public static final AttributeSensor<String> INSTANCE_ID = Sensors.newStringSensor("test.ec2.instanceId");
+
+    /**
+     * Uses the member's {@link #INSTANCE_ID} sensor, as the test members have no EC2 machine location.
+     */
+    public static class InstanceIdSensorElbControllerImpl extends ElbControllerImpl {
+        @Override
+        protected String getAddressOfEntity(Entity member) {
+            return member.getAttribute(INSTANCE_ID);
+        }
+    }
+
+    protected static final String ELB_NAME = "test-elb";
+    protected static final List<String> AVAILABILITY_ZONES = ImmutableList.of("us-east-1a", "us-east-1b");
+    protected static final Duration QUIET_PERIOD = Duration.millis(500);
+    protected static final Duration TIMEOUT = Duration.THIRTY_SECONDS;
+
+    protected RecordingElbClient elbApi;
+    protected Location loc;
+    protected BasicGroup serverPool;
+    protected ElbController elb;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        elbApi = new RecordingElbClient();
+        loc = mgmt.getLocationRegistry().resolve("jclouds:aws-ec2:us-east-1", ImmutableMap.of("identity", "myidentity", "credential", "mycredential"));
+        serverPool = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+    }
+
+    /**
+     * A controller of {@link #ELB_NAME} for the server pool, with the background jobs that would call
+     * anything other than the recording client (or make unexpected calls) disabled.
+     */
+    protected EntitySpec<ElbController> newElbSpec() {
+        return EntitySpec.create(ElbController.class)
+                .impl(InstanceIdSensorElbControllerImpl.class)
+                .configure(ElbController.ELB_CLIENT_FACTORY, elbApi)
+                .configure(ElbController.LOAD_BALANCER_NAME, ELB_NAME)
+                .configure(ElbController.AVAILABILITY_ZONES, AVAILABILITY_ZONES)
+                .configure(ElbController.RESOLVED_ADDRESSES_ENABLED, false)
+                .configure(ElbController.READINESS_CHECK_ENABLED, false)
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, false)
+                .configure(ElbController.SERVER_POOL, serverPool);
+    }
+
+    protected TestEntity addMember(String instanceId) {
+        TestEntity member = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        member.sensors().set(INSTANCE_ID, instanceId);
+        member.sensors().set(Attributes.SERVICE_UP, true);
+        serverPool.addMember(member);
+        return member;
+    }
+
+    protected void assertRegisteredEventually(final String... instanceIds) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(elbApi.getRegisteredInstanceIds(ELB_NAME), ImmutableSet.copyOf(instanceIds));
+            }});
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+    }
+
+    protected <T> void assertAttributeEqualsEventually(final AttributeSensor<T> sensor, final T expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(elb.getAttribute(sensor), expected);
+            }});
+    }
+
+    protected ElbControllerImpl getImpl() {
+        return (ElbControllerImpl) Entities.deproxy(elb);
+    }
+
+    protected Map<String, String> getExclusions() {
+        Map<String, String> result = elb.getAttribute(ElbController.EXCLUDED_INSTANCES);
+        return (result == null) ? ImmutableMap.<String, String>of() : result;
+    }
+}
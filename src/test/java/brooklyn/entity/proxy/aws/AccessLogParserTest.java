@@ -0,0 +1,102 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class AccessLogParserTest {
+
+    private static final String ENTRY_1 = "2015-05-13T23:39:43.945958Z my-loadbalancer 192.168.131.39:2817 10.0.0.1:80 0.000073 0.001048 0.000057 200 200 0 29 \"GET http://www.example.com:80/ HTTP/1.1\" \"curl/7.38.0\" - -";
+    private static final String ENTRY_2 = "2015-05-13T23:39:44.001234Z my-loadbalancer 192.168.131.39:2818 10.0.0.2:80 0.000086 -1 -1 504 0 0 0 \"GET http://www.example.com:80/ HTTP/1.1\" \"curl/7.38.0\" - -";
+    private static final String ENTRY_NO_BACKEND = "2015-05-13T23:39:45.000000Z my-loadbalancer 192.168.131.39:2819 - -1 -1 -1 503 0 0 0 \"GET http://www.example.com:80/ HTTP/1.1\" \"curl/7.38.0\" - -";
+    private static final String ENTRY_TCP = "2015-05-13T23:39:46.000000Z my-loadbalancer 192.168.131.39:2820 10.0.0.1:8080 0.001069 0.000028 0.000041 - - 82 305 \"- - - \" \"-\" - -";
+
+    private static class Entry {
+        final long backendAddress;
+        final double backendProcessingTime;
+        final int elbStatusCode;
+        final int backendStatusCode;
+
+        Entry(long backendAddress, double backendProcessingTime, int elbStatusCode, int backendStatusCode) {
+            this.backendAddress = backendAddress;
+            this.backendProcessingTime = backendProcessingTime;
+            this.elbStatusCode = elbStatusCode;
+            this.backendStatusCode = backendStatusCode;
+        }
+    }
+
+    private AccessLogParser parser;
+    private List<Entry> entries;
+    private AccessLogParser.Handler handler;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        parser = new AccessLogParser();
+        entries = Lists.newArrayList();
+        handler = new AccessLogParser.Handler() {
+            @Override public void onEntry(long backendAddress, double backendProcessingTime, int elbStatusCode, int backendStatusCode) {
+                entries.add(new Entry(backendAddress, backendProcessingTime, elbStatusCode, backendStatusCode));
+            }};
+    }
+
+    private long parse(String contents) throws Exception {
+        return parser.parse(new ByteArrayInputStream(contents.getBytes(Charsets.UTF_8)), handler);
+    }
+
+    @Test
+    public void testParsesEntries() throws Exception {
+        String contents = ENTRY_1 + "\n" + ENTRY_2 + "\n" + ENTRY_NO_BACKEND + "\n" + ENTRY_TCP + "\n";
+        assertEquals(parse(contents), contents.length());
+
+        assertEquals(entries.size(), 4);
+        assertEquals(AccessLogParser.formatAddress(entries.get(0).backendAddress), "10.0.0.1");
+        assertEquals(entries.get(0).backendProcessingTime, 0.001048, 0.0000001);
+        assertEquals(entries.get(0).elbStatusCode, 200);
+        assertEquals(entries.get(0).backendStatusCode, 200);
+
+        assertEquals(AccessLogParser.formatAddress(entries.get(1).backendAddress), "10.0.0.2");
+        assertEquals(entries.get(1).backendProcessingTime, -1d);
+        assertEquals(entries.get(1).elbStatusCode, 504);
+
+        assertEquals(entries.get(2).backendAddress, AccessLogParser.NO_BACKEND);
+
+        assertEquals(AccessLogParser.formatAddress(entries.get(3).backendAddress), "10.0.0.1");
+        assertEquals(entries.get(3).elbStatusCode, -1);
+        assertEquals(entries.get(3).backendStatusCode, -1);
+        assertEquals(parser.getMalformedCount(), 0);
+    }
+
+    @Test
+    public void testDoesNotConsumePartialLine() throws Exception {
+        String contents = ENTRY_1 + "\n" + ENTRY_2.substring(0, 40);
+        assertEquals(parse(contents), ENTRY_1.length() + 1);
+        assertEquals(entries.size(), 1);
+    }
+
+    @Test
+    public void testSkipsMalformedLines() throws Exception {
+        parse("not an access log entry\n" + ENTRY_1 + "\r\n");
+        assertEquals(entries.size(), 1);
+        assertEquals(parser.getMalformedCount(), 1);
+    }
+
+    @Test
+    public void testParsesLinesSpanningBufferBoundaries() throws Exception {
+        StringBuilder contents = new StringBuilder();
+        List<String> lines = ImmutableList.of(ENTRY_1, ENTRY_2);
+        for (int i = 0; i < 2000; i++) {
+            contents.append(lines.get(i % 2)).append("\n");
+        }
+        assertEquals(parse(contents.toString()), contents.length());
+        assertEquals(entries.size(), 2000);
+        assertEquals(parser.getMalformedCount(), 0);
+    }
+}
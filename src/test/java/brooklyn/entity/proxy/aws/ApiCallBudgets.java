@@ -0,0 +1,57 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+
+/**
+ * Assertions on the number of ELB API calls recorded by a {@link RecordingElbClient}, to guard against
+ * regressions in how many calls an operation makes.
+ */
+public class ApiCallBudgets {
+
+    private ApiCallBudgets() {}
+
+    /**
+     * Runs the action, and asserts it made at most the given number of API calls; the recorded calls
+     * are cleared first.
+     */
+    public static void assertCallsAtMost(RecordingElbClient recorder, int maxCalls, String scenario, Runnable action) {
+        recorder.clearCalls();
+        action.run();
+        assertCallsAtMost(recorder, maxCalls, scenario);
+    }
+
+    public static void assertCallsAtMost(RecordingElbClient recorder, int maxCalls, String scenario) {
+        int actual = recorder.getCallCount();
+        assertTrue(actual <= maxCalls, scenario+": expected at most "+maxCalls+" API call(s), but was "+recorder.describeCalls());
+    }
+
+    public static void assertCallsAtMost(RecordingElbClient recorder, String operation, int maxCalls, String scenario) {
+        int actual = recorder.getCalls(operation).size();
+        assertTrue(actual <= maxCalls, scenario+": expected at most "+maxCalls+" "+operation+" call(s), but was "+recorder.describeCalls());
+    }
+
+    /**
+     * Waits until no API calls have been made for the given period, e.g. so that background reloads
+     * triggered by earlier changes are not counted against the next scenario.
+     */
+    public static void awaitQuiescence(RecordingElbClient recorder, Duration quietPeriod, Duration timeout) {
+        long deadline = System.currentTimeMillis() + timeout.toMilliseconds();
+        int lastCount = recorder.getCallCount();
+        long lastChange = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline) {
+            Time.sleep(Duration.millis(50));
+            int count = recorder.getCallCount();
+            if (count != lastCount) {
+                lastCount = count;
+                lastChange = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastChange >= quietPeriod.toMilliseconds()) {
+                return;
+            }
+        }
+        fail("API calls did not quiesce within "+timeout+": "+recorder.describeCalls());
+    }
+}
@@ -0,0 +1,97 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContextForTests;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class ApiRateLimiterTest {
+
+    @Test
+    public void testBurstDoesNotWait() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", 1, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(limiter.acquire(), 0L);
+        }
+        assertEquals(limiter.getUtilisation(), 5d / 60, 0.0001);
+    }
+
+    @Test
+    public void testWaitsForRateOnceBurstUsed() throws Exception {
+        ApiRateLimiter limiter = new ApiRateLimiter("test", 20, 1);
+        limiter.acquire();
+        long waitNanos = limiter.acquire();
+        // the next token is due in 50ms
+        assertTrue(waitNanos >= TimeUnit.MILLISECONDS.toNanos(40), "waitNanos="+waitNanos);
+    }
+
+    @Test
+    public void testHigherPriorityServedFirst() throws Exception {
+        final ApiRateLimiter limiter = new ApiRateLimiter("test", 5, 1);
+        final List<ApiRateLimiter.Priority> order = Lists.newCopyOnWriteArrayList();
+        limiter.acquire();
+
+        Thread bulk = newAcquirer(limiter, ApiRateLimiter.Priority.BULK, order);
+        bulk.start();
+        Thread.sleep(50);
+        Thread failure = newAcquirer(limiter, ApiRateLimiter.Priority.FAILURE, order);
+        failure.start();
+        bulk.join();
+        failure.join();
+
+        assertEquals(order, ImmutableList.of(ApiRateLimiter.Priority.FAILURE, ApiRateLimiter.Priority.BULK));
+    }
+
+    @Test
+    public void testPriorityIsPerThread() throws Exception {
+        ApiRateLimiter.Priority previous = ApiRateLimiter.setPriority(ApiRateLimiter.Priority.BULK);
+        try {
+            assertEquals(previous, ApiRateLimiter.Priority.ROUTINE);
+            assertEquals(ApiRateLimiter.getPriority(), ApiRateLimiter.Priority.BULK);
+        } finally {
+            ApiRateLimiter.setPriority(previous);
+        }
+        assertEquals(ApiRateLimiter.getPriority(), ApiRateLimiter.Priority.ROUTINE);
+    }
+
+    @Test
+    public void testBucketSharedPerAccountAndRegionKeepsItsRate() throws Exception {
+        ManagementContext mgmt = new LocalManagementContextForTests();
+        try {
+            ApiRateLimiter limiter = ApiRateLimiter.get(mgmt, "account", "us-east-1", 10, 20);
+            assertSame(ApiRateLimiter.get(mgmt, "account", "us-east-1", 10, 20), limiter);
+            assertNotSame(ApiRateLimiter.get(mgmt, "account", "eu-west-1", 10, 20), limiter);
+
+            // a different rate is ignored (with a warning), rather than depending on which controller asked first
+            ApiRateLimiter other = ApiRateLimiter.get(mgmt, "account", "us-east-1", 50, 5);
+            assertSame(other, limiter);
+            assertEquals(other.getPermitsPerSecond(), 10.0, 0.0001);
+            assertEquals(other.getBurst(), 20);
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
+
+    private Thread newAcquirer(final ApiRateLimiter limiter, final ApiRateLimiter.Priority priority, final List<ApiRateLimiter.Priority> order) {
+        return new Thread() {
+            @Override public void run() {
+                try {
+                    limiter.acquire(priority);
+                    order.add(priority);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }};
+    }
+}
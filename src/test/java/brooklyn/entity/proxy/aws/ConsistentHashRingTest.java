@@ -0,0 +1,66 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class ConsistentHashRingTest {
+
+    private static List<String> instanceIds(int count) {
+        List<String> result = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            result.add(String.format("i-%08x", i * 7919));
+        }
+        return result;
+    }
+
+    @Test
+    public void testAssignmentIsDeterministic() throws Exception {
+        ConsistentHashRing ring1 = new ConsistentHashRing(ImmutableList.of("elb-0", "elb-1", "elb-2"));
+        ConsistentHashRing ring2 = new ConsistentHashRing(ImmutableList.of("elb-0", "elb-1", "elb-2"));
+        for (String id : instanceIds(100)) {
+            assertEquals(ring1.shardFor(id), ring2.shardFor(id));
+        }
+    }
+
+    @Test
+    public void testPartitionIncludesEveryShardAndKey() throws Exception {
+        List<String> ids = instanceIds(300);
+        Map<String, Set<String>> partition = new ConsistentHashRing(ImmutableList.of("elb-0", "elb-1", "elb-2")).partition(ids);
+
+        assertEquals(ImmutableList.copyOf(partition.keySet()), ImmutableList.of("elb-0", "elb-1", "elb-2"));
+        int total = 0;
+        for (Set<String> shardIds : partition.values()) {
+            assertTrue(shardIds.size() > 0, "partition="+partition);
+            total += shardIds.size();
+        }
+        assertEquals(total, ids.size());
+    }
+
+    @Test
+    public void testAddingShardOnlyMovesKeysToNewShard() throws Exception {
+        ConsistentHashRing before = new ConsistentHashRing(ImmutableList.of("elb-0", "elb-1", "elb-2"));
+        ConsistentHashRing after = new ConsistentHashRing(ImmutableList.of("elb-0", "elb-1", "elb-2", "elb-3"));
+
+        List<String> ids = instanceIds(1000);
+        int moved = 0;
+        for (String id : ids) {
+            String oldShard = before.shardFor(id);
+            String newShard = after.shardFor(id);
+            if (!oldShard.equals(newShard)) {
+                assertEquals(newShard, "elb-3", "id="+id);
+                moved++;
+            }
+        }
+        // Expect roughly a quarter to move; allow generous slack for hash variance
+        assertTrue(moved > 0 && moved < ids.size() / 2, "moved="+moved);
+    }
+}
@@ -0,0 +1,153 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.elasticloadbalancing.model.HealthCheck;
+import com.amazonaws.services.elasticloadbalancing.model.Instance;
+import com.amazonaws.services.elasticloadbalancing.model.Listener;
+import com.amazonaws.services.elasticloadbalancing.model.ListenerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class DriftDetectorTest {
+
+    private static final HealthCheckSettings HEALTH_CHECK = new HealthCheckSettings(20, 10, 2, 2);
+
+    /** Counts the detailed comparisons made. */
+    private static class CountingDriftDetector extends DriftDetector {
+        final AtomicInteger comparisons = new AtomicInteger();
+
+        @Override
+        protected List<Difference> compare(LoadBalancerDescription description, Expected expected) {
+            comparisons.incrementAndGet();
+            return super.compare(description, expected);
+        }
+    }
+
+    private static Listener newListener() {
+        return new Listener().withProtocol("HTTP").withLoadBalancerPort(80).withInstanceProtocol("HTTP").withInstancePort(8080);
+    }
+
+    private static LoadBalancerDescription describe(String elbName, int interval, String... instanceIds) {
+        List<Instance> instances = Lists.newArrayList();
+        for (String instanceId : instanceIds) {
+            instances.add(new Instance(instanceId));
+        }
+        return new LoadBalancerDescription()
+                .withLoadBalancerName(elbName)
+                .withInstances(instances)
+                .withListenerDescriptions(new ListenerDescription().withListener(newListener()))
+                .withHealthCheck(new HealthCheck().withTarget("HTTP:8080/").withInterval(interval).withTimeout(10)
+                        .withHealthyThreshold(2).withUnhealthyThreshold(2));
+    }
+
+    private static DriftDetector.Expected expect(String elbName, String... instanceIds) {
+        return new DriftDetector.Expected(ImmutableMap.of(elbName, (Set<String>) ImmutableSet.copyOf(instanceIds)),
+                newListener(), HEALTH_CHECK);
+    }
+
+    @Test
+    public void testInSync() throws Exception {
+        DriftDetector.Check check = new DriftDetector().check(ImmutableList.of(describe("elb", 20, "i-1", "i-2")), expect("elb", "i-1", "i-2"));
+        assertTrue(check.isInSync());
+        assertFalse(check.isUnchanged());
+    }
+
+    @Test
+    public void testFindsInstanceAndHealthCheckDrift() throws Exception {
+        DriftDetector.Check check = new DriftDetector().check(ImmutableList.of(describe("elb", 99, "i-1", "i-3")), expect("elb", "i-1", "i-2"));
+        List<DriftDetector.Difference> drift = check.getDifferences();
+        assertEquals(drift.size(), 3, "drift="+drift);
+        assertEquals(drift.get(0).getKind(), DriftDetector.Kind.INSTANCES_DEREGISTERED);
+        assertEquals(drift.get(0).getInstanceIds(), ImmutableSet.of("i-2"));
+        assertEquals(drift.get(1).getKind(), DriftDetector.Kind.INSTANCES_REGISTERED);
+        assertEquals(drift.get(1).getInstanceIds(), ImmutableSet.of("i-3"));
+        assertEquals(drift.get(2).getKind(), DriftDetector.Kind.HEALTH_CHECK);
+    }
+
+    @Test
+    public void testUnmanagedHealthCheckAndUnknownInstancesIgnored() throws Exception {
+        DriftDetector.Expected expected = new DriftDetector.Expected(ImmutableMap.<String, Set<String>>of(), newListener(), null);
+        DriftDetector.Check check = new DriftDetector().check(ImmutableList.of(describe("elb", 99, "i-1")), expected);
+        assertTrue(check.isInSync(), "drift="+check.getDifferences());
+    }
+
+    @Test
+    public void testFindsMissingListener() throws Exception {
+        LoadBalancerDescription description = describe("elb", 20, "i-1")
+                .withListenerDescriptions(ImmutableList.<ListenerDescription>of());
+        DriftDetector.Check check = new DriftDetector().check(ImmutableList.of(description), expect("elb", "i-1"));
+        assertEquals(check.getDifferences().size(), 1);
+        assertEquals(check.getDifferences().get(0).getKind(), DriftDetector.Kind.NO_LISTENER);
+    }
+
+    @Test
+    public void testNotComparedAgainUntilSomethingChanges() throws Exception {
+        CountingDriftDetector detector = new CountingDriftDetector();
+        DriftDetector.Check check = detector.check(ImmutableList.of(describe("elb", 20, "i-1")), expect("elb", "i-1"));
+        detector.recordOutcome(check);
+        assertEquals(detector.comparisons.get(), 1);
+
+        check = detector.check(ImmutableList.of(describe("elb", 20, "i-1")), expect("elb", "i-1"));
+        assertTrue(check.isUnchanged());
+        assertEquals(detector.comparisons.get(), 1);
+
+        // a change to the ELB, or to what was applied, is compared
+        check = detector.check(ImmutableList.of(describe("elb", 20, "i-1", "i-2")), expect("elb", "i-1"));
+        assertFalse(check.isUnchanged());
+        assertFalse(check.isInSync());
+        assertEquals(detector.comparisons.get(), 2);
+        check = detector.check(ImmutableList.of(describe("elb", 20, "i-1")), expect("elb", "i-1", "i-2"));
+        assertFalse(check.isUnchanged());
+        assertEquals(detector.comparisons.get(), 3);
+    }
+
+    @Test
+    public void testDriftIsComparedAgain() throws Exception {
+        CountingDriftDetector detector = new CountingDriftDetector();
+        detector.recordOutcome(detector.check(ImmutableList.of(describe("elb", 20, "i-1")), expect("elb", "i-1", "i-2")));
+        DriftDetector.Check check = detector.check(ImmutableList.of(describe("elb", 20, "i-1")), expect("elb", "i-1", "i-2"));
+        assertFalse(check.isUnchanged());
+        assertFalse(check.isInSync());
+        assertEquals(detector.comparisons.get(), 2);
+    }
+
+    @Test
+    public void testRepairSkippedAfterRegistrationChange() throws Exception {
+        DriftDetector detector = new DriftDetector();
+        final AtomicInteger repairs = new AtomicInteger();
+        Runnable repair = new Runnable() {
+            @Override public void run() {
+                repairs.incrementAndGet();
+            }};
+
+        long changes = detector.getRegistrationChanges();
+        detector.beginRegistrationChange();
+        assertTrue(detector.isRegistrationChanging());
+        assertFalse(detector.isUnchangedSince(changes));
+        detector.endRegistrationChange();
+        assertFalse(detector.isRegistrationChanging());
+        assertFalse(detector.isUnchangedSince(changes));
+
+        // the description taken before the change is stale, so not repaired from
+        assertFalse(detector.repairIfUnchangedSince(changes, repair));
+        assertEquals(repairs.get(), 0);
+
+        changes = detector.getRegistrationChanges();
+        assertTrue(detector.repairIfUnchangedSince(changes, repair));
+        assertEquals(repairs.get(), 1);
+        // the repair is itself a change
+        assertFalse(detector.isUnchangedSince(changes));
+    }
+}
@@ -0,0 +1,39 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.test.Asserts;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the inputs to adaptive health-check tuning.
+ */
+public class ElbControllerAdaptiveHealthCheckTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testFalseFailuresIgnoreInstancesStillWarmingUp() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.HEALTH_CHECK_INTERVAL, 2)
+                .configure(ElbController.HEALTH_CHECK_TIMEOUT, 1)
+                .configure(ElbController.HEALTH_CHECK_HEALTHY_THRESHOLD, 2));
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        // out-of-service until it has passed the healthy threshold, which takes about 4 seconds
+        elbApi.setOutOfService("i-00000002", true);
+        final Map<Entity, String> targets = elb.getAttribute(ElbController.SERVER_POOL_TARGETS);
+        assertEquals(getImpl().countFalseFailures(targets), 0);
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(getImpl().countFalseFailures(targets), 1);
+            }});
+    }
+}
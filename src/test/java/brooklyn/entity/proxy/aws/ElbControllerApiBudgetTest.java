@@ -0,0 +1,156 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.assertCallsAtMost;
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Guards the number of ELB API calls made by common operations, running offline against a
+ * {@link RecordingElbClient}.
+ */
+public class ElbControllerApiBudgetTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testStartNewLoadBalancer() throws Exception {
+        elb = app.createAndManageChild(newElbSpec());
+
+        // check for existing, create, configure health check
+        assertCallsAtMost(elbApi, 3, "start new ELB", new Runnable() {
+            @Override public void run() {
+                elb.start(ImmutableList.of(loc));
+            }});
+        assertTrue(elbApi.hasLoadBalancer(ELB_NAME));
+        assertNotNull(elb.getAttribute(ElbController.HOSTNAME));
+    }
+
+    @Test
+    public void testBindToUnchangedExistingLoadBalancer() throws Exception {
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        final ElbController elb2 = app.createAndManageChild(EntitySpec.create(ElbController.class)
+                .configure(ElbController.ELB_CLIENT_FACTORY, elbApi)
+                .configure(ElbController.LOAD_BALANCER_NAME, ELB_NAME)
+                .configure(ElbController.AVAILABILITY_ZONES, AVAILABILITY_ZONES)
+                .configure(ElbController.RESOLVED_ADDRESSES_ENABLED, false)
+                .configure(ElbController.READINESS_CHECK_ENABLED, false)
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, false)
+                .configure(ElbController.BIND_TO_EXISTING, true));
+
+        // describe, configure health check (the unchanged listener is kept)
+        assertCallsAtMost(elbApi, 2, "bind to unchanged existing ELB", new Runnable() {
+            @Override public void run() {
+                elb2.start(ImmutableList.of(loc));
+            }});
+        assertEquals(elb2.getAttribute(ElbController.HOSTNAME), elb.getAttribute(ElbController.HOSTNAME));
+    }
+
+    @Test
+    public void testUnchangedReloadMakesAtMostOneCall() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        assertCallsAtMost(elbApi, 1, "unchanged reload", new Runnable() {
+            @Override public void run() {
+                elb.reload();
+            }});
+    }
+
+    @Test
+    public void testAddingMemberMakesAtMostTwoCalls() throws Exception {
+        addMember("i-00000001");
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001");
+
+        elbApi.clearCalls();
+        addMember("i-00000002");
+        assertRegisteredEventually("i-00000001", "i-00000002");
+        assertCallsAtMost(elbApi, 2, "adding one member");
+        assertCallsAtMost(elbApi, "registerInstancesWithLoadBalancer", 1, "adding one member");
+    }
+
+    @Test
+    public void testRemovingMemberMakesAtMostTwoCalls() throws Exception {
+        addMember("i-00000001");
+        TestEntity member2 = addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        elbApi.clearCalls();
+        serverPool.removeMember(member2);
+        assertRegisteredEventually("i-00000001");
+        assertCallsAtMost(elbApi, 2, "removing one member");
+    }
+
+    @Test
+    public void testVpcRecordedByReloadWithoutExtraCalls() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_SUBNETS, ImmutableList.of("subnet-1")));
+        elb.start(ImmutableList.of(loc));
+        addMember("i-1");
+        assertRegisteredEventually("i-1");
+
+        // the VPC that members' instance ids are looked up in is known from the reload's describe
+        assertCallsAtMost(elbApi, 0, "find ELB's VPC", new Runnable() {
+            @Override public void run() {
+                assertEquals(getImpl().getLoadBalancerVpcId(), RecordingElbClient.VPC_ID);
+            }});
+        assertEquals(elb.getAttribute(ElbController.LOAD_BALANCER_VPC_ID), RecordingElbClient.VPC_ID);
+    }
+
+    @Test
+    public void testReloadRepairingOneInstanceMakesAtMostTwoCalls() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        elbApi.deregisterOutOfBand(ELB_NAME, "i-00000002");
+        assertCallsAtMost(elbApi, 2, "reload re-registering one instance", new Runnable() {
+            @Override public void run() {
+                elb.reload();
+            }});
+        assertEquals(elbApi.getRegisteredInstanceIds(ELB_NAME), ImmutableSet.of("i-00000001", "i-00000002"));
+    }
+
+    @Test
+    public void testDeletedLoadBalancerNoLongerCalled() throws Exception {
+        addMember("i-00000001");
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, true)
+                .configure(ElbController.DRIFT_DETECTION_MIN_PERIOD, Duration.millis(100))
+                .configure(ElbController.HEALTHY_HOSTS_POLL_PERIOD, Duration.millis(100)));
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001");
+
+        elb.deleteLoadBalancer();
+        assertFalse(elbApi.hasLoadBalancer(ELB_NAME));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        elbApi.clearCalls();
+
+        // neither background jobs nor reloads triggered by the server pool call the deleted ELB
+        addMember("i-00000002");
+        Time.sleep(Duration.millis(500));
+        assertCallsAtMost(elbApi, 0, "after deleting the ELB");
+        assertEquals(elb.getAttribute(ElbController.ELB_IS_RUNNING), Boolean.FALSE);
+    }
+}
@@ -0,0 +1,82 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.assertCallsAtMost;
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests detecting (and optionally repairing) out-of-band changes to the ELB.
+ */
+public class ElbControllerDriftDetectionTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testDriftDetectionRepairsOutOfBandDeregistration() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, true)
+                .configure(ElbController.DRIFT_DETECTION_MIN_PERIOD, Duration.millis(100))
+                .configure(ElbController.DRIFT_REPAIR_ENABLED, true));
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        elbApi.clearCalls();
+        elbApi.deregisterOutOfBand(ELB_NAME, "i-00000002");
+        assertRegisteredEventually("i-00000001", "i-00000002");
+        assertCallsAtMost(elbApi, "registerInstancesWithLoadBalancer", 1, "repairing drift");
+        assertEquals(elb.getAttribute(ElbController.ELB_IS_RUNNING), Boolean.TRUE);
+        assertEquals(elb.getAttribute(ElbController.DRIFT_COUNT), Long.valueOf(1));
+        assertEquals(elb.getAttribute(ElbController.DRIFT), ImmutableList.of());
+    }
+
+    @Test
+    public void testDriftDetectionReportsDeletedElb() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, true)
+                .configure(ElbController.DRIFT_DETECTION_MIN_PERIOD, Duration.millis(100)));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        assertEquals(elb.getAttribute(ElbController.ELB_IS_RUNNING), Boolean.TRUE);
+
+        elbApi.deleteOutOfBand(ELB_NAME);
+        assertAttributeEqualsEventually(ElbController.ELB_IS_RUNNING, false);
+        assertAttributeEqualsEventually(ElbController.DRIFT, ImmutableList.of("ELB "+ELB_NAME+" not found"));
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                Map<String, Object> problems = elb.getAttribute(Attributes.SERVICE_PROBLEMS);
+                assertTrue(problems != null && problems.containsKey(ElbController.ELB_IS_RUNNING.getName()), "problems="+problems);
+            }});
+    }
+
+    @Test
+    public void testDriftDetectionRepairsOutOfBandHealthCheckChange() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.HEALTH_CHECK_INTERVAL, 20)
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, true)
+                .configure(ElbController.DRIFT_DETECTION_MIN_PERIOD, Duration.millis(100))
+                .configure(ElbController.DRIFT_REPAIR_ENABLED, true));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        elbApi.clearCalls();
+        elbApi.setHealthCheckIntervalOutOfBand(ELB_NAME, 99);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(elbApi.getHealthCheck(ELB_NAME).getInterval(), (Integer) 20);
+            }});
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        assertCallsAtMost(elbApi, "configureHealthCheck", 1, "repairing drift");
+        assertEquals(elb.getAttribute(ElbController.DRIFT_REPAIR_COUNT), Long.valueOf(1));
+        assertEquals(elb.getAttribute(ElbController.DRIFT), ImmutableList.of());
+    }
+}
@@ -0,0 +1,38 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests deregistering failed members immediately, ahead of the ELB health check.
+ */
+public class ElbControllerFastDeregistrationTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testFailedMemberDeregisteredOnceAndReregisteredOnRecovery() throws Exception {
+        addMember("i-00000001");
+        TestEntity member = addMember("i-00000002");
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+        elbApi.clearCalls();
+
+        // the fast path and the reload both see the failure, but only one deregisters it
+        member.sensors().set(Attributes.SERVICE_UP, false);
+        assertRegisteredEventually("i-00000001");
+        assertEquals(elbApi.getCalls("deregisterInstancesFromLoadBalancer").size(), 1, elbApi.describeCalls());
+        assertEquals(getExclusions(), ImmutableMap.of("i-00000002", ElbControllerImpl.EXCLUDED_FAILED));
+
+        elbApi.clearCalls();
+        member.sensors().set(Attributes.SERVICE_UP, true);
+        assertRegisteredEventually("i-00000001", "i-00000002");
+        assertEquals(elbApi.getCalls("registerInstancesWithLoadBalancer").size(), 1, elbApi.describeCalls());
+        assertEquals(getExclusions(), ImmutableMap.of());
+    }
+}
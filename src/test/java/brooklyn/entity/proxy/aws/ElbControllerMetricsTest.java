@@ -0,0 +1,51 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the metric history recorded by the controller.
+ */
+public class ElbControllerMetricsTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testHealthyHostsRecordedWithoutAdaptiveHealthCheck() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elbApi.setOutOfService("i-00000002", true);
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.HEALTHY_HOSTS_POLL_PERIOD, Duration.millis(100)));
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(elb.getMetric(ElbController.METRIC_HEALTHY_HOSTS, "MAX", "1m"), (Double) 1.0);
+            }});
+        assertTrue(elb.getAttribute(ElbController.METRIC_NAMES).contains(ElbController.METRIC_HEALTHY_HOSTS));
+    }
+
+    @Test
+    public void testHealthyHostsNotPolledByDefault() throws Exception {
+        addMember("i-00000001");
+        addMember("i-00000002");
+        elbApi.setOutOfService("i-00000002", true);
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002");
+        elbApi.clearCalls();
+        Time.sleep(Duration.millis(500));
+        assertEquals(elbApi.getCalls("describeInstanceHealth").size(), 0, elbApi.describeCalls());
+
+        // but recorded whenever the instances' health is checked anyway
+        getImpl().countFalseFailures(elb.getAttribute(ElbController.SERVER_POOL_TARGETS));
+        assertEquals(elb.getMetric(ElbController.METRIC_HEALTHY_HOSTS, "MAX", "1m"), (Double) 1.0);
+    }
+}
@@ -0,0 +1,73 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests ejecting latency and error-rate outliers from the ELB.
+ */
+public class ElbControllerOutlierEjectionTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testOutlierEjectionHonoursMaxEjectionFraction() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            addMember("i-0000000"+i);
+        }
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.BACKEND_METRICS_SOURCE, newSlowMembersMetricsSource("i-00000001")));
+        elb.start(ImmutableList.of(loc));
+        assertRegisteredEventually("i-00000001", "i-00000002", "i-00000003", "i-00000004");
+
+        // 0.2 of a pool of 4 rounds down to none
+        getImpl().ejectOutliers();
+        assertEquals(getExclusions(), ImmutableMap.of());
+        assertRegisteredEventually("i-00000001", "i-00000002", "i-00000003", "i-00000004");
+    }
+
+    @Test
+    public void testOutlierEjectionCountsEveryExclusionTowardsCap() throws Exception {
+        for (int i = 1; i <= 10; i++) {
+            addMember(String.format("i-%08d", i));
+        }
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.BACKEND_METRICS_SOURCE, newSlowMembersMetricsSource("i-00000001", "i-00000002", "i-00000003")));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        // the cap is 2 (0.2 of 10), one of which is taken by a member excluded for another reason
+        getImpl().excludeInstance("i-00000010", ElbControllerImpl.EXCLUDED_FAILED);
+        getImpl().ejectOutliers();
+        assertEquals(getExclusions().size(), 2);
+        assertEquals(elb.getAttribute(ElbController.EJECTED_MEMBERS).size(), 1);
+
+        getImpl().ejectOutliers();
+        assertEquals(getExclusions().size(), 2);
+    }
+
+    /**
+     * Reports the given instances' members as ten times slower than the rest.
+     */
+    private static BackendMetricsSource newSlowMembersMetricsSource(String... slowInstanceIds) {
+        final Set<String> slow = ImmutableSet.copyOf(slowInstanceIds);
+        return new BackendMetricsSource() {
+            @Override public Map<Entity, BackendStats> getStats(String consumer, Collection<? extends Entity> members) {
+                Map<Entity, BackendStats> result = Maps.newLinkedHashMap();
+                for (Entity member : members) {
+                    result.put(member, new BackendStats(100, 0, slow.contains(member.getAttribute(INSTANCE_ID)) ? 1000 : 100));
+                }
+                return result;
+            }};
+    }
+}
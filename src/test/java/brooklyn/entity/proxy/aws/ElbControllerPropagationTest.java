@@ -0,0 +1,96 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests timing membership changes until they reach the ELB.
+ */
+public class ElbControllerPropagationTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testPropagationTimedForJoinAndLeave() throws Exception {
+        elb = app.createAndManageChild(newElbSpec());
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        assertNull(elb.getAttribute(ElbController.PROPAGATION_LATENCY));
+
+        TestEntity member = addMember("i-00000001");
+        assertRegisteredEventually("i-00000001");
+        assertPropagationCountEventually(1.0);
+        assertNotNull(elb.getAttribute(ElbController.PROPAGATION_LATENCY_LAST));
+
+        serverPool.removeMember(member);
+        assertRegisteredEventually();
+        assertPropagationCountEventually(2.0);
+        assertNull(elb.getAttribute(ElbController.PROPAGATION_SLO_BREACHES));
+        assertTrue(elb.getAttribute(ElbController.METRIC_NAMES).contains(ElbController.METRIC_PROPAGATION_LATENCY));
+    }
+
+    @Test
+    public void testOverduePropagationCountedOnceWithoutReload() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.PROPAGATION_SLO, Duration.millis(100))
+                .configure(ElbController.PROPAGATION_HEALTH_POLL_PERIOD, Duration.millis(50)));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        elbApi.clearCalls();
+
+        // a join that no reload will apply, as the instance is not in the server pool
+        Entity other = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        getImpl().onServerPoolTargetsChanged(ImmutableMap.<Entity, String>of(other, "i-00000002"), System.currentTimeMillis());
+        assertAttributeEqualsEventually(ElbController.PROPAGATION_SLO_BREACHES, 1L);
+        Time.sleep(Duration.millis(300));
+        assertEquals(elb.getAttribute(ElbController.PROPAGATION_SLO_BREACHES), (Long) 1L);
+        // without confirming health, checking for overdue changes makes no calls
+        assertEquals(elbApi.getCallCount(), 0, elbApi.describeCalls());
+    }
+
+    @Test
+    public void testPropagationConfirmedByInstanceHealth() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.PROPAGATION_CONFIRM_HEALTH, true)
+                .configure(ElbController.PROPAGATION_HEALTH_POLL_PERIOD, Duration.millis(50)));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        elbApi.setOutOfService("i-00000001", true);
+        addMember("i-00000001");
+        assertRegisteredEventually("i-00000001");
+        Time.sleep(Duration.millis(300));
+        assertNull(elb.getAttribute(ElbController.PROPAGATION_LATENCY));
+
+        elbApi.setOutOfService("i-00000001", false);
+        assertPropagationCountEventually(1.0);
+
+        // once nothing awaits confirmation, the instance health is no longer polled
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        elbApi.clearCalls();
+        Time.sleep(Duration.millis(300));
+        assertEquals(elbApi.getCalls("describeInstanceHealth").size(), 0, elbApi.describeCalls());
+    }
+
+    private void assertPropagationCountEventually(final double expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                Map<String, Double> latency = elb.getAttribute(ElbController.PROPAGATION_LATENCY);
+                assertEquals((latency == null) ? null : latency.get("count"), (Double) expected);
+            }});
+    }
+}
@@ -0,0 +1,48 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.assertCallsAtMost;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
+
+import org.apache.brooklyn.core.entity.Attributes;
+import org.apache.brooklyn.core.entity.lifecycle.Lifecycle;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests waiting for the ELB to be ready before reporting service up.
+ */
+public class ElbControllerReadinessTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testFailedStartIsOnFireWithoutBackgroundJobs() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.READINESS_CHECK_ENABLED, true)
+                .configure(ElbController.READINESS_TIMEOUT, Duration.millis(100))
+                .configure(ElbController.READINESS_CHECKER, new ReadinessChecker() {
+                    @Override public boolean isReady(String hostname, int port) {
+                        return false;
+                    }})
+                .configure(ElbController.DRIFT_DETECTION_ENABLED, true)
+                .configure(ElbController.DRIFT_DETECTION_MIN_PERIOD, Duration.millis(100)));
+        try {
+            elb.start(ImmutableList.of(loc));
+            fail();
+        } catch (RuntimeException e) {
+            assertNotNull(Exceptions.getFirstThrowableOfType(e, IllegalStateException.class), "e="+e);
+        }
+        assertEquals(elb.getAttribute(Attributes.SERVICE_STATE_EXPECTED).getState(), Lifecycle.ON_FIRE);
+        assertNotEquals(elb.getAttribute(Attributes.SERVICE_UP), Boolean.TRUE);
+
+        // drift detection (the first background job to call the ELB) was never started
+        elbApi.clearCalls();
+        Time.sleep(Duration.millis(500));
+        assertCallsAtMost(elbApi, 0, "after failed start");
+    }
+}
@@ -0,0 +1,108 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests publishing the ELB hostname's resolved addresses, refreshed per DNS TTL.
+ */
+public class ElbControllerResolvedAddressesTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testResolvedAddressesFollowResolverTtl() throws Exception {
+        FakeHostnameResolver resolver = new FakeHostnameResolver();
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.HOSTNAME_RESOLVER, resolver)
+                .configure(ElbController.RESOLVED_ADDRESSES_DEFAULT_TTL, Duration.ONE_MINUTE)
+                .configure(ElbController.RESOLVED_ADDRESSES_MIN_REFRESH, Duration.TEN_SECONDS)
+                .configure(ElbController.RESOLVED_ADDRESSES_MAX_REFRESH, Duration.FIVE_MINUTES));
+        elb.start(ImmutableList.of(loc));
+        String hostname = elb.getAttribute(ElbController.HOSTNAME);
+
+        // not yet resolvable: retry soon
+        assertEquals(getImpl().resolveAddresses(), Duration.TEN_SECONDS);
+        assertNull(elb.getAttribute(ElbController.RESOLVED_ADDRESSES));
+
+        resolver.set(hostname, Duration.seconds(30), "10.0.0.1", "10.0.0.2");
+        assertEquals(getImpl().resolveAddresses(), Duration.seconds(30));
+        assertEquals(elb.getAttribute(ElbController.RESOLVED_ADDRESSES), ImmutableSet.of("10.0.0.1", "10.0.0.2"));
+
+        // the TTL is bounded by the min and max refresh
+        resolver.set(hostname, Duration.ONE_SECOND, "10.0.0.3");
+        assertEquals(getImpl().resolveAddresses(), Duration.TEN_SECONDS);
+        assertEquals(elb.getAttribute(ElbController.RESOLVED_ADDRESSES), ImmutableSet.of("10.0.0.3"));
+        resolver.set(hostname, Duration.ONE_HOUR, "10.0.0.3");
+        assertEquals(getImpl().resolveAddresses(), Duration.FIVE_MINUTES);
+
+        // the default TTL is used if the resolver does not know the record's TTL
+        resolver.set(hostname, null, "10.0.0.3");
+        assertEquals(getImpl().resolveAddresses(), Duration.ONE_MINUTE);
+
+        // the last known addresses are kept if the hostname cannot be resolved
+        resolver.clear(hostname);
+        assertEquals(getImpl().resolveAddresses(), Duration.TEN_SECONDS);
+        assertEquals(elb.getAttribute(ElbController.RESOLVED_ADDRESSES), ImmutableSet.of("10.0.0.3"));
+    }
+
+    @Test
+    public void testResolvedAddressesRefreshedInBackground() throws Exception {
+        final FakeHostnameResolver resolver = new FakeHostnameResolver();
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.RESOLVED_ADDRESSES_ENABLED, true)
+                .configure(ElbController.HOSTNAME_RESOLVER, resolver)
+                .configure(ElbController.RESOLVED_ADDRESSES_MIN_REFRESH, Duration.millis(100)));
+        elb.start(ImmutableList.of(loc));
+        String hostname = elb.getAttribute(ElbController.HOSTNAME);
+
+        resolver.set(hostname, Duration.millis(100), "10.0.0.1");
+        assertAttributeEqualsEventually(ElbController.RESOLVED_ADDRESSES, ImmutableSet.of("10.0.0.1"));
+        int calls = resolver.getCallCount();
+
+        // re-resolved after the TTL, rather than the default TTL of a minute
+        resolver.set(hostname, Duration.millis(100), "10.0.0.1", "10.0.0.2");
+        assertAttributeEqualsEventually(ElbController.RESOLVED_ADDRESSES, ImmutableSet.of("10.0.0.1", "10.0.0.2"));
+        assertTrue(resolver.getCallCount() > calls);
+    }
+
+    /**
+     * Resolves hostnames to the addresses (and TTL) set by the test, failing for other hostnames.
+     */
+    private static class FakeHostnameResolver implements HostnameResolver {
+        private final Map<String, Resolution> resolutions = Maps.newConcurrentMap();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        void set(String hostname, @Nullable Duration ttl, String... addresses) {
+            resolutions.put(hostname, new Resolution(ImmutableList.copyOf(addresses), ttl));
+        }
+
+        void clear(String hostname) {
+            resolutions.remove(hostname);
+        }
+
+        int getCallCount() {
+            return calls.get();
+        }
+
+        @Override
+        public Resolution resolve(String hostname) throws UnknownHostException {
+            calls.incrementAndGet();
+            Resolution result = resolutions.get(hostname);
+            if (result == null) throw new UnknownHostException(hostname);
+            return result;
+        }
+    }
+}
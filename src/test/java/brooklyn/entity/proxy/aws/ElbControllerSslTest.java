@@ -0,0 +1,91 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.assertCallsAtMost;
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+/**
+ * Tests rotating certificates and applying the SSL negotiation policy.
+ */
+public class ElbControllerSslTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testCertificateRotationKeepsListener() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_PROTOCOL, "HTTPS")
+                .configure(ElbController.SSL_CERTIFICATE_ID, "arn:aws:iam::123456789012:server-certificate/cert1"));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        assertCallsAtMost(elbApi, 1, "rotate certificate", new Runnable() {
+            @Override public void run() {
+                elb.setSslCertificate("arn:aws:iam::123456789012:server-certificate/cert2");
+            }});
+        assertCallsAtMost(elbApi, "deleteLoadBalancerListeners", 0, "rotate certificate");
+        assertEquals(Iterables.getOnlyElement(elbApi.getListeners(ELB_NAME)).getSSLCertificateId(), "arn:aws:iam::123456789012:server-certificate/cert2");
+    }
+
+    @Test
+    public void testSslNegotiationPolicyCreatedOnceAndKeptOnReinit() throws Exception {
+        elb = app.createAndManageChild(newSecureElbSpec()
+                .configure(ElbController.SSL_NEGOTIATION_POLICY, "ELBSecurityPolicy-2016-08"));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        String policyName = elb.getAttribute(ElbController.SSL_NEGOTIATION_POLICY_ACTIVE);
+        assertTrue(policyName.startsWith(ElbControllerImpl.SSL_POLICY_NAME_PREFIX), policyName);
+        assertEquals(elbApi.getPolicyNames(ELB_NAME), ImmutableList.of(policyName));
+        assertEquals(elbApi.getListenerPolicyNames(ELB_NAME, getLoadBalancerPort()), ImmutableList.of(policyName));
+
+        elbApi.clearCalls();
+        getImpl().reinitLoadBalancer(ELB_NAME);
+        assertCallsAtMost(elbApi, "createLoadBalancerPolicy", 0, "reinit with unchanged SSL policy");
+        assertCallsAtMost(elbApi, "setLoadBalancerPoliciesOfListener", 0, "reinit with unchanged SSL policy");
+        assertCallsAtMost(elbApi, "deleteLoadBalancerPolicy", 0, "reinit with unchanged SSL policy");
+    }
+
+    @Test
+    public void testSslNegotiationPolicyKeepsOtherListenerPolicies() throws Exception {
+        elb = app.createAndManageChild(newSecureElbSpec()
+                .configure(ElbController.SSL_NEGOTIATION_POLICY, "ELBSecurityPolicy-2016-08"));
+        elb.start(ImmutableList.of(loc));
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        String oldPolicyName = elb.getAttribute(ElbController.SSL_NEGOTIATION_POLICY_ACTIVE);
+        elbApi.addListenerPolicyOutOfBand(ELB_NAME, getLoadBalancerPort(), "my-stickiness-policy");
+
+        // a new SSL policy replaces the old one, and the old one is deleted
+        elb.config().set(ElbController.SSL_NEGOTIATION_POLICY, "ELBSecurityPolicy-TLS-1-2-2017-01");
+        getImpl().reinitLoadBalancer(ELB_NAME);
+        String newPolicyName = elb.getAttribute(ElbController.SSL_NEGOTIATION_POLICY_ACTIVE);
+        assertNotEquals(newPolicyName, oldPolicyName);
+        assertEquals(ImmutableSet.copyOf(elbApi.getListenerPolicyNames(ELB_NAME, getLoadBalancerPort())), ImmutableSet.of("my-stickiness-policy", newPolicyName));
+        assertEquals(ImmutableSet.copyOf(elbApi.getPolicyNames(ELB_NAME)), ImmutableSet.of("my-stickiness-policy", newPolicyName));
+
+        // with no SSL policy configured, ours is detached and deleted
+        elb.config().set(ElbController.SSL_NEGOTIATION_POLICY, (String) null);
+        getImpl().reinitLoadBalancer(ELB_NAME);
+        assertNull(elb.getAttribute(ElbController.SSL_NEGOTIATION_POLICY_ACTIVE));
+        assertEquals(elbApi.getListenerPolicyNames(ELB_NAME, getLoadBalancerPort()), ImmutableList.of("my-stickiness-policy"));
+        assertEquals(elbApi.getPolicyNames(ELB_NAME), ImmutableList.of("my-stickiness-policy"));
+    }
+
+    private EntitySpec<ElbController> newSecureElbSpec() {
+        return newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_PROTOCOL, "HTTPS")
+                .configure(ElbController.SSL_CERTIFICATE_ID, "arn:aws:iam::123456789012:server-certificate/cert1");
+    }
+
+    private int getLoadBalancerPort() {
+        return elb.getConfig(ElbController.LOAD_BALANCER_PORT);
+    }
+}
@@ -0,0 +1,89 @@
+package brooklyn.entity.proxy.aws;
+
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.assertCallsAtMost;
+import static brooklyn.entity.proxy.aws.ApiCallBudgets.awaitQuiescence;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests claiming ELBs from, and refilling, the warm standby pool.
+ */
+public class ElbControllerWarmPoolTest extends AbstractElbControllerTest {
+
+    @Test
+    public void testClaimFromWarmPoolWithoutListingAllElbs() throws Exception {
+        // the pool starts empty, so the first controller creates its own ELB, then fills the pool
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_NAME, (String) null)
+                .configure(ElbController.WARM_POOL_SIZE, 1));
+        elb.start(ImmutableList.of(loc));
+        assertAttributeEqualsEventually(ElbController.WARM_POOL_AVAILABLE, 1);
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        assertEquals(elb.getAttribute(ElbController.WARM_POOL_MISSES), (Long) 1L);
+        assertFalse(elb.getAttribute(ElbController.LOAD_BALANCER_NAME).startsWith(ElbWarmPool.NAME_PREFIX));
+
+        elbApi.clearCalls();
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_NAME, (String) null)
+                .configure(ElbController.WARM_POOL_SIZE, 1));
+        elb.start(ImmutableList.of(loc));
+        assertAttributeEqualsEventually(ElbController.WARM_POOL_AVAILABLE, 1);
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+        assertTrue(elb.getAttribute(ElbController.LOAD_BALANCER_NAME).startsWith(ElbWarmPool.NAME_PREFIX));
+        assertNotNull(elb.getAttribute(ElbController.WARM_POOL_CLAIM_LATENCY));
+
+        // claiming is add claim tag, read tags, swap tags; the pool membership is not listed again
+        assertCallsAtMost(elbApi, "describeTags", 1, "claim from warm pool");
+        assertCallsAtMost(elbApi, "addTags", 2, "claim from warm pool");
+        assertCallsAtMost(elbApi, "removeTags", 1, "claim from warm pool");
+        assertCallsAtMost(elbApi, "createLoadBalancer", 1, "claim from warm pool");
+        for (RecordingElbClient.Call call : elbApi.getCalls("describeLoadBalancers")) {
+            DescribeLoadBalancersRequest request = (DescribeLoadBalancersRequest) call.getRequest();
+            assertFalse(request == null || request.getLoadBalancerNames().isEmpty(), "listed all ELBs: "+elbApi.describeCalls());
+        }
+    }
+
+    @Test
+    public void testLastControllerToStopDrainsPool() throws Exception {
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_NAME, (String) null)
+                .configure(ElbController.WARM_POOL_SIZE, 1));
+        elb.start(ImmutableList.of(loc));
+        assertAttributeEqualsEventually(ElbController.WARM_POOL_AVAILABLE, 1);
+        ElbController first = elb;
+
+        elb = app.createAndManageChild(newElbSpec()
+                .configure(ElbController.LOAD_BALANCER_NAME, (String) null)
+                .configure(ElbController.WARM_POOL_SIZE, 1));
+        elb.start(ImmutableList.of(loc));
+        assertAttributeEqualsEventually(ElbController.WARM_POOL_AVAILABLE, 1);
+        awaitQuiescence(elbApi, QUIET_PERIOD, TIMEOUT);
+
+        // the other controller still uses the pool, so it is kept at its size
+        first.stop();
+        assertEquals(getPooled().size(), 1);
+
+        elb.stop();
+        assertEquals(getPooled(), ImmutableList.of());
+        assertEquals(elbApi.getLoadBalancerNames(), ImmutableList.of());
+    }
+
+    /** The ELBs tagged as available in the pool. */
+    private List<String> getPooled() {
+        List<String> result = Lists.newArrayList();
+        for (String name : elbApi.getLoadBalancerNames()) {
+            if (elbApi.getTags(name).containsKey(ElbWarmPool.POOL_TAG)) result.add(name);
+        }
+        return result;
+    }
+}
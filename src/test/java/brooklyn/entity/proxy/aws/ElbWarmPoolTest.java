@@ -0,0 +1,212 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.Listener;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class ElbWarmPoolTest {
+
+    private static final String PROFILE = ElbWarmPool.profileOf("us-east-1", null, null, null);
+
+    private static final Function<String, CreateLoadBalancerRequest> REQUEST_FACTORY = new Function<String, CreateLoadBalancerRequest>() {
+        @Override public CreateLoadBalancerRequest apply(String elbName) {
+            return new CreateLoadBalancerRequest()
+                    .withLoadBalancerName(elbName)
+                    .withAvailabilityZones("us-east-1a")
+                    .withListeners(new Listener("HTTP", 80, 8080));
+        }};
+
+    private RecordingElbClient elbApi;
+    private AmazonElasticLoadBalancing client;
+    private ElbWarmPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        elbApi = new RecordingElbClient();
+        client = elbApi.newClient(null, "us-east-1");
+        pool = new ElbWarmPool();
+    }
+
+    @Test
+    public void testMissThenRefillThenClaim() throws Exception {
+        assertNull(pool.claim(client, PROFILE, "controller1"));
+        assertEquals(pool.getMisses(PROFILE), 1);
+
+        assertEquals(pool.refill(client, PROFILE, 2, REQUEST_FACTORY), 2);
+        List<String> pooled = getPooled();
+        assertEquals(pooled.size(), 2);
+
+        String claimed = pool.claim(client, PROFILE, "controller2");
+        assertEquals(claimed, pooled.get(0));
+        assertEquals(elbApi.getTags(claimed), ImmutableMap.of(ElbWarmPool.CLAIMED_BY_TAG, "controller2"));
+        assertEquals(pool.claim(client, PROFILE, "controller3"), pooled.get(1));
+        assertNull(pool.claim(client, PROFILE, "controller4"));
+        assertEquals(pool.getMisses(PROFILE), 2);
+    }
+
+    @Test
+    public void testRefillTopsUpToTargetSize() throws Exception {
+        pool.refill(client, PROFILE, 2, REQUEST_FACTORY);
+        pool.claim(client, PROFILE, "controller1");
+        elbApi.clearCalls();
+
+        assertEquals(pool.refill(client, PROFILE, 2, REQUEST_FACTORY), 2);
+        assertEquals(elbApi.getCalls("createLoadBalancer").size(), 1);
+        assertEquals(getPooled().size(), 2);
+
+        // already full
+        elbApi.clearCalls();
+        assertEquals(pool.refill(client, PROFILE, 2, REQUEST_FACTORY), 2);
+        assertEquals(elbApi.getCallCount(), 0, elbApi.describeCalls());
+    }
+
+    @Test
+    public void testListsPoolOnlyOnce() throws Exception {
+        pool.refill(client, PROFILE, 3, REQUEST_FACTORY);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(pool.claim(client, PROFILE, "controller"+i));
+        }
+        pool.refill(client, PROFILE, 3, REQUEST_FACTORY);
+
+        // one listing, then add tag, describe tags, swap tags for each claim
+        assertEquals(elbApi.getCalls("describeLoadBalancers").size(), 1, elbApi.describeCalls());
+        assertEquals(elbApi.getCalls("describeTags").size(), 3, elbApi.describeCalls());
+        assertEquals(elbApi.getCalls("addTags").size(), 6, elbApi.describeCalls());
+        assertEquals(elbApi.getCalls("removeTags").size(), 3, elbApi.describeCalls());
+    }
+
+    @Test
+    public void testClaimLosesToOtherManagementNodesClaim() throws Exception {
+        pool.refill(client, PROFILE, 2, REQUEST_FACTORY);
+        List<String> pooled = getPooled();
+
+        // another node has a claim in progress on the oldest
+        elbApi.setTagOutOfBand(pooled.get(0), ElbWarmPool.CLAIM_TAG_PREFIX + "other", "otherController");
+
+        assertEquals(pool.claim(client, PROFILE, "controller1"), pooled.get(1));
+        assertEquals(elbApi.getTags(pooled.get(0)), ImmutableMap.of(
+                ElbWarmPool.POOL_TAG, PROFILE,
+                ElbWarmPool.CLAIM_TAG_PREFIX + "other", "otherController"));
+    }
+
+    @Test
+    public void testClaimSkipsElbClaimedByOtherManagementNode() throws Exception {
+        pool.refill(client, PROFILE, 2, REQUEST_FACTORY);
+        List<String> pooled = getPooled();
+
+        // claimed by another node since this node listed the pool
+        elbApi.setTagOutOfBand(pooled.get(0), ElbWarmPool.POOL_TAG, null);
+        elbApi.setTagOutOfBand(pooled.get(0), ElbWarmPool.CLAIMED_BY_TAG, "otherController");
+
+        String claimed = pool.claim(client, PROFILE, "controller1");
+        assertEquals(claimed, pooled.get(1));
+        assertEquals(elbApi.getTags(pooled.get(0)), ImmutableMap.of(ElbWarmPool.CLAIMED_BY_TAG, "otherController"));
+        assertNotEquals(elbApi.getTags(claimed).get(ElbWarmPool.CLAIMED_BY_TAG), "otherController");
+    }
+
+    @Test
+    public void testIgnoresOtherProfilesAndUnpooledElbs() throws Exception {
+        String otherProfile = ElbWarmPool.profileOf("us-east-1", "internal", null, null);
+        pool.refill(client, otherProfile, 1, REQUEST_FACTORY);
+        client.createLoadBalancer(REQUEST_FACTORY.apply("unrelated"));
+
+        ElbWarmPool otherNode = new ElbWarmPool();
+        assertNull(otherNode.claim(client, PROFILE, "controller1"));
+        assertFalse(elbApi.getTags("unrelated").containsKey(ElbWarmPool.CLAIMED_BY_TAG));
+    }
+
+    @Test
+    public void testRefillDrainsSurplusNewestFirst() throws Exception {
+        pool.refill(client, PROFILE, 3, REQUEST_FACTORY);
+        List<String> pooled = getPooled();
+
+        assertEquals(pool.refill(client, PROFILE, 1, REQUEST_FACTORY), 1);
+        assertEquals(getPooled(), pooled.subList(0, 1));
+        assertFalse(elbApi.hasLoadBalancer(pooled.get(1)));
+        assertFalse(elbApi.hasLoadBalancer(pooled.get(2)));
+
+        assertEquals(pool.drain(client, PROFILE, 0), 0);
+        assertEquals(elbApi.getLoadBalancerNames(), ImmutableList.of());
+    }
+
+    @Test
+    public void testDrainLeavesElbClaimedByOtherManagementNode() throws Exception {
+        pool.refill(client, PROFILE, 2, REQUEST_FACTORY);
+        List<String> pooled = getPooled();
+
+        // claimed by another node since this node listed the pool
+        elbApi.setTagOutOfBand(pooled.get(1), ElbWarmPool.POOL_TAG, null);
+        elbApi.setTagOutOfBand(pooled.get(1), ElbWarmPool.CLAIMED_BY_TAG, "otherController");
+
+        assertEquals(pool.drain(client, PROFILE, 1), 1);
+        assertTrue(elbApi.hasLoadBalancer(pooled.get(0)));
+        assertTrue(elbApi.hasLoadBalancer(pooled.get(1)));
+    }
+
+    @Test
+    public void testDrainDeletesElbWithAbandonedClaim() throws Exception {
+        pool.refill(client, PROFILE, 3, REQUEST_FACTORY);
+        List<String> pooled = getPooled();
+
+        // claims by nodes that failed an hour ago, and one still in progress
+        long abandonedTime = System.currentTimeMillis() - ElbWarmPool.ABANDONED_CLAIM_MILLIS - 1;
+        elbApi.setTagOutOfBand(pooled.get(0), ElbWarmPool.CLAIM_TAG_PREFIX + "failed", "otherController@" + abandonedTime);
+        elbApi.setTagOutOfBand(pooled.get(1), ElbWarmPool.CLAIM_TAG_PREFIX + "current", "otherController@" + System.currentTimeMillis());
+
+        ElbWarmPool otherNode = new ElbWarmPool();
+        assertEquals(otherNode.drain(client, PROFILE, 1), 1);
+        assertFalse(elbApi.hasLoadBalancer(pooled.get(0)));
+        assertTrue(elbApi.hasLoadBalancer(pooled.get(1)));
+        assertTrue(elbApi.hasLoadBalancer(pooled.get(2)));
+    }
+
+    @Test
+    public void testRelistsAfterLostClaimAtMostOncePerInterval() throws Exception {
+        pool = new ElbWarmPool(60*1000);
+        ElbWarmPool eager = new ElbWarmPool(0);
+        pool.refill(client, PROFILE, 3, REQUEST_FACTORY);
+        eager.drain(client, PROFILE, 3);
+
+        // claimed by other nodes since both listed the pool
+        for (String elbName : getPooled()) {
+            elbApi.setTagOutOfBand(elbName, ElbWarmPool.CLAIM_TAG_PREFIX + "other", "otherController@" + System.currentTimeMillis());
+        }
+
+        // every claim is lost, but the pool was listed within the interval so is not listed again
+        elbApi.clearCalls();
+        assertNull(pool.claim(client, PROFILE, "controller1"));
+        pool.refill(client, PROFILE, 0, REQUEST_FACTORY);
+        assertEquals(elbApi.getCalls("describeLoadBalancers").size(), 0, elbApi.describeCalls());
+
+        // whereas without an interval, a lost claim re-lists the pool
+        assertNull(eager.claim(client, PROFILE, "controller2"));
+        assertEquals(elbApi.getCalls("describeLoadBalancers").size(), 1, elbApi.describeCalls());
+    }
+
+    /** The ELBs tagged as available in the pool, in creation order. */
+    private List<String> getPooled() {
+        List<String> result = Lists.newArrayList();
+        for (String name : elbApi.getLoadBalancerNames()) {
+            Map<String, String> tags = elbApi.getTags(name);
+            if (PROFILE.equals(tags.get(ElbWarmPool.POOL_TAG))) result.add(name);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,46 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class HealthCheckSettingsTest {
+
+    @Test
+    public void testSmallTimingChangesNotSignificant() throws Exception {
+        HealthCheckSettings settings = new HealthCheckSettings(10, 5, 2, 2);
+        assertFalse(new HealthCheckSettings(12, 5, 2, 2).isSignificantlyDifferentFrom(settings));
+        assertFalse(new HealthCheckSettings(9, 5, 2, 2).isSignificantlyDifferentFrom(settings));
+        assertFalse(settings.isSignificantlyDifferentFrom(settings));
+    }
+
+    @Test
+    public void testLargeTimingChangesSignificant() throws Exception {
+        HealthCheckSettings settings = new HealthCheckSettings(10, 5, 2, 2);
+        assertTrue(new HealthCheckSettings(13, 5, 2, 2).isSignificantlyDifferentFrom(settings));
+        assertTrue(settings.isSignificantlyDifferentFrom(new HealthCheckSettings(13, 5, 2, 2)));
+        assertTrue(new HealthCheckSettings(10, 7, 2, 2).isSignificantlyDifferentFrom(settings));
+
+        // a change of one second is significant for short timings
+        assertTrue(new HealthCheckSettings(10, 3, 2, 2).isSignificantlyDifferentFrom(new HealthCheckSettings(10, 2, 2, 2)));
+    }
+
+    @Test
+    public void testAnyThresholdChangeSignificant() throws Exception {
+        HealthCheckSettings settings = new HealthCheckSettings(10, 5, 2, 2);
+        assertTrue(new HealthCheckSettings(10, 5, 3, 2).isSignificantlyDifferentFrom(settings));
+        assertTrue(new HealthCheckSettings(10, 5, 2, 3).isSignificantlyDifferentFrom(settings));
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+        HealthCheckSettings settings = new HealthCheckSettings(10, 5, 2, 3);
+        assertEquals(new HealthCheckSettings(10, 5, 2, 3), settings);
+        assertEquals(new HealthCheckSettings(10, 5, 2, 3).hashCode(), settings.hashCode());
+        assertNotEquals(new HealthCheckSettings(10, 5, 3, 2), settings);
+        assertNotEquals(new HealthCheckSettings(11, 5, 2, 3), settings);
+    }
+}
@@ -0,0 +1,110 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class HealthCheckTunerTest {
+
+    private static final HealthCheckSettings MIN = new HealthCheckSettings(5, 2, 2, 2);
+    private static final HealthCheckSettings MAX = new HealthCheckSettings(60, 20, 10, 10);
+
+    private final HealthCheckTuner tuner = new HealthCheckTuner(MIN, MAX);
+
+    @Test
+    public void testTimeoutFollowsTailLatency() throws Exception {
+        HealthCheckSettings result = tuner.tune(new HealthCheckSettings(30, 5, 2, 2), ImmutableList.of(stats(1000, 2000)), 0);
+        assertEquals(result.getTimeout(), 6);
+        assertEquals(result.getInterval(), 12);
+    }
+
+    @Test
+    public void testTimingsClampedToBounds() throws Exception {
+        HealthCheckSettings slow = tuner.tune(new HealthCheckSettings(30, 5, 2, 2), ImmutableList.of(stats(10000, 30000)), 0);
+        assertEquals(slow.getTimeout(), 20);
+        assertEquals(slow.getInterval(), 40);
+
+        HealthCheckSettings fast = tuner.tune(new HealthCheckSettings(30, 5, 2, 2), ImmutableList.of(stats(5, 10)), 0);
+        assertEquals(fast.getTimeout(), 2);
+        assertEquals(fast.getInterval(), 5);
+    }
+
+    @Test
+    public void testIntervalAlwaysExceedsTimeout() throws Exception {
+        HealthCheckTuner narrow = new HealthCheckTuner(MIN, new HealthCheckSettings(10, 20, 10, 10));
+
+        // interval capped at 10, so the timeout is reduced below it
+        HealthCheckSettings result = narrow.tune(new HealthCheckSettings(10, 5, 2, 2), ImmutableList.of(stats(2000, 5000)), 0);
+        assertEquals(result.getInterval(), 10);
+        assertEquals(result.getTimeout(), 9);
+
+        // with no stats, an interval not above the current timeout is raised past it
+        HealthCheckSettings raised = tuner.tune(new HealthCheckSettings(5, 8, 2, 2), ImmutableList.<BackendStats>of(), 0);
+        assertEquals(raised.getInterval(), 9);
+        assertEquals(raised.getTimeout(), 8);
+    }
+
+    @Test
+    public void testNoStatsKeepsCurrentTimings() throws Exception {
+        HealthCheckSettings result = tuner.tune(new HealthCheckSettings(30, 5, 2, 2), ImmutableList.<BackendStats>of(), 0);
+        assertEquals(result.getInterval(), 30);
+        assertEquals(result.getTimeout(), 5);
+    }
+
+    @Test
+    public void testFalseFailuresRaiseThresholdsUpToMax() throws Exception {
+        HealthCheckSettings result = tuner.tune(new HealthCheckSettings(30, 5, 3, 9), ImmutableList.<BackendStats>of(), 1);
+        assertEquals(result.getHealthyThreshold(), 4);
+        assertEquals(result.getUnhealthyThreshold(), 10);
+
+        result = tuner.tune(result, ImmutableList.<BackendStats>of(), 2);
+        assertEquals(result.getHealthyThreshold(), 5);
+        assertEquals(result.getUnhealthyThreshold(), 10);
+    }
+
+    @Test
+    public void testThresholdsDecayToMin() throws Exception {
+        HealthCheckSettings result = tuner.tune(new HealthCheckSettings(30, 5, 3, 3), ImmutableList.<BackendStats>of(), 0);
+        assertEquals(result.getHealthyThreshold(), 2);
+        assertEquals(result.getUnhealthyThreshold(), 2);
+
+        result = tuner.tune(result, ImmutableList.<BackendStats>of(), 0);
+        assertEquals(result.getHealthyThreshold(), 2);
+        assertEquals(result.getUnhealthyThreshold(), 2);
+    }
+
+    @Test
+    public void testSpikyLatencyRaisesOnlyUnhealthyThreshold() throws Exception {
+        List<BackendStats> stats = ImmutableList.of(stats(10, 100), stats(10, 100), stats(10, 20));
+        HealthCheckSettings result = tuner.tune(new HealthCheckSettings(30, 5, 3, 3), stats, 0);
+        assertEquals(result.getHealthyThreshold(), 2);
+        assertEquals(result.getUnhealthyThreshold(), 4);
+
+        // a minority of spiky backends is not enough
+        List<BackendStats> mostlySteady = ImmutableList.of(stats(10, 100), stats(10, 20), stats(10, 20));
+        assertEquals(tuner.tune(new HealthCheckSettings(30, 5, 3, 3), mostlySteady, 0).getUnhealthyThreshold(), 2);
+    }
+
+    @Test
+    public void testPoolTailIgnoresSingleSlowBackend() throws Exception {
+        ImmutableList.Builder<BackendStats> stats = ImmutableList.builder();
+        for (int i = 0; i < 19; i++) {
+            stats.add(stats(100, 1000));
+        }
+        stats.add(stats(100, 30000));
+        assertEquals(tuner.poolTailLatencyMillis(stats.build()), 1000.0, 0.001);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testRejectsInvertedBounds() throws Exception {
+        new HealthCheckTuner(MAX, MIN);
+    }
+
+    private static BackendStats stats(double p50LatencyMillis, double p99LatencyMillis) {
+        return new BackendStats(100, 0, p50LatencyMillis, p50LatencyMillis, p99LatencyMillis, p99LatencyMillis);
+    }
+}
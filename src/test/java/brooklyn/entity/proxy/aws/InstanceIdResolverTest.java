@@ -0,0 +1,106 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class InstanceIdResolverTest {
+
+    private static class RecordingLookup implements InstanceIdResolver.InstanceLookup {
+        final Map<String, String> instances = Maps.newHashMap();
+        final List<List<String>> calls = Lists.newArrayList();
+
+        @Override
+        public Map<String, String> lookup(String filterName, Collection<String> values) {
+            calls.add(ImmutableList.<String>builder().add(filterName).addAll(values).build());
+            Map<String, String> result = Maps.newHashMap();
+            for (String value : values) {
+                if (instances.containsKey(value)) result.put(value, instances.get(value));
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testResolvesManyMembersInOneCall() throws Exception {
+        RecordingLookup lookup = new RecordingLookup();
+        Map<String, InstanceIdResolver.Key> keys = Maps.newLinkedHashMap();
+        for (int i = 0; i < 50; i++) {
+            lookup.instances.put("10.0.0."+i, "i-"+i);
+            keys.put("member"+i, ipKey("10.0.0."+i));
+        }
+        InstanceIdResolver resolver = new InstanceIdResolver(lookup, 0);
+
+        Map<String, String> result = resolver.resolve(keys);
+
+        assertEquals(result.size(), 50);
+        assertEquals(result.get("member7"), "i-7");
+        assertEquals(lookup.calls.size(), 1);
+        assertEquals(resolver.getCached("member7", ipKey("10.0.0.7")), "i-7");
+    }
+
+    @Test
+    public void testOneCallPerFilterAndBatch() throws Exception {
+        RecordingLookup lookup = new RecordingLookup();
+        Map<String, InstanceIdResolver.Key> keys = Maps.newLinkedHashMap();
+        for (int i = 0; i < InstanceIdResolver.MAX_FILTER_VALUES + 1; i++) {
+            keys.put("member"+i, ipKey("10.0."+(i / 256)+"."+(i % 256)));
+        }
+        keys.put("named", new InstanceIdResolver.Key(InstanceIdResolver.PRIVATE_DNS_NAME, "ip-10-0-9-9.ec2.internal", "loc1"));
+        new InstanceIdResolver(lookup, 0).resolve(keys);
+
+        assertEquals(lookup.calls.size(), 3);
+    }
+
+    @Test
+    public void testCachedUntilKeyChanges() throws Exception {
+        RecordingLookup lookup = new RecordingLookup();
+        lookup.instances.put("10.0.0.1", "i-1");
+        lookup.instances.put("10.0.0.2", "i-2");
+        InstanceIdResolver resolver = new InstanceIdResolver(lookup, 0);
+
+        resolver.resolve(ImmutableMap.of("member", ipKey("10.0.0.1")));
+        resolver.resolve(ImmutableMap.of("member", ipKey("10.0.0.1")));
+        assertEquals(lookup.calls.size(), 1);
+
+        // moved to a new location, which reused the address
+        InstanceIdResolver.Key moved = new InstanceIdResolver.Key(InstanceIdResolver.PRIVATE_IP_ADDRESS, "10.0.0.1", "loc2");
+        assertNull(resolver.getCached("member", moved));
+        resolver.resolve(ImmutableMap.of("member", moved));
+        assertEquals(lookup.calls.size(), 2);
+
+        assertEquals(resolver.resolve(ImmutableMap.of("member", ipKey("10.0.0.2"))), ImmutableMap.of("member", "i-2"));
+        assertEquals(lookup.calls.size(), 3);
+    }
+
+    @Test
+    public void testRetriesUnresolvedOnlyAfterRetryPeriod() throws Exception {
+        RecordingLookup lookup = new RecordingLookup();
+        InstanceIdResolver resolver = new InstanceIdResolver(lookup, 60*1000);
+
+        assertEquals(resolver.resolve(ImmutableMap.of("member", ipKey("10.0.0.1"))), ImmutableMap.of());
+        lookup.instances.put("10.0.0.1", "i-1");
+        assertEquals(resolver.resolve(ImmutableMap.of("member", ipKey("10.0.0.1"))), ImmutableMap.of());
+        assertEquals(lookup.calls.size(), 1);
+
+        InstanceIdResolver eager = new InstanceIdResolver(lookup, 0);
+        lookup.instances.remove("10.0.0.1");
+        eager.resolve(ImmutableMap.of("member", ipKey("10.0.0.1")));
+        lookup.instances.put("10.0.0.1", "i-1");
+        assertEquals(eager.resolve(ImmutableMap.of("member", ipKey("10.0.0.1"))), ImmutableMap.of("member", "i-1"));
+    }
+
+    private static InstanceIdResolver.Key ipKey(String address) {
+        return new InstanceIdResolver.Key(InstanceIdResolver.PRIVATE_IP_ADDRESS, address, "loc1");
+    }
+}
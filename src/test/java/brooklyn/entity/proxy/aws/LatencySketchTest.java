@@ -0,0 +1,64 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class LatencySketchTest {
+
+    private static void assertWithinRelativeError(double actual, double expected, double relativeError) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeError, "actual="+actual+"; expected="+expected);
+    }
+
+    @Test
+    public void testEmptySketch() throws Exception {
+        LatencySketch sketch = new LatencySketch();
+        assertEquals(sketch.getCount(), 0);
+        assertTrue(Double.isNaN(sketch.getMean()));
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+    }
+
+    @Test
+    public void testQuantilesWithinRelativeAccuracy() throws Exception {
+        LatencySketch sketch = new LatencySketch(0.01);
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+        assertEquals(sketch.getCount(), 10000);
+        assertWithinRelativeError(sketch.getMean(), 5000.5, 0.0001);
+        assertWithinRelativeError(sketch.getQuantile(0.5), 5000, 0.01);
+        assertWithinRelativeError(sketch.getQuantile(0.9), 9000, 0.01);
+        assertWithinRelativeError(sketch.getQuantile(0.99), 9900, 0.01);
+        assertEquals(sketch.getQuantile(1), 10000d);
+    }
+
+    @Test
+    public void testMergeEquivalentToAddingAll() throws Exception {
+        Random random = new Random(1234);
+        LatencySketch all = new LatencySketch();
+        LatencySketch part1 = new LatencySketch();
+        LatencySketch part2 = new LatencySketch();
+        for (int i = 0; i < 5000; i++) {
+            double val = Math.exp(random.nextGaussian() * 2 + 3);
+            all.add(val);
+            ((i % 2 == 0) ? part1 : part2).add(val);
+        }
+        part1.merge(part2);
+
+        assertEquals(part1.getCount(), all.getCount());
+        for (double q : new double[] {0.1, 0.5, 0.9, 0.99, 0.999}) {
+            assertEquals(part1.getQuantile(q), all.getQuantile(q), "q="+q);
+        }
+    }
+
+    @Test
+    public void testIgnoresNegativeValues() throws Exception {
+        LatencySketch sketch = new LatencySketch();
+        sketch.add(-1);
+        sketch.add(Double.NaN);
+        assertEquals(sketch.getCount(), 0);
+    }
+}
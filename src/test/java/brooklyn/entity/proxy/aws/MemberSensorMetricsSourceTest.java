@@ -0,0 +1,72 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.brooklyn.api.entity.Entity;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class MemberSensorMetricsSourceTest extends BrooklynAppUnitTestSupport {
+
+    private static final AttributeSensor<Long> REQUESTS = Sensors.newLongSensor(MemberSensorMetricsSource.DEFAULT_REQUEST_COUNT_SENSOR);
+    private static final AttributeSensor<Long> ERRORS = Sensors.newLongSensor(MemberSensorMetricsSource.DEFAULT_ERROR_COUNT_SENSOR);
+    private static final AttributeSensor<Long> PROCESSING_TIME = Sensors.newLongSensor(MemberSensorMetricsSource.DEFAULT_TOTAL_PROCESSING_TIME_SENSOR);
+
+    private TestEntity member;
+    private MemberSensorMetricsSource source;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        member = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        source = new MemberSensorMetricsSource();
+    }
+
+    @Test
+    public void testReportsDeltasSincePreviousCall() throws Exception {
+        setCounters(100, 1, 1000);
+        assertEquals(source.getStats("consumer", ImmutableList.of(member)), ImmutableMap.of());
+
+        setCounters(150, 6, 3000);
+        BackendStats stats = source.getStats("consumer", ImmutableList.of(member)).get(member);
+        assertEquals(stats.getRequestCount(), 50);
+        assertEquals(stats.getErrorCount(), 5);
+        assertEquals(stats.getMeanLatencyMillis(), 40.0, 0.001);
+
+        // no new requests
+        assertEquals(source.getStats("consumer", ImmutableList.of(member)), ImmutableMap.of());
+    }
+
+    @Test
+    public void testEachConsumerGetsEveryDelta() throws Exception {
+        setCounters(100, 0, 1000);
+        source.getStats("healthCheck", ImmutableList.of(member));
+        source.getStats("outlierEjection", ImmutableList.of(member));
+
+        setCounters(200, 0, 2000);
+        assertEquals(source.getStats("outlierEjection", ImmutableList.of(member)).get(member).getRequestCount(), 100);
+        setCounters(300, 0, 3000);
+        assertEquals(source.getStats("outlierEjection", ImmutableList.of(member)).get(member).getRequestCount(), 100);
+
+        // the slower consumer still sees the whole period since its previous call
+        Map<Entity, BackendStats> stats = source.getStats("healthCheck", ImmutableList.of(member));
+        assertEquals(stats.get(member).getRequestCount(), 200);
+    }
+
+    private void setCounters(long requests, long errors, long processingTime) {
+        member.sensors().set(REQUESTS, requests);
+        member.sensors().set(ERRORS, errors);
+        member.sensors().set(PROCESSING_TIME, processingTime);
+    }
+}
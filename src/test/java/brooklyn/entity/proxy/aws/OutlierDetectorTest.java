@@ -0,0 +1,79 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class OutlierDetectorTest {
+
+    private final OutlierDetector detector = new OutlierDetector(3.0, 50, 0.1, 20, 3);
+
+    private static BackendStats stats(long requests, long errors, double p99) {
+        return new BackendStats(requests, errors, p99 / 2, p99 / 3, p99 / 1.5, p99);
+    }
+
+    @Test
+    public void testFindsSlowBackend() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.of(
+                "a", stats(100, 0, 100),
+                "b", stats(100, 0, 120),
+                "c", stats(100, 0, 110),
+                "d", stats(100, 0, 900)));
+        assertEquals(ImmutableList.copyOf(outliers.keySet()), ImmutableList.of("d"));
+        assertTrue(outliers.get("d").contains("p99"), outliers.get("d"));
+    }
+
+    @Test
+    public void testFindsErroringBackend() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.of(
+                "a", stats(100, 1, 100),
+                "b", stats(100, 0, 100),
+                "c", stats(100, 60, 100)));
+        assertEquals(ImmutableList.copyOf(outliers.keySet()), ImmutableList.of("c"));
+    }
+
+    @Test
+    public void testPoolWideSlowdownIsNotAnOutlier() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.of(
+                "a", stats(100, 0, 2000),
+                "b", stats(100, 0, 2200),
+                "c", stats(100, 0, 2100)));
+        assertEquals(outliers, ImmutableMap.of());
+    }
+
+    @Test
+    public void testIgnoresSmallAbsoluteDifferences() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.of(
+                "a", stats(100, 0, 2),
+                "b", stats(100, 0, 2),
+                "c", stats(100, 0, 20)));
+        assertEquals(outliers, ImmutableMap.of());
+    }
+
+    @Test
+    public void testRequiresEnoughComparableBackends() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.of(
+                "a", stats(100, 0, 100),
+                "b", stats(5, 0, 100),
+                "c", stats(100, 0, 900)));
+        assertEquals(outliers, ImmutableMap.of());
+    }
+
+    @Test
+    public void testOrdersBySeverity() throws Exception {
+        Map<String, String> outliers = detector.findOutliers(ImmutableMap.<String, BackendStats>builder()
+                .put("a", stats(100, 0, 100))
+                .put("b", stats(100, 0, 100))
+                .put("c", stats(100, 0, 100))
+                .put("d", stats(100, 0, 500))
+                .put("e", stats(100, 0, 1000))
+                .build());
+        assertEquals(ImmutableList.copyOf(outliers.keySet()), ImmutableList.of("e", "d"));
+    }
+}
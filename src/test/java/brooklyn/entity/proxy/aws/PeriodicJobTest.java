@@ -0,0 +1,112 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.test.Asserts;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.testng.annotations.Test;
+
+public class PeriodicJobTest extends BrooklynAppUnitTestSupport {
+
+    private static final Duration SHORT_WAIT = Duration.millis(250);
+
+    @Test
+    public void testReschedulesAfterReturnedDelay() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        PeriodicJob job = new PeriodicJob((EntityInternal) app, "test", new Callable<Duration>() {
+            @Override public Duration call() {
+                // a long delay after the third run, so the count stays put
+                return (runs.incrementAndGet() < 3) ? Duration.millis(10) : Duration.ONE_HOUR;
+            }});
+        job.start(Duration.ZERO);
+
+        assertEqualsEventually(runs, 3);
+        Time.sleep(SHORT_WAIT);
+        assertEquals(runs.get(), 3);
+        assertTrue(job.isRunning());
+        job.stop();
+    }
+
+    @Test
+    public void testStopsWhenBodyReturnsNull() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final PeriodicJob job = new PeriodicJob((EntityInternal) app, "test", new Callable<Duration>() {
+            @Override public Duration call() {
+                return (runs.incrementAndGet() < 2) ? Duration.millis(10) : null;
+            }});
+        job.start(Duration.ZERO);
+
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertFalse(job.isRunning());
+            }});
+        Time.sleep(SHORT_WAIT);
+        assertEquals(runs.get(), 2);
+    }
+
+    @Test
+    public void testStopCancelsFurtherRuns() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        PeriodicJob job = new PeriodicJob((EntityInternal) app, "test", new Callable<Duration>() {
+            @Override public Duration call() {
+                runs.incrementAndGet();
+                return Duration.millis(10);
+            }});
+        job.start(Duration.ZERO);
+        assertEqualsEventually(runs, 2);
+
+        job.stop();
+        assertFalse(job.isRunning());
+        int runsWhenStopped = runs.get();
+        Time.sleep(SHORT_WAIT);
+        // allow for a run that was already in progress when stopped
+        assertTrue(runs.get() <= runsWhenStopped + 1, "runs="+runs.get()+"; whenStopped="+runsWhenStopped);
+    }
+
+    @Test
+    public void testRetriesAfterFailureWithPreviousDelay() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        PeriodicJob job = new PeriodicJob((EntityInternal) app, "test", new Callable<Duration>() {
+            @Override public Duration call() {
+                if (runs.incrementAndGet() < 3) throw new IllegalStateException("simulated failure");
+                return Duration.ONE_HOUR;
+            }});
+        job.start(Duration.millis(10));
+
+        assertEqualsEventually(runs, 3);
+        assertTrue(job.isRunning());
+        job.stop();
+    }
+
+    @Test
+    public void testStartIsIdempotent() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        PeriodicJob job = new PeriodicJob((EntityInternal) app, "test", new Callable<Duration>() {
+            @Override public Duration call() {
+                runs.incrementAndGet();
+                return Duration.ONE_HOUR;
+            }});
+        job.start(Duration.ZERO);
+        job.start(Duration.ZERO);
+
+        assertEqualsEventually(runs, 1);
+        Time.sleep(SHORT_WAIT);
+        assertEquals(runs.get(), 1);
+        job.stop();
+    }
+
+    private static void assertEqualsEventually(final AtomicInteger actual, final int expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertEquals(actual.get(), expected);
+            }});
+    }
+}
@@ -0,0 +1,144 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class PropagationTrackerTest {
+
+    private static final long SLO = 60*1000;
+
+    private List<String> propagated;
+    private List<String> breached;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        propagated = Lists.newArrayList();
+        breached = Lists.newArrayList();
+    }
+
+    private PropagationTracker newTracker(boolean confirmHealth) {
+        PropagationTracker result = new PropagationTracker(confirmHealth, SLO, new PropagationTracker.Listener() {
+            @Override public void onPropagated(String instanceId, boolean joined, long latencyMillis) {
+                propagated.add((joined ? "join " : "leave ")+instanceId+" "+latencyMillis);
+            }
+            @Override public void onSloBreached(String instanceId, boolean joined) {
+                breached.add((joined ? "join " : "leave ")+instanceId);
+            }});
+        result.start(ImmutableSet.of("i-1"));
+        return result;
+    }
+
+    @Test
+    public void testJoinAndLeaveTimedUntilReload() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-2"), 1000, 1000);
+        assertEquals(tracker.getPending(), ImmutableSet.of("i-1", "i-2"));
+
+        tracker.onReloaded(ImmutableSet.of("i-2"), ImmutableSet.<String>of(), 3500);
+        assertEquals(propagated, ImmutableList.of("join i-2 2500", "leave i-1 2500"));
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+        assertEquals(tracker.getLatencySummary().get("count"), 2.0);
+        assertEquals(tracker.getLatencySummary().get("max"), 2500.0, 2500*0.02);
+        assertEquals(breached, ImmutableList.of());
+    }
+
+    @Test
+    public void testChangeAlreadyReloadedCompletesOnEvent() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        // the reload runs before the targets event is delivered
+        tracker.onReloaded(ImmutableSet.of("i-1", "i-2"), ImmutableSet.<String>of(), 1000);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 900, 1100);
+        assertEquals(propagated, ImmutableList.of("join i-2 200"));
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+
+        // a leave the reload did not apply is still pending
+        tracker.onTargetsChanged(ImmutableSet.of("i-2"), 2000, 2000);
+        assertEquals(tracker.getPending(), ImmutableSet.of("i-1"));
+    }
+
+    @Test
+    public void testExcludedJoinNoLongerTimed() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 1000, 1000);
+        tracker.onReloaded(ImmutableSet.of("i-1"), ImmutableSet.of("i-2"), 2000);
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+        assertEquals(propagated, ImmutableList.of());
+        assertNull(tracker.getLatencySummary());
+    }
+
+    @Test
+    public void testOverdueChangeCountedOnceWithoutReload() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 1000, 1000);
+
+        tracker.checkOverdue(1000 + SLO);
+        assertEquals(breached, ImmutableList.of());
+        tracker.checkOverdue(1001 + SLO);
+        assertEquals(breached, ImmutableList.of("join i-2"));
+        tracker.checkOverdue(2000 + SLO);
+
+        // completing late does not count it again
+        tracker.onReloaded(ImmutableSet.of("i-1", "i-2"), ImmutableSet.<String>of(), 3000 + SLO);
+        assertEquals(breached, ImmutableList.of("join i-2"));
+        assertEquals(propagated, ImmutableList.of("join i-2 "+(2000 + SLO)));
+    }
+
+    @Test
+    public void testLateCompletionCountedAsBreach() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 1000, 1000);
+        tracker.onReloaded(ImmutableSet.of("i-1", "i-2"), ImmutableSet.<String>of(), 2000 + SLO);
+        assertEquals(breached, ImmutableList.of("join i-2"));
+    }
+
+    @Test
+    public void testGivesUpAfterAnHour() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 1000, 1000);
+        tracker.checkOverdue(1001 + PropagationTracker.GIVE_UP_MILLIS);
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+        assertEquals(breached, ImmutableList.of("join i-2"));
+    }
+
+    @Test
+    public void testConfirmHealthWaitsForInService() throws Exception {
+        PropagationTracker tracker = newTracker(true);
+        tracker.onTargetsChanged(ImmutableSet.of("i-2"), 1000, 1000);
+        assertFalse(tracker.isAwaitingHealth());
+
+        tracker.onReloaded(ImmutableSet.of("i-2"), ImmutableSet.<String>of(), 2000);
+        assertTrue(tracker.isAwaitingHealth());
+        assertEquals(propagated, ImmutableList.of());
+
+        tracker.onHealthReported(ImmutableMap.of("i-2", "OutOfService"), 3000);
+        assertEquals(tracker.getPending(), ImmutableSet.of("i-2"));
+        assertEquals(propagated, ImmutableList.of("leave i-1 2000"));
+
+        tracker.onHealthReported(ImmutableMap.of("i-2", "InService"), 4000);
+        assertFalse(tracker.isAwaitingHealth());
+        assertEquals(propagated, ImmutableList.of("leave i-1 2000", "join i-2 3000"));
+    }
+
+    @Test
+    public void testStopForgetsPendingChanges() throws Exception {
+        PropagationTracker tracker = newTracker(false);
+        tracker.onTargetsChanged(ImmutableSet.of("i-1", "i-2"), 1000, 1000);
+        tracker.stop();
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+
+        tracker.onTargetsChanged(ImmutableSet.of("i-3"), 2000, 2000);
+        assertEquals(tracker.getPending(), ImmutableSet.of());
+    }
+}
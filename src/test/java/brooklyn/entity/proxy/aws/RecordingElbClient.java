@@ -0,0 +1,527 @@
+package brooklyn.entity.proxy.aws;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.location.jclouds.JcloudsLocation;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancing.model.AddTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.ConfigureHealthCheckRequest;
+import com.amazonaws.services.elasticloadbalancing.model.ConfigureHealthCheckResult;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerListenersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerPolicyRequest;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.CreateLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerListenersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerPolicyRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeleteLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeregisterInstancesFromLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeregisterInstancesFromLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthResult;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersResult;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DescribeTagsResult;
+import com.amazonaws.services.elasticloadbalancing.model.DisableAvailabilityZonesForLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DuplicateLoadBalancerNameException;
+import com.amazonaws.services.elasticloadbalancing.model.DuplicatePolicyNameException;
+import com.amazonaws.services.elasticloadbalancing.model.EnableAvailabilityZonesForLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.HealthCheck;
+import com.amazonaws.services.elasticloadbalancing.model.Instance;
+import com.amazonaws.services.elasticloadbalancing.model.InstanceState;
+import com.amazonaws.services.elasticloadbalancing.model.InvalidConfigurationRequestException;
+import com.amazonaws.services.elasticloadbalancing.model.Listener;
+import com.amazonaws.services.elasticloadbalancing.model.ListenerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.ListenerNotFoundException;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
+import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerNotFoundException;
+import com.amazonaws.services.elasticloadbalancing.model.Policies;
+import com.amazonaws.services.elasticloadbalancing.model.PolicyNotFoundException;
+import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerResult;
+import com.amazonaws.services.elasticloadbalancing.model.RemoveTagsRequest;
+import com.amazonaws.services.elasticloadbalancing.model.SetLoadBalancerListenerSSLCertificateRequest;
+import com.amazonaws.services.elasticloadbalancing.model.SetLoadBalancerPoliciesOfListenerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.Tag;
+import com.amazonaws.services.elasticloadbalancing.model.TagDescription;
+import com.amazonaws.services.elasticloadbalancing.model.TagKeyOnly;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * An in-memory stand-in for the ELB API, which records every call made through it.
+ *
+ * It keeps enough state (load balancers, their listeners, availability zones, health check and
+ * registered instances) for {@link ElbController} to run against it offline. Calls it does not
+ * model are recorded and return an empty result.
+ *
+ * Inject it with {@link ElbController#ELB_CLIENT_FACTORY}; see {@link ApiCallBudgets} for asserting
+ * on the recorded calls.
+ */
+public class RecordingElbClient implements ElbClientFactory {
+
+    public static class Call {
+        private final String operation;
+        private final Object request;
+        private final long startTime;
+        private final Duration duration;
+        private final Throwable error;
+
+        Call(String operation, Object request, long startTime, Duration duration, Throwable error) {
+            this.operation = operation;
+            this.request = request;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.error = error;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public Object getRequest() {
+            return request;
+        }
+
+        /** Time (in utc millis) the call was made. */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).omitNullValues()
+                    .add("operation", operation)
+                    .add("duration", duration)
+                    .add("error", error)
+                    .add("request", request)
+                    .toString();
+        }
+    }
+
+    /** The VPC of every load balancer created with subnets. */
+    public static final String VPC_ID = "vpc-recording";
+
+    /** Operations of the client that do not call the API, so are not recorded. */
+    private static final Set<String> LOCAL_OPERATIONS = ImmutableSet.of(
+            "shutdown", "setEndpoint", "setRegion", "getCachedResponseMetadata");
+
+    private final List<Call> calls = new CopyOnWriteArrayList<Call>();
+    private final Map<String, LoadBalancerDescription> loadBalancers = Maps.newLinkedHashMap();
+    private final Map<String, Map<String, String>> tags = Maps.newHashMap();
+    private final Set<String> outOfServiceInstanceIds = Sets.newConcurrentHashSet();
+    private final AtomicInteger dnsCounter = new AtomicInteger();
+
+    @Override
+    public AmazonElasticLoadBalancing newClient(JcloudsLocation loc, String regionName) {
+        return (AmazonElasticLoadBalancing) Proxy.newProxyInstance(
+                AmazonElasticLoadBalancing.class.getClassLoader(),
+                new Class<?>[] {AmazonElasticLoadBalancing.class},
+                new InvocationHandler() {
+                    @Override public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return RecordingElbClient.this.invoke(method, args);
+                    }});
+    }
+
+    public List<Call> getCalls() {
+        return ImmutableList.copyOf(calls);
+    }
+
+    public List<Call> getCalls(String operation) {
+        List<Call> result = Lists.newArrayList();
+        for (Call call : calls) {
+            if (call.getOperation().equals(operation)) result.add(call);
+        }
+        return result;
+    }
+
+    public int getCallCount() {
+        return calls.size();
+    }
+
+    public void clearCalls() {
+        calls.clear();
+    }
+
+    public String describeCalls() {
+        return calls.size() + " call(s): " + Joiner.on(", ").join(Iterables.transform(calls, new Function<Call, String>() {
+            @Override public String apply(Call input) {
+                return input.getOperation() + "(" + input.getDuration() + ")";
+            }}));
+    }
+
+    public synchronized List<String> getLoadBalancerNames() {
+        return ImmutableList.copyOf(loadBalancers.keySet());
+    }
+
+    public synchronized boolean hasLoadBalancer(String elbName) {
+        return loadBalancers.containsKey(elbName);
+    }
+
+    public synchronized Set<String> getRegisteredInstanceIds(String elbName) {
+        Set<String> result = Sets.newLinkedHashSet();
+        for (Instance instance : getOrFail(elbName).getInstances()) {
+            result.add(instance.getInstanceId());
+        }
+        return result;
+    }
+
+    public synchronized List<Listener> getListeners(String elbName) {
+        List<Listener> result = Lists.newArrayList();
+        for (ListenerDescription listener : getOrFail(elbName).getListenerDescriptions()) {
+            result.add(listener.getListener());
+        }
+        return result;
+    }
+
+    public synchronized List<String> getPolicyNames(String elbName) {
+        return ImmutableList.copyOf(getOrFail(elbName).getPolicies().getOtherPolicies());
+    }
+
+    public synchronized List<String> getListenerPolicyNames(String elbName, int loadBalancerPort) {
+        return ImmutableList.copyOf(getListenerOrFail(getOrFail(elbName), loadBalancerPort).getPolicyNames());
+    }
+
+    /** Simulates a policy created and applied to the listener outside of Brooklyn, without recording a call. */
+    public synchronized void addListenerPolicyOutOfBand(String elbName, int loadBalancerPort, String policyName) {
+        LoadBalancerDescription lb = getOrFail(elbName);
+        lb.getPolicies().getOtherPolicies().add(policyName);
+        ListenerDescription listener = getListenerOrFail(lb, loadBalancerPort);
+        setListenerPolicyNames(lb, loadBalancerPort, ImmutableList.<String>builder().addAll(listener.getPolicyNames()).add(policyName).build());
+    }
+
+    public synchronized Map<String, String> getTags(String elbName) {
+        getOrFail(elbName);
+        return ImmutableMap.copyOf(tags.get(elbName));
+    }
+
+    /** Simulates a tag change made outside of Brooklyn (e.g. by another management node), without recording a call. */
+    public synchronized void setTagOutOfBand(String elbName, String key, @Nullable String value) {
+        getOrFail(elbName);
+        if (value == null) {
+            tags.get(elbName).remove(key);
+        } else {
+            tags.get(elbName).put(key, value);
+        }
+    }
+
+    /** Simulates a change made outside of Brooklyn, without recording a call. */
+    public synchronized void deregisterOutOfBand(String elbName, String instanceId) {
+        getOrFail(elbName).getInstances().remove(new Instance(instanceId));
+    }
+
+    /** Simulates the ELB being deleted outside of Brooklyn, without recording a call. */
+    public synchronized void deleteOutOfBand(String elbName) {
+        getOrFail(elbName);
+        loadBalancers.remove(elbName);
+        tags.remove(elbName);
+    }
+
+    public synchronized HealthCheck getHealthCheck(String elbName) {
+        return getOrFail(elbName).getHealthCheck();
+    }
+
+    /** Simulates a health check change made outside of Brooklyn, without recording a call. */
+    public synchronized void setHealthCheckIntervalOutOfBand(String elbName, int interval) {
+        HealthCheck healthCheck = getOrFail(elbName).getHealthCheck();
+        getOrFail(elbName).setHealthCheck(new HealthCheck()
+                .withTarget(healthCheck.getTarget())
+                .withInterval(interval)
+                .withTimeout(healthCheck.getTimeout())
+                .withHealthyThreshold(healthCheck.getHealthyThreshold())
+                .withUnhealthyThreshold(healthCheck.getUnhealthyThreshold()));
+    }
+
+    /** Whether the instance is reported as OutOfService (rather than InService) by describeInstanceHealth. */
+    public void setOutOfService(String instanceId, boolean val) {
+        if (val) {
+            outOfServiceInstanceIds.add(instanceId);
+        } else {
+            outOfServiceInstanceIds.remove(instanceId);
+        }
+    }
+
+    protected Object invoke(Method method, Object[] args) throws Throwable {
+        String operation = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            try {
+                return method.invoke(this, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        if (LOCAL_OPERATIONS.contains(operation)) {
+            return null;
+        }
+
+        Object request = (args != null && args.length > 0) ? args[0] : null;
+        long startTime = System.currentTimeMillis();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        Throwable error = null;
+        try {
+            return handle(operation, request, method.getReturnType());
+        } catch (Throwable t) {
+            error = t;
+            throw t;
+        } finally {
+            calls.add(new Call(operation, request, startTime, Duration.nanos(stopwatch.elapsed(TimeUnit.NANOSECONDS)), error));
+        }
+    }
+
+    protected synchronized Object handle(String operation, Object request, Class<?> resultType) throws Exception {
+        if ("createLoadBalancer".equals(operation)) {
+            CreateLoadBalancerRequest req = (CreateLoadBalancerRequest) request;
+            String name = req.getLoadBalancerName();
+            if (loadBalancers.containsKey(name)) throw new DuplicateLoadBalancerNameException("Load balancer "+name+" already exists");
+            String dnsName = name + "-" + dnsCounter.incrementAndGet() + ".us-east-1.elb.amazonaws.com";
+            List<ListenerDescription> listeners = Lists.newArrayList();
+            for (Listener listener : req.getListeners()) {
+                listeners.add(new ListenerDescription().withListener(listener).withPolicyNames(Lists.<String>newArrayList()));
+            }
+            loadBalancers.put(name, new LoadBalancerDescription()
+                    .withLoadBalancerName(name)
+                    .withDNSName(dnsName)
+                    .withScheme(req.getScheme() != null ? req.getScheme() : "internet-facing")
+                    .withAvailabilityZones(Lists.newArrayList(nullToEmpty(req.getAvailabilityZones())))
+                    .withSubnets(Lists.newArrayList(nullToEmpty(req.getSubnets())))
+                    .withVPCId(nullToEmpty(req.getSubnets()).isEmpty() ? null : VPC_ID)
+                    .withSecurityGroups(Lists.newArrayList(nullToEmpty(req.getSecurityGroups())))
+                    .withListenerDescriptions(listeners)
+                    .withPolicies(new Policies().withOtherPolicies(Lists.<String>newArrayList()))
+                    .withInstances(Lists.<Instance>newArrayList()));
+            Map<String, String> lbTags = Maps.newLinkedHashMap();
+            for (Tag tag : nullToEmpty(req.getTags())) {
+                lbTags.put(tag.getKey(), tag.getValue());
+            }
+            tags.put(name, lbTags);
+            return new CreateLoadBalancerResult().withDNSName(dnsName);
+
+        } else if ("describeLoadBalancers".equals(operation)) {
+            Collection<String> names = (request == null) ? null : ((DescribeLoadBalancersRequest) request).getLoadBalancerNames();
+            if (names == null || names.isEmpty()) names = loadBalancers.keySet();
+            List<LoadBalancerDescription> result = Lists.newArrayList();
+            for (String name : names) {
+                result.add(copy(getOrFail(name)));
+            }
+            return new DescribeLoadBalancersResult().withLoadBalancerDescriptions(result);
+
+        } else if ("deleteLoadBalancer".equals(operation)) {
+            loadBalancers.remove(((DeleteLoadBalancerRequest) request).getLoadBalancerName());
+            tags.remove(((DeleteLoadBalancerRequest) request).getLoadBalancerName());
+            return emptyResult(resultType);
+
+        } else if ("registerInstancesWithLoadBalancer".equals(operation)) {
+            RegisterInstancesWithLoadBalancerRequest req = (RegisterInstancesWithLoadBalancerRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            for (Instance instance : req.getInstances()) {
+                if (!lb.getInstances().contains(instance)) lb.getInstances().add(instance);
+            }
+            return new RegisterInstancesWithLoadBalancerResult().withInstances(Lists.newArrayList(lb.getInstances()));
+
+        } else if ("deregisterInstancesFromLoadBalancer".equals(operation)) {
+            DeregisterInstancesFromLoadBalancerRequest req = (DeregisterInstancesFromLoadBalancerRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            lb.getInstances().removeAll(req.getInstances());
+            return new DeregisterInstancesFromLoadBalancerResult().withInstances(Lists.newArrayList(lb.getInstances()));
+
+        } else if ("describeInstanceHealth".equals(operation)) {
+            LoadBalancerDescription lb = getOrFail(((DescribeInstanceHealthRequest) request).getLoadBalancerName());
+            List<InstanceState> result = Lists.newArrayList();
+            for (Instance instance : lb.getInstances()) {
+                String state = outOfServiceInstanceIds.contains(instance.getInstanceId()) ? "OutOfService" : "InService";
+                result.add(new InstanceState().withInstanceId(instance.getInstanceId()).withState(state));
+            }
+            return new DescribeInstanceHealthResult().withInstanceStates(result);
+
+        } else if ("configureHealthCheck".equals(operation)) {
+            ConfigureHealthCheckRequest req = (ConfigureHealthCheckRequest) request;
+            getOrFail(req.getLoadBalancerName()).setHealthCheck(req.getHealthCheck());
+            return new ConfigureHealthCheckResult().withHealthCheck(req.getHealthCheck());
+
+        } else if ("createLoadBalancerListeners".equals(operation)) {
+            CreateLoadBalancerListenersRequest req = (CreateLoadBalancerListenersRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            for (Listener listener : req.getListeners()) {
+                lb.getListenerDescriptions().add(new ListenerDescription().withListener(listener).withPolicyNames(Lists.<String>newArrayList()));
+            }
+            return emptyResult(resultType);
+
+        } else if ("deleteLoadBalancerListeners".equals(operation)) {
+            DeleteLoadBalancerListenersRequest req = (DeleteLoadBalancerListenersRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            List<ListenerDescription> retained = Lists.newArrayList();
+            for (ListenerDescription listener : lb.getListenerDescriptions()) {
+                if (!req.getLoadBalancerPorts().contains(listener.getListener().getLoadBalancerPort())) retained.add(listener);
+            }
+            lb.setListenerDescriptions(retained);
+            return emptyResult(resultType);
+
+        } else if ("setLoadBalancerListenerSSLCertificate".equals(operation)) {
+            SetLoadBalancerListenerSSLCertificateRequest req = (SetLoadBalancerListenerSSLCertificateRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            for (ListenerDescription listener : lb.getListenerDescriptions()) {
+                if (req.getLoadBalancerPort().equals(listener.getListener().getLoadBalancerPort())) {
+                    listener.getListener().setSSLCertificateId(req.getSSLCertificateId());
+                }
+            }
+            return emptyResult(resultType);
+
+        } else if ("createLoadBalancerPolicy".equals(operation)) {
+            CreateLoadBalancerPolicyRequest req = (CreateLoadBalancerPolicyRequest) request;
+            List<String> policyNames = getOrFail(req.getLoadBalancerName()).getPolicies().getOtherPolicies();
+            if (policyNames.contains(req.getPolicyName())) throw new DuplicatePolicyNameException("Policy "+req.getPolicyName()+" already exists");
+            policyNames.add(req.getPolicyName());
+            return emptyResult(resultType);
+
+        } else if ("setLoadBalancerPoliciesOfListener".equals(operation)) {
+            SetLoadBalancerPoliciesOfListenerRequest req = (SetLoadBalancerPoliciesOfListenerRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            getListenerOrFail(lb, req.getLoadBalancerPort());
+            for (String policyName : req.getPolicyNames()) {
+                if (!lb.getPolicies().getOtherPolicies().contains(policyName)) throw new PolicyNotFoundException("Cannot find policy "+policyName);
+            }
+            setListenerPolicyNames(lb, req.getLoadBalancerPort(), req.getPolicyNames());
+            return emptyResult(resultType);
+
+        } else if ("deleteLoadBalancerPolicy".equals(operation)) {
+            DeleteLoadBalancerPolicyRequest req = (DeleteLoadBalancerPolicyRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            for (ListenerDescription listener : lb.getListenerDescriptions()) {
+                if (listener.getPolicyNames().contains(req.getPolicyName())) {
+                    throw new InvalidConfigurationRequestException("Policy "+req.getPolicyName()+" is in use by a listener");
+                }
+            }
+            lb.getPolicies().getOtherPolicies().remove(req.getPolicyName());
+            return emptyResult(resultType);
+
+        } else if ("addTags".equals(operation)) {
+            AddTagsRequest req = (AddTagsRequest) request;
+            for (String name : req.getLoadBalancerNames()) {
+                getOrFail(name);
+                for (Tag tag : req.getTags()) {
+                    tags.get(name).put(tag.getKey(), tag.getValue());
+                }
+            }
+            return emptyResult(resultType);
+
+        } else if ("removeTags".equals(operation)) {
+            RemoveTagsRequest req = (RemoveTagsRequest) request;
+            for (String name : req.getLoadBalancerNames()) {
+                getOrFail(name);
+                for (TagKeyOnly tag : req.getTags()) {
+                    tags.get(name).remove(tag.getKey());
+                }
+            }
+            return emptyResult(resultType);
+
+        } else if ("describeTags".equals(operation)) {
+            DescribeTagsRequest req = (DescribeTagsRequest) request;
+            if (req.getLoadBalancerNames().size() > 20) throw new IllegalArgumentException("At most 20 load balancer names per call");
+            List<TagDescription> result = Lists.newArrayList();
+            for (String name : req.getLoadBalancerNames()) {
+                getOrFail(name);
+                List<Tag> lbTags = Lists.newArrayList();
+                for (Map.Entry<String, String> entry : tags.get(name).entrySet()) {
+                    lbTags.add(new Tag().withKey(entry.getKey()).withValue(entry.getValue()));
+                }
+                result.add(new TagDescription().withLoadBalancerName(name).withTags(lbTags));
+            }
+            return new DescribeTagsResult().withTagDescriptions(result);
+
+        } else if ("enableAvailabilityZonesForLoadBalancer".equals(operation)) {
+            EnableAvailabilityZonesForLoadBalancerRequest req = (EnableAvailabilityZonesForLoadBalancerRequest) request;
+            LoadBalancerDescription lb = getOrFail(req.getLoadBalancerName());
+            for (String zone : req.getAvailabilityZones()) {
+                if (!lb.getAvailabilityZones().contains(zone)) lb.getAvailabilityZones().add(zone);
+            }
+            return emptyResult(resultType);
+
+        } else if ("disableAvailabilityZonesForLoadBalancer".equals(operation)) {
+            DisableAvailabilityZonesForLoadBalancerRequest req = (DisableAvailabilityZonesForLoadBalancerRequest) request;
+            getOrFail(req.getLoadBalancerName()).getAvailabilityZones().removeAll(req.getAvailabilityZones());
+            return emptyResult(resultType);
+
+        } else {
+            return emptyResult(resultType);
+        }
+    }
+
+    private LoadBalancerDescription getOrFail(String elbName) {
+        LoadBalancerDescription result = loadBalancers.get(elbName);
+        if (result == null) throw new LoadBalancerNotFoundException("Cannot find Load Balancer "+elbName);
+        return result;
+    }
+
+    private static ListenerDescription getListenerOrFail(LoadBalancerDescription lb, int loadBalancerPort) {
+        for (ListenerDescription listener : lb.getListenerDescriptions()) {
+            if (listener.getListener().getLoadBalancerPort() == loadBalancerPort) return listener;
+        }
+        throw new ListenerNotFoundException("Cannot find listener on port "+loadBalancerPort+" of "+lb.getLoadBalancerName());
+    }
+
+    /** Replaces the listener's description, as earlier copies returned by describeLoadBalancers share it. */
+    private static void setListenerPolicyNames(LoadBalancerDescription lb, int loadBalancerPort, Collection<String> policyNames) {
+        List<ListenerDescription> result = Lists.newArrayList();
+        for (ListenerDescription listener : lb.getListenerDescriptions()) {
+            if (listener.getListener().getLoadBalancerPort() == loadBalancerPort) {
+                listener = new ListenerDescription().withListener(listener.getListener()).withPolicyNames(Lists.newArrayList(policyNames));
+            }
+            result.add(listener);
+        }
+        lb.setListenerDescriptions(result);
+    }
+
+    private static LoadBalancerDescription copy(LoadBalancerDescription lb) {
+        return new LoadBalancerDescription()
+                .withLoadBalancerName(lb.getLoadBalancerName())
+                .withDNSName(lb.getDNSName())
+                .withScheme(lb.getScheme())
+                .withAvailabilityZones(Lists.newArrayList(lb.getAvailabilityZones()))
+                .withSubnets(Lists.newArrayList(lb.getSubnets()))
+                .withVPCId(lb.getVPCId())
+                .withSecurityGroups(Lists.newArrayList(lb.getSecurityGroups()))
+                .withListenerDescriptions(Lists.newArrayList(lb.getListenerDescriptions()))
+                .withHealthCheck(lb.getHealthCheck())
+                .withPolicies(new Policies().withOtherPolicies(Lists.newArrayList(lb.getPolicies().getOtherPolicies())))
+                .withInstances(Lists.newArrayList(lb.getInstances()));
+    }
+
+    private static Object emptyResult(Class<?> resultType) throws Exception {
+        return (resultType == Void.TYPE) ? null : resultType.newInstance();
+    }
+
+    private static <T> Collection<T> nullToEmpty(Collection<T> val) {
+        return (val == null) ? ImmutableList.<T>of() : val;
+    }
+}
@@ -0,0 +1,60 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SocketReadinessCheckerTest {
+
+    /** Resolves every hostname to the loopback address. */
+    private static final HostnameResolver LOOPBACK_RESOLVER = new HostnameResolver() {
+        @Override public Resolution resolve(String hostname) {
+            return new Resolution(ImmutableList.of(InetAddress.getLoopbackAddress().getHostAddress()), null);
+        }};
+
+    private ServerSocket serverSocket;
+    private SocketReadinessChecker checker;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        checker = new SocketReadinessChecker(LOOPBACK_RESOLVER, Duration.ONE_SECOND);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (serverSocket != null) serverSocket.close();
+    }
+
+    @Test
+    public void testReadyWhenListening() throws Exception {
+        assertTrue(checker.isReady("my-elb-123.us-east-1.elb.amazonaws.com", serverSocket.getLocalPort()));
+    }
+
+    @Test
+    public void testNotReadyWhenNotListening() throws Exception {
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        assertFalse(checker.isReady("my-elb-123.us-east-1.elb.amazonaws.com", port));
+    }
+
+    @Test(expectedExceptions=UnknownHostException.class)
+    public void testNotReadyWhenUnresolvable() throws Exception {
+        SocketReadinessChecker checker = new SocketReadinessChecker(new HostnameResolver() {
+                @Override public Resolution resolve(String hostname) throws UnknownHostException {
+                    throw new UnknownHostException(hostname);
+                }},
+                Duration.ONE_SECOND);
+        checker.isReady("my-elb-123.us-east-1.elb.amazonaws.com", serverSocket.getLocalPort());
+    }
+}
@@ -0,0 +1,67 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class TimeSeriesTest {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long START = 1000 * 60 * MINUTE;
+
+    @Test
+    public void testEmptySeries() throws Exception {
+        TimeSeries series = new TimeSeries();
+        assertTrue(Double.isNaN(series.aggregate(TimeSeries.Aggregation.AVG, MINUTE, START)));
+        assertEquals(series.aggregate(TimeSeries.Aggregation.COUNT, MINUTE, START), 0d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.RATE, MINUTE, START), 0d);
+    }
+
+    @Test
+    public void testAggregatesWithinWindow() throws Exception {
+        TimeSeries series = new TimeSeries();
+        for (int i = 0; i < 60; i++) {
+            series.record(START + i * SECOND, i);
+        }
+        long now = START + 59 * SECOND;
+
+        assertEquals(series.aggregate(TimeSeries.Aggregation.COUNT, MINUTE, now), 60d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.SUM, MINUTE, now), 1770d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.AVG, MINUTE, now), 29.5d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.MIN, MINUTE, now), 0d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.MAX, MINUTE, now), 59d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.RATE, MINUTE, now), 29.5d);
+
+        // last 10 seconds is exactly the last (10-second) bucket
+        assertEquals(series.aggregate(TimeSeries.Aggregation.MIN, 10 * SECOND, now), 50d);
+    }
+
+    @Test
+    public void testUsesCoarserTierForLongWindows() throws Exception {
+        TimeSeries series = new TimeSeries(new long[] {SECOND, MINUTE}, new int[] {60, 60});
+        for (int i = 0; i < 30; i++) {
+            series.record(START + i * MINUTE, 1);
+        }
+        long now = START + 29 * MINUTE;
+
+        // the fine tier only has the last minute
+        assertEquals(series.aggregate(TimeSeries.Aggregation.COUNT, MINUTE, now), 1d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.COUNT, 30 * MINUTE, now), 30d);
+    }
+
+    @Test
+    public void testOldValuesOverwrittenWhenRingWraps() throws Exception {
+        TimeSeries series = new TimeSeries(new long[] {SECOND}, new int[] {10});
+        series.record(START, 100);
+        series.record(START + 10 * SECOND, 1);
+
+        assertEquals(series.aggregate(TimeSeries.Aggregation.MAX, 10 * SECOND, START + 10 * SECOND), 1d);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.COUNT, 10 * SECOND, START + 10 * SECOND), 1d);
+
+        // values older than the retention are ignored
+        series.record(START, 100);
+        assertEquals(series.aggregate(TimeSeries.Aggregation.MAX, 10 * SECOND, START + 10 * SECOND), 1d);
+    }
+}
@@ -0,0 +1,169 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class TracerTest {
+
+    private List<Span> exported;
+    private Tracer tracer;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        exported = Lists.newCopyOnWriteArrayList();
+        tracer = new Tracer(new SpanExporter() {
+            @Override public void export(Span span) {
+                exported.add(span);
+            }});
+    }
+
+    @Test
+    public void testNestedSpansRecordParent() throws Exception {
+        Span outer = tracer.start("outer");
+        Span inner = tracer.start("inner").setAttribute("elbName", "my-elb");
+        assertSame(tracer.current(), inner);
+        inner.end();
+        assertSame(tracer.current(), outer);
+        outer.end();
+        assertSame(tracer.current(), Tracer.NOOP_SPAN);
+
+        assertEquals(exported.size(), 2);
+        assertEquals(exported.get(0).getName(), "inner");
+        assertEquals(exported.get(0).getTraceId(), outer.getTraceId());
+        assertEquals(exported.get(0).getParentSpanId(), outer.getSpanId());
+        assertEquals(exported.get(0).getAttributes().get("elbName"), "my-elb");
+        assertNull(outer.getParentSpanId());
+        assertTrue(outer.getDurationNanos() >= inner.getDurationNanos());
+    }
+
+    @Test
+    public void testSpanContinuesTraceInOtherThread() throws Exception {
+        final Span parent = tracer.start("parent");
+        Thread thread = new Thread() {
+            @Override public void run() {
+                tracer.start("child", parent).end();
+            }};
+        thread.start();
+        thread.join();
+        parent.end();
+
+        assertEquals(exported.get(0).getName(), "child");
+        assertEquals(exported.get(0).getParentSpanId(), parent.getSpanId());
+    }
+
+    @Test
+    public void testTracedProxyRecordsSpanPerCall() throws Exception {
+        @SuppressWarnings("unchecked")
+        Callable<String> traced = tracer.traced(new Callable<String>() {
+            @Override public String call() throws Exception {
+                throw new IllegalStateException("simulated");
+            }}, Callable.class, "test.");
+
+        Span parent = tracer.start("parent");
+        try {
+            traced.call();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected, unwrapped by the proxy
+        }
+        parent.end();
+
+        assertEquals(exported.get(0).getName(), "test.call");
+        assertEquals(exported.get(0).getParentSpanId(), parent.getSpanId());
+        assertNotNull(exported.get(0).getError());
+    }
+
+    @Test
+    public void testCallRecordsSpanAndFailure() throws Exception {
+        String result = tracer.call("ok", new Callable<String>() {
+            @Override public String call() {
+                tracer.current().setAttribute("elbName", "my-elb");
+                return "val";
+            }});
+        assertEquals(result, "val");
+        assertEquals(exported.get(0).getName(), "ok");
+        assertEquals(exported.get(0).getAttributes().get("elbName"), "my-elb");
+        assertNull(exported.get(0).getError());
+
+        try {
+            tracer.call("failing", new Callable<String>() {
+                @Override public String call() {
+                    throw new IllegalStateException("simulated");
+                }});
+            fail();
+        } catch (IllegalStateException e) {
+            // expected, not wrapped
+        }
+        assertEquals(exported.get(1).getName(), "failing");
+        assertNotNull(exported.get(1).getError());
+        assertSame(tracer.current(), Tracer.NOOP_SPAN);
+    }
+
+    @Test
+    public void testNotTracedWithoutExporter() throws Exception {
+        Callable<String> delegate = new Callable<String>() {
+            @Override public String call() {
+                return "val";
+            }};
+        assertSame(new Tracer(null).traced(delegate, Callable.class, "test."), delegate);
+    }
+
+    @Test
+    public void testNoSpansWithoutExporter() throws Exception {
+        final Tracer disabled = new Tracer(null);
+        String result = disabled.call("ok", new Callable<String>() {
+            @Override public String call() {
+                assertSame(disabled.current(), Tracer.NOOP_SPAN);
+                disabled.current().setAttribute("elbName", "my-elb");
+                return "val";
+            }});
+        assertEquals(result, "val");
+        assertSame(disabled.start("other"), Tracer.NOOP_SPAN);
+        assertTrue(Tracer.NOOP_SPAN.getAttributes().isEmpty());
+    }
+
+    @Test
+    public void testNoopParentStartsNewTrace() throws Exception {
+        Span span = tracer.start("root", tracer.current());
+        span.end();
+        assertNull(span.getParentSpanId());
+        assertEquals(exported.get(0).getName(), "root");
+    }
+
+    @Test
+    public void testFileExporterWritesJsonLines() throws Exception {
+        File file = File.createTempFile("spans", ".json");
+        try {
+            Tracer fileTracer = new Tracer(new FileSpanExporter(file));
+            Span outer = fileTracer.start("outer");
+            fileTracer.start("inner").setAttribute("instances", 3).end();
+            outer.end();
+
+            List<String> lines = Files.readLines(file, Charsets.UTF_8);
+            assertEquals(lines.size(), 2);
+            Map<?, ?> inner = new ObjectMapper().readValue(lines.get(0), Map.class);
+            assertEquals(inner.get("name"), "inner");
+            assertEquals(inner.get("parentSpanId"), outer.getSpanId());
+            assertEquals(((Map<?, ?>) inner.get("attributes")).get("instances"), 3);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package brooklyn.entity.proxy.aws;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.proxy.aws.ElbController.ZoneBalancingMode;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+
+public class ZoneBalancerTest {
+
+    private static final ImmutableSet<String> ZONES = ImmutableSet.of("a", "b", "c");
+
+    private static SetMultimap<String, String> instances(int a, int b, int c) {
+        SetMultimap<String, String> result = LinkedHashMultimap.create();
+        for (int i = 0; i < a; i++) result.put("a", "i-a"+i);
+        for (int i = 0; i < b; i++) result.put("b", "i-b"+i);
+        for (int i = 0; i < c; i++) result.put("c", "i-c"+i);
+        return result;
+    }
+
+    @Test
+    public void testComputeSkew() throws Exception {
+        assertEquals(ZoneBalancer.computeSkew(ImmutableMap.of("a", 2, "b", 2, "c", 2)), 1.0, 0.0001);
+        // 6 instances in 3 zones: each of zone c's gets 6/(3*1) = 2 times an even share
+        assertEquals(ZoneBalancer.computeSkew(ImmutableMap.of("a", 3, "b", 2, "c", 1)), 2.0, 0.0001);
+        // unoccupied zones are ignored
+        assertEquals(ZoneBalancer.computeSkew(ImmutableMap.of("a", 2, "b", 2, "c", 0)), 1.0, 0.0001);
+        assertEquals(ZoneBalancer.computeSkew(ImmutableMap.of("a", 0, "b", 0)), 1.0, 0.0001);
+    }
+
+    @Test
+    public void testNoneOnlyReportsSpread() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.NONE, 1.5).balance(ZONES, instances(3, 2, 1));
+        assertEquals(plan.getDisabledZones(), ImmutableSet.of());
+        assertEquals(plan.getHeldBack(), ImmutableSet.of());
+        assertEquals(plan.getInstanceCounts(), ImmutableMap.of("a", 3, "b", 2, "c", 1));
+        assertEquals(plan.getSkew(), 2.0, 0.0001);
+    }
+
+    @Test
+    public void testDisablesLowCapacityZone() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.DISABLE_LOW_CAPACITY_ZONES, 1.5).balance(ZONES, instances(3, 2, 1));
+        assertEquals(plan.getDisabledZones(), ImmutableSet.of("c"));
+        assertEquals(plan.getHeldBack(), ImmutableSet.of());
+        assertEquals(plan.getInstanceCounts(), ImmutableMap.of("a", 3, "b", 2, "c", 1));
+        // of the enabled zones: 5/(2*2)
+        assertEquals(plan.getSkew(), 1.25, 0.0001);
+    }
+
+    @Test
+    public void testDisablesZonesUntilWithinMaxSkew() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.DISABLE_LOW_CAPACITY_ZONES, 1.1).balance(ZONES, instances(6, 2, 1));
+        assertEquals(plan.getDisabledZones(), ImmutableSet.of("c", "b"));
+        assertEquals(plan.getSkew(), 1.0, 0.0001);
+    }
+
+    @Test
+    public void testDoesNotDisableBalancedZones() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.DISABLE_LOW_CAPACITY_ZONES, 1.5).balance(ZONES, instances(3, 3, 2));
+        assertEquals(plan.getDisabledZones(), ImmutableSet.of());
+    }
+
+    @Test
+    public void testHoldsBackExcessInstances() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.HOLD_BACK_EXCESS, 1.5).balance(ZONES, instances(5, 3, 2));
+        // each zone can have at most 1.5 times the smallest zone's 2 instances; the highest ids are held back
+        assertEquals(plan.getHeldBack(), ImmutableSet.of("i-a3", "i-a4"));
+        assertEquals(plan.getDisabledZones(), ImmutableSet.of());
+        assertEquals(plan.getInstanceCounts(), ImmutableMap.of("a", 3, "b", 3, "c", 2));
+        assertEquals(plan.getSkew(), 8.0 / 6, 0.0001);
+    }
+
+    @Test
+    public void testHoldsBackNothingWhenWithinMaxSkew() throws Exception {
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.HOLD_BACK_EXCESS, 1.5).balance(ZONES, instances(3, 3, 2));
+        assertEquals(plan.getHeldBack(), ImmutableSet.of());
+    }
+
+    @Test
+    public void testIgnoresInstancesInOtherZones() throws Exception {
+        SetMultimap<String, String> instances = instances(2, 2, 2);
+        instances.putAll("d", ImmutableSet.of("i-d0", "i-d1", "i-d2", "i-d3"));
+        ZoneBalancer.Plan plan = new ZoneBalancer(ZoneBalancingMode.HOLD_BACK_EXCESS, 1.5).balance(ZONES, instances);
+        assertEquals(plan.getHeldBack(), ImmutableSet.of());
+        assertEquals(plan.getInstanceCounts(), ImmutableMap.of("a", 2, "b", 2, "c", 2));
+    }
+}